@@ -0,0 +1,89 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package sample.benchmark;
+
+import sample.util.SimpleCommandLineParser;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Helpers shared by the benchmarks.
+ *
+ * 
+ */
+class Benchmarks {
+
+  /**
+   * An operation to time.
+   */
+  interface Operation {
+
+    /**
+     * Runs the operation once.
+     *
+     * @param i the number of the run, for operations that vary their input
+     * @return a result, which is kept so that the work cannot be skipped
+     */
+    Object run(int i) throws Exception;
+  }
+
+  /** Results of the operations are written here to keep them alive. */
+  static volatile Object sink;
+
+  private Benchmarks() {}
+
+  /**
+   * Runs {@code operation} {@code count} times to warm up, then {@code
+   * rounds} more times {@code count} times each, and returns the lowest
+   * average time per run of a round, in nanoseconds.
+   */
+  static long time(Operation operation, int count, int rounds)
+      throws Exception {
+    for (int i = 0; i < count; i++) {
+      sink = operation.run(i);
+    }
+    long best = Long.MAX_VALUE;
+    for (int round = 0; round < rounds; round++) {
+      long start = System.nanoTime();
+      for (int i = 0; i < count; i++) {
+        sink = operation.run(i);
+      }
+      best = Math.min(best, (System.nanoTime() - start) / count);
+    }
+    return best;
+  }
+
+  /**
+   * Returns the number of bytes allocated so far by the current thread.
+   * This relies on the thread bean of the Sun and OpenJDK virtual machines.
+   */
+  static long getAllocatedBytes() {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  /**
+   * Returns the integer value of the first of {@code keys} given on the
+   * command line, or {@code defaultValue} if none is.
+   */
+  static int getInt(SimpleCommandLineParser parser, int defaultValue,
+      String... keys) {
+    String value = parser.getValue(keys);
+    return (value == null) ? defaultValue : Integer.parseInt(value);
+  }
+}
@@ -0,0 +1,99 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package sample.benchmark;
+
+import com.google.gdata.data.DateTime;
+import sample.util.SimpleCommandLineParser;
+
+/**
+ * Measures parsing and formatting {@link DateTime} values in the RFC 3339
+ * and RFC 822 formats used by feeds and HTTP headers.
+ *
+ * 
+ */
+public class DateTimeBenchmark {
+
+  private static final String[] DATE_TIMES = {
+      "2008-03-05T12:34:56.789Z",
+      "2008-03-05T12:34:56-08:00",
+      "2010-12-31T23:59:59.123456+05:30"
+  };
+
+  private static final String DATE = "2008-03-05";
+
+  public static void main(String[] args) throws Exception {
+    SimpleCommandLineParser parser = new SimpleCommandLineParser(args);
+    int count = Benchmarks.getInt(parser, 500000, "count", "n");
+    int rounds = Benchmarks.getInt(parser, 5, "rounds", "r");
+    if (parser.containsKey("help", "h")) {
+      usage();
+      System.exit(1);
+    }
+
+    final DateTime dateTime =
+        DateTime.parseDateTime("2008-03-05T12:34:56.789-08:00");
+    final String rfc822 = dateTime.toStringRfc822();
+    print("parseDateTime", Benchmarks.time(new Benchmarks.Operation() {
+      public Object run(int i) {
+        return DateTime.parseDateTime(DATE_TIMES[i % DATE_TIMES.length]);
+      }
+    }, count, rounds));
+    print("parseDate", Benchmarks.time(new Benchmarks.Operation() {
+      public Object run(int i) {
+        return DateTime.parseDate(DATE);
+      }
+    }, count, rounds));
+    print("parseDateTimeChoice", Benchmarks.time(new Benchmarks.Operation() {
+      public Object run(int i) {
+        return DateTime.parseDateTimeChoice(
+            (i & 1) == 0 ? DATE : DATE_TIMES[0]);
+      }
+    }, count, rounds));
+    print("toString", Benchmarks.time(new Benchmarks.Operation() {
+      public Object run(int i) {
+        return dateTime.toString();
+      }
+    }, count, rounds));
+    print("toUiString", Benchmarks.time(new Benchmarks.Operation() {
+      public Object run(int i) {
+        return dateTime.toUiString();
+      }
+    }, count, rounds));
+    print("toStringRfc822", Benchmarks.time(new Benchmarks.Operation() {
+      public Object run(int i) {
+        return dateTime.toStringRfc822();
+      }
+    }, count, rounds));
+    print("parseRfc822", Benchmarks.time(new Benchmarks.Operation() {
+      public Object run(int i) throws Exception {
+        return DateTime.parseRfc822(rfc822);
+      }
+    }, count, rounds));
+  }
+
+  private static void print(String name, long nanos) {
+    System.out.println(String.format("%-20s %6d ns/op", name, nanos));
+  }
+
+  private static void usage() {
+    System.out.println("Usage: java sample.benchmark.DateTimeBenchmark "
+        + "[--count <calls>] [--rounds <rounds>]\n"
+        + "  Parses and formats date-times count times per round, and "
+        + "prints\n"
+        + "  the time per call of the fastest round.");
+  }
+}
@@ -0,0 +1,102 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package sample.benchmark;
+
+import com.google.gdata.client.GoogleAuthTokenFactory.OAuthToken;
+import com.google.gdata.client.authn.oauth.OAuthHmacSha1Signer;
+import com.google.gdata.client.authn.oauth.OAuthParameters;
+import com.google.gdata.client.authn.oauth.OAuthParameters.OAuthType;
+import com.google.gdata.client.authn.oauth.OAuthRsaSha1Signer;
+import com.google.gdata.client.authn.oauth.OAuthSigner;
+import sample.util.SimpleCommandLineParser;
+
+import java.net.URL;
+import java.security.KeyPairGenerator;
+
+/**
+ * Measures the cost of signing OAuth requests: an HMAC-SHA1 signature on
+ * its own, and the full two-legged Authorization header with HMAC-SHA1 and
+ * RSA-SHA1 signatures.
+ *
+ * 
+ */
+public class OAuthBenchmark {
+
+  private static final String REQUESTOR = "user@example.com";
+
+  public static void main(String[] args) throws Exception {
+    SimpleCommandLineParser parser = new SimpleCommandLineParser(args);
+    int count = Benchmarks.getInt(parser, 200000, "count", "n");
+    int rounds = Benchmarks.getInt(parser, 5, "rounds", "r");
+    if (parser.containsKey("help", "h")) {
+      usage();
+      System.exit(1);
+    }
+
+    final OAuthParameters hmacParameters = createParameters();
+    hmacParameters.setOAuthConsumerSecret("consumer-secret");
+    hmacParameters.setOAuthTokenSecret("");
+    final OAuthHmacSha1Signer signer = new OAuthHmacSha1Signer();
+    final OAuthToken hmacToken = new OAuthToken(hmacParameters, signer);
+
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(1024);
+    OAuthSigner rsaSigner = new OAuthRsaSha1Signer(
+        generator.generateKeyPair().getPrivate());
+    final OAuthToken rsaToken = new OAuthToken(createParameters(), rsaSigner);
+
+    final URL url = new URL("https://www.google.com/calendar/feeds/"
+        + "default/private/full?max-results=25");
+    print("HMAC signature", Benchmarks.time(new Benchmarks.Operation() {
+      public Object run(int i) throws Exception {
+        return signer.getSignature("GET&base" + (i & 7), hmacParameters);
+      }
+    }, count, rounds));
+    print("HMAC header", Benchmarks.time(new Benchmarks.Operation() {
+      public Object run(int i) throws Exception {
+        return hmacToken.getAuthorizationHeader(url, "GET");
+      }
+    }, count, rounds));
+    // The private key operation makes RSA signing far slower.
+    print("RSA header", Benchmarks.time(new Benchmarks.Operation() {
+      public Object run(int i) throws Exception {
+        return rsaToken.getAuthorizationHeader(url, "GET");
+      }
+    }, Math.max(1, count / 50), rounds));
+  }
+
+  private static OAuthParameters createParameters() {
+    OAuthParameters parameters = new OAuthParameters();
+    parameters.setOAuthConsumerKey("example.com");
+    parameters.addCustomBaseParameter("xoauth_requestor_id", REQUESTOR);
+    parameters.setOAuthType(OAuthType.TWO_LEGGED_OAUTH);
+    return parameters;
+  }
+
+  private static void print(String name, long nanos) {
+    System.out.println(String.format("%-16s %8d ns/op %8d ops/s", name,
+        nanos, 1000000000L / nanos));
+  }
+
+  private static void usage() {
+    System.out.println("Usage: java sample.benchmark.OAuthBenchmark "
+        + "[--count <signatures>] [--rounds <rounds>]\n"
+        + "  Signs requests count times per round, or count / 50 times "
+        + "with RSA,\n"
+        + "  and prints the time per signature of the fastest round.");
+  }
+}
@@ -0,0 +1,157 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package sample.benchmark;
+
+import com.google.gdata.data.BaseEntry;
+import com.google.gdata.data.BaseFeed;
+import com.google.gdata.data.ExtensionProfile;
+import com.google.gdata.data.Feed;
+import sample.util.SimpleCommandLineParser;
+
+import java.io.StringReader;
+
+/**
+ * Measures the bytes allocated to parse feeds shaped like Calendar and
+ * Contacts feeds with the old data model.  The profile declares none of
+ * the Calendar or Contacts extensions, so their elements are captured as
+ * arbitrary XML.
+ *
+ * 
+ */
+public class ParseAllocationBenchmark {
+
+  private static final String KIND =
+      "<category scheme='http://schemas.google.com/g/2005#kind' term='";
+
+  public static void main(String[] args) throws Exception {
+    SimpleCommandLineParser parser = new SimpleCommandLineParser(args);
+    int entries = Benchmarks.getInt(parser, 100, "entries", "e");
+    int count = Benchmarks.getInt(parser, 50, "count", "n");
+    int rounds = Benchmarks.getInt(parser, 5, "rounds", "r");
+    if (parser.containsKey("help", "h")) {
+      usage();
+      System.exit(1);
+    }
+
+    ExtensionProfile profile = new ExtensionProfile();
+    profile.setArbitraryXml(true);
+    profile.declareArbitraryXmlExtension(BaseEntry.class);
+    profile.declareArbitraryXmlExtension(BaseFeed.class);
+    for (boolean calendar : new boolean[] { true, false }) {
+      String xml = createFeed(calendar, entries);
+      for (int i = 0; i < 6 * count; i++) {
+        parse(profile, xml);
+      }
+      long best = Long.MAX_VALUE;
+      for (int round = 0; round < rounds; round++) {
+        long before = Benchmarks.getAllocatedBytes();
+        for (int i = 0; i < count; i++) {
+          Benchmarks.sink = parse(profile, xml);
+        }
+        best = Math.min(best,
+            (Benchmarks.getAllocatedBytes() - before) / count);
+      }
+      System.out.println((calendar ? "calendar" : "contacts") + " feed, "
+          + entries + " entries, " + (xml.length() / 1024) + " KB: "
+          + (best / 1024) + " KB allocated per parse");
+    }
+  }
+
+  private static Feed parse(ExtensionProfile profile, String xml)
+      throws Exception {
+    Feed feed = new Feed();
+    feed.parseAtom(profile, new StringReader(xml));
+    return feed;
+  }
+
+  /**
+   * Creates a feed of event entries if {@code calendar} is {@code true},
+   * and of contact entries otherwise.
+   */
+  private static String createFeed(boolean calendar, int entries) {
+    StringBuilder xml = new StringBuilder(
+        "<feed xmlns='http://www.w3.org/2005/Atom'"
+        + " xmlns:gd='http://schemas.google.com/g/2005'"
+        + " xmlns:gCal='http://schemas.google.com/gCal/2005'>"
+        + "<id>http://www.example.com/feed</id>"
+        + "<updated>2010-01-01T00:00:00.000Z</updated>"
+        + "<title type='text'>Feed</title>");
+    for (int i = 0; i < entries; i++) {
+      xml.append("<entry><id>http://www.example.com/entries/").append(i)
+          .append("</id><updated>2010-01-01T00:00:00.000Z</updated>")
+          .append("<title type='text'>Title ").append(i).append("</title>")
+          .append("<link rel='edit' type='application/atom+xml'")
+          .append(" href='http://www.example.com/entries/").append(i)
+          .append("'/>");
+      if (calendar) {
+        appendEvent(xml, i);
+      } else {
+        appendContact(xml, i);
+      }
+      xml.append("</entry>");
+    }
+    return xml.append("</feed>").toString();
+  }
+
+  private static void appendEvent(StringBuilder xml, int i) {
+    String day = "2010-01-0" + (1 + i % 9);
+    xml.append(KIND).append("http://schemas.google.com/g/2005#event'/>")
+        .append("<content type='text'>Meeting about item ").append(i)
+        .append(" &amp; more</content>")
+        .append("<gd:eventStatus")
+        .append(" value='http://schemas.google.com/g/2005#event.confirmed'/>")
+        .append("<gd:where valueString='Room ").append(i).append("'/>")
+        .append("<gd:when startTime='").append(day)
+        .append("T10:00:00.000Z' endTime='").append(day)
+        .append("T11:00:00.000Z'>")
+        .append("<gd:reminder minutes='10' method='alert'/></gd:when>")
+        .append("<gd:who")
+        .append(" rel='http://schemas.google.com/g/2005#event.organizer'")
+        .append(" valueString='Person ").append(i)
+        .append("' email='person").append(i).append("@example.com'/>")
+        .append("<gCal:uid value='uid").append(i).append("'/>")
+        .append("<gCal:sequence value='0'/>");
+  }
+
+  private static void appendContact(StringBuilder xml, int i) {
+    xml.append(KIND)
+        .append("http://schemas.google.com/contact/2008#contact'/>")
+        .append("<gd:name><gd:fullName>Person ").append(i)
+        .append("</gd:fullName><gd:givenName>Person</gd:givenName>")
+        .append("<gd:familyName>Name").append(i)
+        .append("</gd:familyName></gd:name>")
+        .append("<gd:email rel='http://schemas.google.com/g/2005#work'")
+        .append(" address='person").append(i)
+        .append("@example.com' primary='true'/>")
+        .append("<gd:phoneNumber")
+        .append(" rel='http://schemas.google.com/g/2005#mobile'>")
+        .append("+1 555 0100 ").append(i).append("</gd:phoneNumber>")
+        .append("<gd:structuredPostalAddress")
+        .append(" rel='http://schemas.google.com/g/2005#home'>")
+        .append("<gd:street>").append(i).append(" Main St</gd:street>")
+        .append("<gd:city>Springfield</gd:city>")
+        .append("</gd:structuredPostalAddress>");
+  }
+
+  private static void usage() {
+    System.out.println("Usage: java sample.benchmark.ParseAllocationBenchmark"
+        + " [--entries <entries>] [--count <parses>] [--rounds <rounds>]\n"
+        + "  Parses a Calendar-like and a Contacts-like feed, and prints "
+        + "the\n"
+        + "  fewest bytes allocated per parse over the rounds.");
+  }
+}
@@ -0,0 +1,75 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package sample.benchmark;
+
+import com.google.gdata.data.Entry;
+import com.google.gdata.data.ExtensionProfile;
+import sample.util.SimpleCommandLineParser;
+
+import java.io.StringReader;
+
+/**
+ * Measures the time to parse a small Atom entry with the old data model,
+ * which is dominated by the per-document cost of the XML parser for
+ * entries of this size.
+ *
+ * 
+ */
+public class ParseBenchmark {
+
+  private static final String ENTRY =
+      "<entry xmlns='http://www.w3.org/2005/Atom'>"
+      + "<id>http://www.example.com/entries/1</id>"
+      + "<updated>2010-01-01T00:00:00.000Z</updated>"
+      + "<title type='text'>Entry title</title>"
+      + "<link rel='alternate' type='text/html'"
+      + " href='http://www.example.com/entries/1'/>"
+      + "<author><name>Author</name></author>"
+      + "<category scheme='http://schemas.google.com/g/2005#kind'"
+      + " term='http://schemas.google.com/g/2005#event'/>"
+      + "<content type='text'>Short body</content>"
+      + "</entry>";
+
+  public static void main(String[] args) throws Exception {
+    SimpleCommandLineParser parser = new SimpleCommandLineParser(args);
+    int count = Benchmarks.getInt(parser, 20000, "count", "n");
+    int rounds = Benchmarks.getInt(parser, 5, "rounds", "r");
+    if (parser.containsKey("help", "h")) {
+      usage();
+      System.exit(1);
+    }
+
+    final ExtensionProfile profile = new ExtensionProfile();
+    long nanos = Benchmarks.time(new Benchmarks.Operation() {
+      public Object run(int i) throws Exception {
+        Entry entry = new Entry();
+        entry.parseAtom(profile, new StringReader(ENTRY));
+        return entry;
+      }
+    }, count, rounds);
+    System.out.println(ENTRY.length() + " character entry: " + nanos
+        + " ns/entry, " + (1000000000L / nanos) + " entries/s");
+  }
+
+  private static void usage() {
+    System.out.println("Usage: java sample.benchmark.ParseBenchmark "
+        + "[--count <entries>] [--rounds <rounds>]\n"
+        + "  Parses a small Atom entry count times per round, and prints "
+        + "the\n"
+        + "  time per entry of the fastest round.");
+  }
+}
@@ -0,0 +1,183 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package sample.benchmark;
+
+import com.google.gdata.client.Service;
+import com.google.gdata.data.Entry;
+import com.google.gdata.data.PlainTextConstruct;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import sample.util.SimpleCommandLineParser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures the throughput of entry inserts that are redirected by the
+ * server.  A local HTTP server answers every POST to {@code /post} with a
+ * 302 to {@code /target}, which echoes the entry back.  The benchmark
+ * inserts entries from several threads, each with its own {@link Service},
+ * and reports the inserts per second of the second of two rounds, and how
+ * the redirects were followed.
+ *
+ * <p>Run it with {@code -Dsun.net.httpserver.nodelay=true}, otherwise the
+ * server delays its small responses.
+ *
+ * 
+ */
+public class RedirectBenchmark {
+
+  private static final String ENTRY_TYPE =
+      "application/atom+xml; charset=UTF-8";
+
+  private static final AtomicInteger posts = new AtomicInteger();
+  private static final AtomicInteger gets = new AtomicInteger();
+  private static final AtomicInteger emptyPosts = new AtomicInteger();
+
+  public static void main(String[] args) throws Exception {
+    SimpleCommandLineParser parser = new SimpleCommandLineParser(args);
+    int threads = Benchmarks.getInt(parser, 1, "threads", "t");
+    int inserts = Benchmarks.getInt(parser, 600, "inserts", "n");
+    if (parser.containsKey("help", "h")) {
+      usage();
+      System.exit(1);
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(32);
+    HttpServer server = HttpServer.create(
+        new InetSocketAddress("127.0.0.1", 0), 64);
+    server.setExecutor(executor);
+    server.createContext("/", new RedirectingHandler());
+    server.start();
+    try {
+      URL url = new URL("http://127.0.0.1:"
+          + server.getAddress().getPort() + "/post");
+      for (int round = 0; round < 2; round++) {
+        posts.set(0);
+        gets.set(0);
+        emptyPosts.set(0);
+        long rate = insert(url, threads, inserts / threads);
+        if (round == 1) {
+          System.out.println(threads + " threads: " + rate + " inserts/s, "
+              + "redirected as POST=" + posts + " GET=" + gets
+              + " empty POST=" + emptyPosts);
+        }
+      }
+    } finally {
+      server.stop(0);
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Inserts {@code perThread} entries from each of {@code threads} threads,
+   * and returns the number of inserts per second.
+   */
+  private static long insert(final URL url, int threads, final int perThread)
+      throws Exception {
+    final AtomicInteger errors = new AtomicInteger();
+    Thread[] workers = new Thread[threads];
+    long start = System.nanoTime();
+    for (int i = 0; i < threads; i++) {
+      workers[i] = new Thread() {
+        @Override
+        public void run() {
+          Service service = new Service();
+          for (int j = 0; j < perThread; j++) {
+            Entry entry = new Entry();
+            entry.setTitle(new PlainTextConstruct("Entry " + j));
+            try {
+              service.insert(url, entry);
+            } catch (Exception e) {
+              errors.incrementAndGet();
+            }
+          }
+        }
+      };
+      workers[i].start();
+    }
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    long millis = Math.max(1, (System.nanoTime() - start) / 1000000);
+    if (errors.get() > 0) {
+      System.err.println(errors + " inserts failed");
+    }
+    return (long) perThread * threads * 1000 / millis;
+  }
+
+  /**
+   * Redirects requests to {@code /post} and echoes all other requests,
+   * counting how the redirected requests arrived.
+   */
+  private static class RedirectingHandler implements HttpHandler {
+
+    public void handle(HttpExchange exchange) throws IOException {
+      byte[] body = readFully(exchange.getRequestBody());
+      if ("/post".equals(exchange.getRequestURI().getPath())) {
+        exchange.getResponseHeaders().set("Location", "/target");
+        exchange.sendResponseHeaders(302, -1);
+        exchange.close();
+        return;
+      }
+      if ("POST".equals(exchange.getRequestMethod())) {
+        posts.incrementAndGet();
+        if (body.length == 0) {
+          emptyPosts.incrementAndGet();
+        }
+      } else {
+        gets.incrementAndGet();
+      }
+      if (body.length == 0) {
+        body = "<entry xmlns='http://www.w3.org/2005/Atom'/>"
+            .getBytes("UTF-8");
+      }
+      exchange.getResponseHeaders().set("Content-Type", ENTRY_TYPE);
+      exchange.sendResponseHeaders(201, body.length);
+      OutputStream out = exchange.getResponseBody();
+      out.write(body);
+      exchange.close();
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      int count;
+      while ((count = in.read(buffer)) > 0) {
+        bytes.write(buffer, 0, count);
+      }
+      return bytes.toByteArray();
+    }
+  }
+
+  private static void usage() {
+    System.out.println("Usage: java -Dsun.net.httpserver.nodelay=true "
+        + "sample.benchmark.RedirectBenchmark [--threads <count>] "
+        + "[--inserts <count>]\n"
+        + "  Inserts entries into a local server that redirects every "
+        + "insert,\n"
+        + "  and prints the inserts per second.");
+  }
+}
@@ -0,0 +1,147 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package sample.benchmark;
+
+import com.google.gdata.client.Service;
+import com.google.gdata.model.ElementMetadata;
+import com.google.gdata.model.MetadataContext;
+import com.google.gdata.model.Schema;
+import com.google.gdata.model.atom.Feed;
+import com.google.gdata.wireformats.AltFormat;
+import com.google.gdata.wireformats.WireFormatParser;
+import com.google.gdata.wireformats.input.InputProperties;
+import com.google.gdata.wireformats.input.InputPropertiesBuilder;
+import com.google.gdata.wireformats.output.OutputProperties;
+import com.google.gdata.wireformats.output.OutputPropertiesBuilder;
+import sample.util.SimpleCommandLineParser;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+
+/**
+ * Compares the size and parse time of the same feed in the Atom and JSON
+ * wire formats of the new data model.  The feed is generated as Atom,
+ * parsed, and written as JSON, so both documents hold the same data.
+ *
+ * 
+ */
+public class WireFormatBenchmark {
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  public static void main(String[] args) throws Exception {
+    SimpleCommandLineParser parser = new SimpleCommandLineParser(args);
+    int entries = Benchmarks.getInt(parser, 2000, "entries", "e");
+    int count = Benchmarks.getInt(parser, 10, "count", "n");
+    int rounds = Benchmarks.getInt(parser, 10, "rounds", "r");
+    if (parser.containsKey("help", "h")) {
+      usage();
+      System.exit(1);
+    }
+
+    Schema schema = new Service().getSchema();
+    final ElementMetadata<?, ?> atomMetadata =
+        schema.bind(Feed.KEY, MetadataContext.forAlt(AltFormat.ATOM));
+    final ElementMetadata<?, ?> jsonMetadata =
+        schema.bind(Feed.KEY, MetadataContext.forAlt(AltFormat.JSON));
+    final String atom = generate(AltFormat.ATOM, atomMetadata,
+        parse(AltFormat.ATOM, atomMetadata, createFeed(entries)));
+    final String json = generate(AltFormat.JSON, jsonMetadata,
+        parse(AltFormat.ATOM, atomMetadata, atom));
+    System.out.println(entries + " entries: Atom " + atom.length()
+        + " chars, JSON " + json.length() + " chars");
+
+    // The time of every round is printed, as the first rounds show how long
+    // each parser takes to warm up.
+    for (int round = 0; round < rounds; round++) {
+      long start = System.nanoTime();
+      for (int i = 0; i < count; i++) {
+        Benchmarks.sink = parse(AltFormat.ATOM, atomMetadata, atom);
+      }
+      long atomMillis = (System.nanoTime() - start) / count / 1000000;
+      start = System.nanoTime();
+      for (int i = 0; i < count; i++) {
+        Benchmarks.sink = parse(AltFormat.JSON, jsonMetadata, json);
+      }
+      long jsonMillis = (System.nanoTime() - start) / count / 1000000;
+      System.out.println("round " + (round + 1) + ": Atom " + atomMillis
+          + " ms/parse, JSON " + jsonMillis + " ms/parse");
+    }
+  }
+
+  private static Feed parse(AltFormat format, ElementMetadata<?, ?> metadata,
+      String document) throws Exception {
+    InputProperties properties = new InputPropertiesBuilder()
+        .setElementMetadata(metadata)
+        .build();
+    WireFormatParser parser = format.getWireFormat().createParser(
+        properties, new StringReader(document), UTF_8);
+    return (Feed) parser.parse(new Feed());
+  }
+
+  private static String generate(AltFormat format,
+      ElementMetadata<?, ?> metadata, Feed feed) throws Exception {
+    OutputProperties properties = new OutputPropertiesBuilder()
+        .setElementMetadata(metadata)
+        .build();
+    StringWriter writer = new StringWriter();
+    format.getWireFormat().createGenerator(properties, writer, UTF_8, false)
+        .generate(feed);
+    return writer.toString();
+  }
+
+  private static String createFeed(int entries) {
+    StringBuilder xml = new StringBuilder(
+        "<?xml version='1.0' encoding='UTF-8'?>"
+        + "<feed xmlns='http://www.w3.org/2005/Atom'"
+        + " xmlns:openSearch='http://a9.com/-/spec/opensearch/1.1/'"
+        + " xmlns:gd='http://schemas.google.com/g/2005'"
+        + " gd:etag='W/\"etag\"'>"
+        + "<id>http://www.example.com/feed</id>"
+        + "<updated>2008-01-01T00:00:00.000Z</updated>"
+        + "<title type='text'>Feed \"title\" \\ </title>"
+        + "<openSearch:totalResults>" + entries
+        + "</openSearch:totalResults>"
+        + "<link rel='self' href='http://www.example.com/feed'/>"
+        + "<author><name>Author</name><email>author@example.com</email>"
+        + "</author>");
+    for (int i = 0; i < entries; i++) {
+      xml.append("<entry><id>http://www.example.com/entries/").append(i)
+          .append("</id><updated>2008-01-01T00:00:00.000Z</updated>")
+          .append("<title type='text'>Entry ").append(i).append("</title>")
+          .append("<category scheme='http://www.example.com/scheme'")
+          .append(" term='term").append(i).append("'/>")
+          .append("<category scheme='http://www.example.com/scheme'")
+          .append(" term='common'/>")
+          .append("<content type='text'>Body &lt;b&gt; ").append(i)
+          .append("</content>")
+          .append("<link rel='alternate' type='text/html'")
+          .append(" href='http://www.example.com/entries/").append(i)
+          .append("'/><gd:who email='person@example.com'/></entry>");
+    }
+    return xml.append("</feed>").toString();
+  }
+
+  private static void usage() {
+    System.out.println("Usage: java sample.benchmark.WireFormatBenchmark "
+        + "[--entries <entries>] [--count <parses>] [--rounds <rounds>]\n"
+        + "  Parses the same feed as Atom and as JSON count times per "
+        + "round,\n"
+        + "  and prints the average parse time of each round.");
+  }
+}
@@ -0,0 +1,107 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package sample.benchmark;
+
+import com.google.gdata.data.Entry;
+import com.google.gdata.data.ExtensionProfile;
+import com.google.gdata.data.Feed;
+import com.google.gdata.data.Person;
+import com.google.gdata.data.PlainTextConstruct;
+import com.google.gdata.util.common.xml.XmlWriter;
+import sample.util.SimpleCommandLineParser;
+
+import java.io.Writer;
+
+/**
+ * Measures the time and the bytes allocated to write an Atom feed with the
+ * old data model.  The output is discarded, so only the cost of generating
+ * and escaping it is measured.
+ *
+ * 
+ */
+public class XmlWriterBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    SimpleCommandLineParser parser = new SimpleCommandLineParser(args);
+    int entries = Benchmarks.getInt(parser, 1000, "entries", "e");
+    int rounds = Benchmarks.getInt(parser, 60, "rounds", "r");
+    if (parser.containsKey("help", "h")) {
+      usage();
+      System.exit(1);
+    }
+
+    ExtensionProfile profile = new ExtensionProfile();
+    Feed feed = createFeed(entries);
+    feed.declareExtensions(profile);
+    long fewestBytes = Long.MAX_VALUE;
+    long fastest = Long.MAX_VALUE;
+    for (int round = 0; round < rounds; round++) {
+      long bytes = Benchmarks.getAllocatedBytes();
+      long start = System.nanoTime();
+      feed.generateAtom(new XmlWriter(new NullWriter()), profile);
+      fastest = Math.min(fastest, System.nanoTime() - start);
+      fewestBytes = Math.min(fewestBytes,
+          Benchmarks.getAllocatedBytes() - bytes);
+    }
+    System.out.println(entries + " entries: " + fewestBytes
+        + " bytes allocated, " + (fastest / 1000) + " us");
+  }
+
+  /**
+   * Creates a feed whose entries have text that needs escaping.
+   */
+  private static Feed createFeed(int entries) {
+    Feed feed = new Feed();
+    for (int i = 0; i < entries; i++) {
+      Entry entry = new Entry();
+      entry.setId("http://www.example.com/entries/" + i);
+      entry.setTitle(new PlainTextConstruct("Row " + i + " & <title>"));
+      entry.setContent(new PlainTextConstruct(
+          "Some cell content with value " + i + " and \"quotes\""));
+      entry.getAuthors().add(
+          new Person("Author " + i, null, "author" + i + "@example.com"));
+      feed.getEntries().add(entry);
+    }
+    return feed;
+  }
+
+  /**
+   * A writer that discards its output.
+   */
+  private static class NullWriter extends Writer {
+
+    @Override
+    public void write(char[] buffer, int offset, int length) {}
+
+    @Override
+    public void write(String s, int offset, int length) {}
+
+    @Override
+    public void flush() {}
+
+    @Override
+    public void close() {}
+  }
+
+  private static void usage() {
+    System.out.println("Usage: java sample.benchmark.XmlWriterBenchmark "
+        + "[--entries <entries>] [--rounds <rounds>]\n"
+        + "  Writes a feed as Atom once per round, and prints the fewest "
+        + "bytes\n"
+        + "  allocated and the fastest time over the rounds.");
+  }
+}
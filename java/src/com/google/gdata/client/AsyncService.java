@@ -0,0 +1,477 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client;
+
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.gdata.client.GoogleService.SessionExpiredException;
+import com.google.gdata.client.Service.GDataRequest;
+import com.google.gdata.data.IEntry;
+import com.google.gdata.data.IFeed;
+import com.google.gdata.model.batch.BatchUtils;
+import com.google.gdata.util.RedirectRequiredException;
+import com.google.gdata.util.ServiceException;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The AsyncService class is an asynchronous facade over a {@link Service}.
+ * Each operation returns immediately with a {@link ListenableFuture} that
+ * completes with the same result (or fails with the same exception) as the
+ * corresponding blocking {@link Service} method.
+ * <p>
+ * Operations run in two stages: the request is created, written and executed
+ * on the I/O executor, and the response is parsed on the parse executor, so a
+ * thread waiting on the network is never also busy parsing.  Both executors
+ * are supplied by the caller.  Since the underlying HTTP transport is
+ * blocking, an I/O executor backed by lightweight (virtual) threads allows a
+ * large number of calls to be in flight at once.
+ * <p>
+ * When the wrapped service is a {@link GoogleService}, a redirect or an
+ * expired session is handled the way the blocking {@link GoogleService}
+ * methods handle it: the request is reissued once, against the redirected
+ * location or with refreshed credentials.
+ * <p>
+ * Operations are built from the request creation, writing and parsing
+ * methods of the service rather than from its public blocking methods, so
+ * that they can be split across the executors.  Overrides of the blocking
+ * methods in a {@link Service} subclass, such as {@link Service#getFeed} or
+ * {@link Service#insert}, are therefore not used by this facade.
+ *
+ *
+ */
+public class AsyncService {
+
+  /**
+   * An asynchronous operation against the service.
+   *
+   * @param <T> result type of the operation
+   */
+  private abstract class Operation<T> {
+
+    /** Creates the request for the operation. */
+    abstract GDataRequest createRequest() throws IOException, ServiceException;
+
+    /** Retargets the operation to a redirected location. */
+    abstract void redirect(URL location);
+
+    /** Sets preconditions and writes request data, if any. */
+    void prepare(GDataRequest request) throws IOException, ServiceException {
+    }
+
+    /** Parses the result of an executed request. */
+    abstract T parse(GDataRequest request)
+        throws IOException, ServiceException;
+  }
+
+  private final Service service;
+  private final ListeningExecutorService ioExecutor;
+  private final ListeningExecutorService parseExecutor;
+
+  /**
+   * Constructs an asynchronous facade that runs both request execution and
+   * response parsing on {@code executor}.
+   *
+   * @param service the service that executes the requests
+   * @param executor the executor running the operations
+   */
+  public AsyncService(Service service, ExecutorService executor) {
+    this(service, executor, executor);
+  }
+
+  /**
+   * Constructs an asynchronous facade that executes requests on
+   * {@code ioExecutor} and parses responses on {@code parseExecutor}.
+   *
+   * @param service the service that executes the requests
+   * @param ioExecutor the executor sending requests and awaiting responses
+   * @param parseExecutor the executor parsing responses
+   */
+  public AsyncService(Service service, ExecutorService ioExecutor,
+      ExecutorService parseExecutor) {
+    if (service == null) {
+      throw new NullPointerException("service");
+    }
+    this.service = service;
+    this.ioExecutor = MoreExecutors.listeningDecorator(ioExecutor);
+    this.parseExecutor = MoreExecutors.listeningDecorator(parseExecutor);
+  }
+
+  /**
+   * Returns the service that executes the requests.
+   */
+  public Service getService() {
+    return service;
+  }
+
+  /**
+   * Asynchronously retrieves the feed associated with a feed URL.
+   *
+   * @see Service#getFeed(URL, Class)
+   */
+  public <F extends IFeed> ListenableFuture<F> getFeed(final URL feedUrl,
+      final Class<F> feedClass) {
+    return submit(new Operation<F>() {
+      URL url = feedUrl;
+
+      @Override
+      GDataRequest createRequest() throws IOException, ServiceException {
+        return service.createFeedRequest(url);
+      }
+
+      @Override
+      void redirect(URL location) {
+        url = location;
+      }
+
+      @Override
+      F parse(GDataRequest request) throws IOException, ServiceException {
+        return service.parseResponseData(request, feedClass);
+      }
+    });
+  }
+
+  /**
+   * Asynchronously retrieves the feed resulting from a query.
+   *
+   * @see Service#getFeed(Query, Class)
+   */
+  public <F extends IFeed> ListenableFuture<F> getFeed(final Query query,
+      final Class<F> feedClass) {
+    return submit(new Operation<F>() {
+      Query feedQuery = query;
+
+      @Override
+      GDataRequest createRequest() throws IOException, ServiceException {
+        return service.createFeedRequest(feedQuery);
+      }
+
+      @Override
+      void redirect(URL location) {
+        feedQuery = new Query(location);
+      }
+
+      @Override
+      F parse(GDataRequest request) throws IOException, ServiceException {
+        return service.parseResponseData(request, feedClass);
+      }
+    });
+  }
+
+  /**
+   * Asynchronously retrieves an entry given its URL.
+   *
+   * @see Service#getEntry(URL, Class)
+   */
+  public <E extends IEntry> ListenableFuture<E> getEntry(final URL entryUrl,
+      final Class<E> entryClass) {
+    return submit(new Operation<E>() {
+      URL url = entryUrl;
+
+      @Override
+      GDataRequest createRequest() throws IOException, ServiceException {
+        return service.createEntryRequest(url);
+      }
+
+      @Override
+      void redirect(URL location) {
+        url = location;
+      }
+
+      @Override
+      E parse(GDataRequest request) throws IOException, ServiceException {
+        return service.parseResponseData(request, entryClass);
+      }
+    });
+  }
+
+  /**
+   * Asynchronously inserts a new entry into a feed.
+   *
+   * @see Service#insert(URL, IEntry)
+   */
+  public <E extends IEntry> ListenableFuture<E> insert(final URL feedUrl,
+      final E entry) {
+    if (entry == null) {
+      throw new NullPointerException("Must supply entry");
+    }
+    return submit(new Operation<E>() {
+      URL url = feedUrl;
+
+      @Override
+      GDataRequest createRequest() throws IOException, ServiceException {
+        return service.createInsertRequest(url);
+      }
+
+      @Override
+      void redirect(URL location) {
+        url = location;
+      }
+
+      @Override
+      void prepare(GDataRequest request) throws IOException, ServiceException {
+        service.writeRequestData(request, entry);
+      }
+
+      @Override
+      E parse(GDataRequest request) throws IOException, ServiceException {
+        return service.parseResponseData(request, service.classOf(entry));
+      }
+    });
+  }
+
+  /**
+   * Asynchronously updates an existing entry.  If the entry has a strong
+   * entity tag, it is used as a precondition.
+   *
+   * @see Service#update(URL, IEntry)
+   */
+  public <E extends IEntry> ListenableFuture<E> update(final URL entryUrl,
+      final E entry) {
+    String etag = entry.getEtag();
+    if (GDataProtocol.isWeakEtag(etag)) {
+      etag = null;
+    }
+    return update(entryUrl, entry, etag);
+  }
+
+  /**
+   * Asynchronously updates an existing entry, conditional on its current
+   * entity tag.
+   *
+   * @see Service#update(URL, IEntry, String)
+   */
+  public <E extends IEntry> ListenableFuture<E> update(final URL entryUrl,
+      final E entry, final String etag) {
+    return submit(new Operation<E>() {
+      URL url = entryUrl;
+
+      @Override
+      GDataRequest createRequest() throws IOException, ServiceException {
+        return service.createUpdateRequest(url);
+      }
+
+      @Override
+      void redirect(URL location) {
+        url = location;
+      }
+
+      @Override
+      void prepare(GDataRequest request) throws IOException, ServiceException {
+        request.setEtag(etag);
+        service.writeRequestData(request, entry);
+      }
+
+      @Override
+      E parse(GDataRequest request) throws IOException, ServiceException {
+        return service.parseResponseData(request, service.classOf(entry));
+      }
+    });
+  }
+
+  /**
+   * Asynchronously deletes an existing entry.  The returned future completes
+   * with {@code null} once the entry has been deleted.
+   *
+   * @see Service#delete(URL, String)
+   */
+  public ListenableFuture<Void> delete(final URL resourceUrl,
+      final String etag) {
+    return submit(new Operation<Void>() {
+      URL url = resourceUrl;
+
+      @Override
+      GDataRequest createRequest() throws IOException, ServiceException {
+        return service.createDeleteRequest(url);
+      }
+
+      @Override
+      void redirect(URL location) {
+        url = location;
+      }
+
+      @Override
+      void prepare(GDataRequest request) {
+        request.setEtag(etag);
+      }
+
+      @Override
+      Void parse(GDataRequest request) {
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Asynchronously deletes an existing entry.
+   *
+   * @see Service#delete(URL)
+   */
+  public ListenableFuture<Void> delete(URL resourceUrl) {
+    return delete(resourceUrl, null);
+  }
+
+  /**
+   * Asynchronously executes the batch operations described by a feed.  The
+   * returned future fails with a
+   * {@link com.google.gdata.client.batch.BatchInterruptedException} if the
+   * server interrupted the batch.
+   *
+   * @see Service#batch(URL, IFeed)
+   */
+  public <F extends IFeed> ListenableFuture<F> batch(final URL feedUrl,
+      final F inputFeed) {
+    return submit(new Operation<F>() {
+      URL url = feedUrl;
+
+      @Override
+      GDataRequest createRequest() throws IOException, ServiceException {
+        return service.createInsertRequest(url);
+      }
+
+      @Override
+      void redirect(URL location) {
+        url = location;
+      }
+
+      @Override
+      void prepare(GDataRequest request) throws IOException, ServiceException {
+        service.writeRequestData(request, inputFeed);
+      }
+
+      @Override
+      F parse(GDataRequest request) throws IOException, ServiceException {
+        F resultFeed =
+            service.parseResponseData(request, service.classOf(inputFeed));
+        BatchUtils.throwIfInterrupted(resultFeed);
+        return resultFeed;
+      }
+    });
+  }
+
+  /**
+   * Executes an operation on the I/O executor and parses its result on the
+   * parse executor.
+   */
+  private <T> ListenableFuture<T> submit(final Operation<T> operation) {
+
+    // The executed request is handed from the I/O stage to the parse stage
+    // through this reference.  Whichever stage takes it out ends it, so it is
+    // ended exactly once even if the result is cancelled, which also cancels
+    // the I/O stage without stopping a request that is already running.
+    final AtomicReference<GDataRequest> pending =
+        new AtomicReference<GDataRequest>();
+    final AtomicReference<ListenableFuture<T>> resultRef =
+        new AtomicReference<ListenableFuture<T>>();
+
+    ListenableFuture<GDataRequest> executed =
+        ioExecutor.submit(new Callable<GDataRequest>() {
+          public GDataRequest call() throws IOException, ServiceException {
+            GDataRequest request = execute(operation, true);
+            pending.set(request);
+            ListenableFuture<T> result = resultRef.get();
+            if (result != null && result.isCancelled()) {
+              endPending(pending);
+            }
+            return request;
+          }
+        });
+    final ListenableFuture<T> result = Futures.transform(executed,
+        new AsyncFunction<GDataRequest, T>() {
+          public ListenableFuture<T> apply(GDataRequest executedRequest)
+              throws IOException, ServiceException {
+            GDataRequest request = pending.getAndSet(null);
+            if (request == null) {
+              throw new CancellationException("Operation was cancelled");
+            }
+            try {
+              service.startVersionScope();
+              return Futures.immediateFuture(operation.parse(request));
+            } finally {
+              service.endVersionScope();
+              request.end();
+            }
+          }
+        }, parseExecutor);
+    resultRef.set(result);
+
+    // If the result is cancelled after the request was executed, the parse
+    // stage never runs and the request must be ended here.
+    result.addListener(new Runnable() {
+      public void run() {
+        if (result.isCancelled()) {
+          endPending(pending);
+        }
+      }
+    }, MoreExecutors.sameThreadExecutor());
+    return result;
+  }
+
+  /**
+   * Ends the executed request held by {@code pending}, if it has not been
+   * taken by the parse stage.
+   */
+  private static void endPending(AtomicReference<GDataRequest> pending) {
+    GDataRequest request = pending.getAndSet(null);
+    if (request != null) {
+      request.end();
+    }
+  }
+
+  /**
+   * Creates, prepares and executes the request for an operation, reissuing it
+   * once on redirect or session expiration if {@code retry} is set.  The
+   * returned request has not been ended.
+   */
+  private GDataRequest execute(Operation<?> operation, boolean retry)
+      throws IOException, ServiceException {
+
+    GDataRequest request = operation.createRequest();
+    boolean success = false;
+    try {
+      service.startVersionScope();
+      operation.prepare(request);
+      request.execute();
+      success = true;
+      return request;
+    } catch (RedirectRequiredException e) {
+      if (!retry || !(service instanceof GoogleService)) {
+        throw e;
+      }
+      operation.redirect(((GoogleService) service).handleRedirectException(e));
+    } catch (SessionExpiredException e) {
+      if (!retry || !(service instanceof GoogleService)) {
+        throw e;
+      }
+      ((GoogleService) service).handleSessionExpiredException(e);
+    } finally {
+      service.endVersionScope();
+      if (!success) {
+        request.end();
+      }
+    }
+    return execute(operation, false);
+  }
+}
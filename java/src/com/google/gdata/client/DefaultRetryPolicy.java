@@ -0,0 +1,322 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client;
+
+import com.google.gdata.data.DateTime;
+import com.google.gdata.util.ParseException;
+import com.google.gdata.util.RateLimitExceededException;
+import com.google.gdata.util.ServiceException;
+import com.google.gdata.util.ServiceUnavailableException;
+
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The default {@link RetryPolicy}.  Transient failures are retried after a
+ * randomized delay, up to a number of retries configured per
+ * {@link ErrorClass}:
+ * <ul>
+ * <li>Delays use "decorrelated jitter": each delay is drawn at random between
+ * the base delay and three times the previous delay, capped at the maximum
+ * delay.  Clients that failed at the same time, for example on the same
+ * service outage, therefore retry at different times rather than all at
+ * once.</li>
+ * <li>If the server sent a {@code Retry-After} header, the request is retried
+ * after the time it asked for, plus a random delay.  Like any other delay,
+ * this is capped at the maximum delay, so a server asking to wait longer
+ * cannot block the caller for longer than configured.</li>
+ * <li>Retries are limited by a retry budget: every request adds a fraction
+ * of a token to the budget and every retry takes a whole token.  When the
+ * service is failing persistently, the budget runs out and failures are
+ * reported immediately instead of multiplying the load on the service.</li>
+ * </ul>
+ * Counters of requests and retries are kept for monitoring.  An instance can
+ * be shared by several services.
+ * <p>
+ * Retry delays are waited in the thread executing the request.  Interrupting
+ * that thread ends the wait, and the request fails with the last error.
+ */
+public class DefaultRetryPolicy implements RetryPolicy {
+
+  /**
+   * Kinds of transient failure that can be retried.
+   */
+  public enum ErrorClass {
+
+    /** The request was rejected because of too many requests. */
+    RATE_LIMITED,
+
+    /** The service was temporarily unavailable. */
+    UNAVAILABLE,
+
+    /**
+     * The connection or the response timed out.  The request may have been
+     * processed, so it is only retried if it is idempotent.
+     */
+    TIMEOUT,
+
+    /** The connection could not be established. */
+    CONNECTION
+  }
+
+  /**
+   * Default base delay before retrying (500 ms).
+   */
+  public static final long DEFAULT_BASE_DELAY_MS = 500L;
+
+  /**
+   * Default maximum delay before retrying (64 s).
+   */
+  public static final long DEFAULT_MAX_DELAY_MS = 64000L;
+
+  /**
+   * Default maximum number of retries of a request, for each error class.
+   */
+  public static final int DEFAULT_MAX_RETRIES = 3;
+
+  /**
+   * Default fraction of a retry added to the budget by each request, allowing
+   * retries for about 10% of the requests.
+   */
+  public static final double DEFAULT_BUDGET_PER_REQUEST = 0.1;
+
+  /**
+   * Default maximum number of retries in the budget, which is also the
+   * initial budget.
+   */
+  public static final double DEFAULT_MAX_BUDGET = 20;
+
+  private static final Random random = new Random();
+
+  private final Map<ErrorClass, Integer> maxRetries =
+      new EnumMap<ErrorClass, Integer>(ErrorClass.class);
+  private volatile long baseDelayMs = DEFAULT_BASE_DELAY_MS;
+  private volatile long maxDelayMs = DEFAULT_MAX_DELAY_MS;
+  private double budgetPerRequest = DEFAULT_BUDGET_PER_REQUEST;
+  private double maxBudget = DEFAULT_MAX_BUDGET;
+
+  /** Number of retries currently available. */
+  private double budget = DEFAULT_MAX_BUDGET;
+
+  private final AtomicLong requestCount = new AtomicLong();
+  private final Map<ErrorClass, AtomicLong> retryCounts =
+      new EnumMap<ErrorClass, AtomicLong>(ErrorClass.class);
+  private final AtomicLong budgetExhaustedCount = new AtomicLong();
+  private final AtomicLong retriesExhaustedCount = new AtomicLong();
+
+  /**
+   * Constructs a retry policy with the default settings.
+   */
+  public DefaultRetryPolicy() {
+    for (ErrorClass errorClass : ErrorClass.values()) {
+      maxRetries.put(errorClass, DEFAULT_MAX_RETRIES);
+      retryCounts.put(errorClass, new AtomicLong());
+    }
+  }
+
+  /**
+   * Sets the bounds of the retry delays.
+   *
+   * @param baseDelay smallest delay before retrying
+   * @param maxDelay largest delay before retrying, which also caps the
+   *     delays asked for by {@code Retry-After}
+   * @param unit unit of the delays
+   */
+  public void setDelays(long baseDelay, long maxDelay, TimeUnit unit) {
+    if (baseDelay <= 0 || maxDelay < baseDelay) {
+      throw new IllegalArgumentException("Invalid delays");
+    }
+    this.baseDelayMs = unit.toMillis(baseDelay);
+    this.maxDelayMs = unit.toMillis(maxDelay);
+  }
+
+  /**
+   * Sets the maximum number of times a request failing with errors of a
+   * given class is retried.  Setting it to 0 disables retries for the class.
+   */
+  public synchronized void setMaxRetries(ErrorClass errorClass,
+      int retries) {
+    if (retries < 0) {
+      throw new IllegalArgumentException("Negative retries");
+    }
+    maxRetries.put(errorClass, retries);
+  }
+
+  /**
+   * Sets the retry budget.
+   *
+   * @param perRequest fraction of a retry added to the budget by each request
+   * @param max maximum number of retries the budget can hold
+   */
+  public synchronized void setBudget(double perRequest, double max) {
+    if (perRequest < 0 || max < 1) {
+      throw new IllegalArgumentException("Invalid budget");
+    }
+    this.budgetPerRequest = perRequest;
+    this.maxBudget = max;
+    this.budget = Math.min(budget, max);
+  }
+
+  public synchronized void requestStarted() {
+    requestCount.incrementAndGet();
+    budget = Math.min(maxBudget, budget + budgetPerRequest);
+  }
+
+  public long getRetryDelay(int retryCount, long previousDelayMs,
+      Exception failure, boolean idempotent) {
+
+    ErrorClass errorClass = getErrorClass(failure);
+    if (errorClass == null
+        || (errorClass == ErrorClass.TIMEOUT && !idempotent)) {
+      return STOP;
+    }
+
+    long retryAfterMs = getRetryAfterMs(failure);
+
+    synchronized (this) {
+      if (retryCount > maxRetries.get(errorClass)) {
+        retriesExhaustedCount.incrementAndGet();
+        return STOP;
+      }
+      if (budget < 1) {
+        budgetExhaustedCount.incrementAndGet();
+        return STOP;
+      }
+      budget--;
+    }
+    retryCounts.get(errorClass).incrementAndGet();
+
+    long previous = Math.max(baseDelayMs, previousDelayMs);
+    long delayMs = Math.min(maxDelayMs, randomBetween(baseDelayMs,
+        previous * 3));
+    if (retryAfterMs >= 0) {
+      // Spread the retries of the clients that were sent the same value.
+      delayMs = Math.min(maxDelayMs,
+          retryAfterMs + randomBetween(0, delayMs));
+    }
+    return delayMs;
+  }
+
+  /**
+   * Returns the class of a failure, or {@code null} if it should not be
+   * retried.
+   */
+  protected ErrorClass getErrorClass(Exception failure) {
+    if (failure instanceof RateLimitExceededException) {
+      return ErrorClass.RATE_LIMITED;
+    }
+    if (failure instanceof ServiceUnavailableException) {
+      return ErrorClass.UNAVAILABLE;
+    }
+    if (failure instanceof SocketTimeoutException) {
+      return ErrorClass.TIMEOUT;
+    }
+    if (failure instanceof ConnectException
+        || failure instanceof NoRouteToHostException) {
+      return ErrorClass.CONNECTION;
+    }
+    return null;
+  }
+
+  /**
+   * Returns the number of milliseconds the server asked to wait before
+   * retrying, or -1 if it did not say.
+   */
+  static long getRetryAfterMs(Exception failure) {
+    if (failure instanceof ServiceUnavailableException) {
+      int retryTime = ((ServiceUnavailableException) failure).getRetryTime();
+      if (retryTime >= 0) {
+        return retryTime * 1000L;
+      }
+    }
+    if (!(failure instanceof ServiceException)) {
+      return -1;
+    }
+    List<String> values =
+        ((ServiceException) failure).getHttpHeader("Retry-After");
+    if (values == null || values.isEmpty()) {
+      return -1;
+    }
+    String value = values.get(0).trim();
+    try {
+      return Math.max(0, Long.parseLong(value) * 1000L);
+    } catch (NumberFormatException e) {
+      // Not a number of seconds, try an HTTP date.
+    }
+    try {
+      return Math.max(0, DateTime.parseRfc822(value).getValue()
+          - System.currentTimeMillis());
+    } catch (ParseException e) {
+      return -1;
+    }
+  }
+
+  private static long randomBetween(long min, long max) {
+    if (max <= min) {
+      return min;
+    }
+    return min + (long) (random.nextDouble() * (max - min));
+  }
+
+  /**
+   * Returns the number of requests started.
+   */
+  public long getRequestCount() {
+    return requestCount.get();
+  }
+
+  /**
+   * Returns the number of retries made for errors of a given class.
+   */
+  public long getRetryCount(ErrorClass errorClass) {
+    return retryCounts.get(errorClass).get();
+  }
+
+  /**
+   * Returns the total number of retries made.
+   */
+  public long getRetryCount() {
+    long count = 0;
+    for (AtomicLong retries : retryCounts.values()) {
+      count += retries.get();
+    }
+    return count;
+  }
+
+  /**
+   * Returns the number of failures that were not retried because the retry
+   * budget was exhausted.
+   */
+  public long getBudgetExhaustedCount() {
+    return budgetExhaustedCount.get();
+  }
+
+  /**
+   * Returns the number of failures that were not retried because the
+   * request had already been retried the maximum number of times.
+   */
+  public long getRetriesExhaustedCount() {
+    return retriesExhaustedCount.get();
+  }
+}
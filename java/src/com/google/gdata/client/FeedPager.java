@@ -0,0 +1,364 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client;
+
+import com.google.gdata.data.IFeed;
+import com.google.gdata.data.ILink;
+import com.google.gdata.util.ServiceException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Reads the pages of a paged feed in order, fetching the following pages on
+ * an executor while the current one is being consumed.
+ * <p>
+ * By default, pages are found by following the {@code rel="next"} link of
+ * each page, so page N+1 is requested as soon as page N has been received.
+ * The number of pages fetched ahead of the caller is bounded by
+ * {@link #setReadAhead(int)}.
+ * <p>
+ * If start index paging is enabled with {@link #setStartIndexPaging(boolean)}
+ * and the first page reports the total number of results, the remaining
+ * pages are instead requested by setting the start index and maximum results
+ * of the query, and as many pages as the read-ahead allows are fetched in
+ * parallel.  Entries added or removed while the feed is read can then be
+ * returned twice or skipped, so this should only be enabled for feeds that
+ * do not change during the read, or where that is acceptable.
+ * <p>
+ * A pager is used by a single caller thread.  It must be closed if it is not
+ * read to the end, to cancel the pages being fetched.
+ *
+ * @param <F> feed type
+ */
+public class FeedPager<F extends IFeed> implements Closeable {
+
+  /**
+   * Default number of pages fetched ahead of the caller.
+   */
+  public static final int DEFAULT_READ_AHEAD = 1;
+
+  private final Service service;
+  private final Class<F> feedClass;
+  private final Executor executor;
+
+  /** Query of the feed, or {@code null} if paged by URL. */
+  private final Query query;
+
+  /** URL of the first page. */
+  private final URL firstUrl;
+
+  private int readAhead = DEFAULT_READ_AHEAD;
+  private boolean startIndexPaging;
+
+  /** Pages requested and not yet returned, in feed order. */
+  private final LinkedList<Future<F>> pages = new LinkedList<Future<F>>();
+
+  /** Next page to request by following links, if not requested yet. */
+  private URL nextUrl;
+
+  /** {@code true} if the remaining pages are requested by start index. */
+  private boolean indexPaging;
+  private int nextStartIndex;
+  private int pageSize;
+  private int totalResults;
+
+  private boolean started;
+  private boolean closed;
+
+  /**
+   * Constructs a pager over the results of a query.
+   *
+   * @param service the service that retrieves the pages
+   * @param query the feed query, which must not be modified while the pager
+   *     is in use
+   * @param feedClass the class used to represent the pages
+   * @param executor the executor fetching the pages
+   */
+  public FeedPager(Service service, Query query, Class<F> feedClass,
+      Executor executor) {
+    this(service, query, query.getUrl(), feedClass, executor);
+  }
+
+  /**
+   * Constructs a pager over a feed.  Pages are found by following links, as
+   * there is no query to set the start index on.
+   *
+   * @param service the service that retrieves the pages
+   * @param feedUrl the URL of the first page
+   * @param feedClass the class used to represent the pages
+   * @param executor the executor fetching the pages
+   */
+  public FeedPager(Service service, URL feedUrl, Class<F> feedClass,
+      Executor executor) {
+    this(service, null, feedUrl, feedClass, executor);
+  }
+
+  private FeedPager(Service service, Query query, URL firstUrl,
+      Class<F> feedClass, Executor executor) {
+    if (service == null) {
+      throw new NullPointerException("service");
+    }
+    this.service = service;
+    this.query = query;
+    this.firstUrl = firstUrl;
+    this.feedClass = feedClass;
+    this.executor = executor;
+  }
+
+  /**
+   * Sets the maximum number of pages fetched ahead of the caller, 0 to fetch
+   * each page only when it is requested.  With start index paging, this is
+   * also the number of pages fetched in parallel.
+   */
+  public synchronized void setReadAhead(int pages) {
+    if (pages < 0) {
+      throw new IllegalArgumentException("Negative read-ahead");
+    }
+    this.readAhead = pages;
+  }
+
+  /**
+   * Sets whether the pages following the first one may be requested by start
+   * index, allowing them to be fetched in parallel.  Only used when the pager
+   * was constructed with a query.  Disabled by default.
+   */
+  public synchronized void setStartIndexPaging(boolean enabled) {
+    this.startIndexPaging = enabled;
+  }
+
+  /**
+   * Returns the next page of the feed, waiting for it to be fetched if
+   * necessary, or {@code null} once all the pages have been returned.  If a
+   * page cannot be fetched, its error is thrown and the pager is closed.
+   *
+   * @return the next page, or {@code null}
+   * @throws IOException error sending a request or reading a page
+   * @throws ServiceException error retrieving a page
+   */
+  public F nextPage() throws IOException, ServiceException {
+    Future<F> future;
+    boolean first;
+    synchronized (this) {
+      if (closed) {
+        return null;
+      }
+      first = !started;
+      if (first) {
+        started = true;
+        submit(firstUrl, false);
+      } else if (pages.isEmpty()) {
+        // Nothing was read ahead, request the next page now.
+        fill(1);
+      }
+      if (pages.isEmpty()) {
+        close();
+        return null;
+      }
+      future = pages.removeFirst();
+    }
+
+    F page;
+    boolean success = false;
+    try {
+      page = await(future);
+      success = true;
+    } finally {
+      if (!success) {
+        close();
+      }
+    }
+
+    synchronized (this) {
+      if (first) {
+        startPaging(page);
+      }
+      fill(readAhead);
+    }
+    return page;
+  }
+
+  /**
+   * Cancels the pages being fetched.  Closing a pager that is already closed
+   * has no effect.
+   */
+  public synchronized void close() {
+    closed = true;
+    nextUrl = null;
+    for (Future<F> future : pages) {
+      future.cancel(true);
+    }
+    pages.clear();
+  }
+
+  /**
+   * Chooses how the pages following the first one are requested.
+   */
+  private void startPaging(F firstPage) throws IOException {
+    ILink next = firstPage.getNextLink();
+    if (next == null) {
+      return;
+    }
+    if (query != null && startIndexPaging) {
+      totalResults = firstPage.getTotalResults();
+      pageSize = firstPage.getItemsPerPage();
+      if (pageSize <= 0) {
+        pageSize = query.getMaxResults();
+      }
+      int startIndex = firstPage.getStartIndex();
+      if (startIndex == Query.UNDEFINED) {
+        startIndex = (query.getStartIndex() == Query.UNDEFINED)
+            ? 1 : query.getStartIndex();
+      }
+      if (totalResults != Query.UNDEFINED && pageSize > 0) {
+        indexPaging = true;
+        nextStartIndex = startIndex + pageSize;
+        return;
+      }
+    }
+    nextUrl = new URL(next.getHref());
+  }
+
+  /**
+   * Requests pages until {@code count} pages are pending or all the pages
+   * have been requested.
+   */
+  private void fill(int count) {
+    if (closed) {
+      return;
+    }
+    if (indexPaging) {
+      while (pages.size() < count && nextStartIndex <= totalResults) {
+        submit(getPageUrl(nextStartIndex), false);
+        nextStartIndex += pageSize;
+      }
+    } else if (nextUrl != null && pages.size() < count) {
+      submitNext();
+    }
+  }
+
+  /** Requests the page found by following the link of the previous page. */
+  private void submitNext() {
+    // Cleared first, as the executor may run the request on this thread and
+    // set the link of the page it fetches.
+    URL url = nextUrl;
+    nextUrl = null;
+    submit(url, true);
+  }
+
+  /**
+   * Called by the executor when a page found by following links has been
+   * fetched, to request the page it links to.
+   */
+  private synchronized void linkedPageFetched(F page) throws IOException {
+    ILink next = page.getNextLink();
+    if (closed || next == null) {
+      return;
+    }
+    nextUrl = new URL(next.getHref());
+    fill(readAhead);
+  }
+
+  /** Returns the URL of the page starting at a given index. */
+  private URL getPageUrl(int startIndex) {
+    int queryStartIndex = query.getStartIndex();
+    int queryMaxResults = query.getMaxResults();
+    try {
+      query.setStartIndex(startIndex);
+      query.setMaxResults(pageSize);
+      return query.getUrl();
+    } finally {
+      query.setStartIndex(queryStartIndex);
+      query.setMaxResults(queryMaxResults);
+    }
+  }
+
+  /**
+   * Requests a page.  If the executor rejects the request, the page fails
+   * with the {@link RejectedExecutionException}, which is thrown when the
+   * page is returned.
+   *
+   * @param url URL of the page
+   * @param followLinks {@code true} if the page it links to should be
+   *     requested once the page has been fetched
+   */
+  private void submit(final URL url, final boolean followLinks) {
+    PageTask task = new PageTask(new Callable<F>() {
+      public F call() throws IOException, ServiceException {
+        F page = service.getFeed(url, feedClass);
+        if (followLinks) {
+          linkedPageFetched(page);
+        }
+        return page;
+      }
+    });
+    // Queued before it runs, so the pages it requests are queued after it.
+    pages.add(task);
+    try {
+      executor.execute(task);
+    } catch (RejectedExecutionException e) {
+      task.reject(e);
+    }
+  }
+
+  /** Task fetching a page, which can be failed if it is never run. */
+  private class PageTask extends FutureTask<F> {
+
+    PageTask(Callable<F> callable) {
+      super(callable);
+    }
+
+    /** Fails the page, as the executor would not run it. */
+    void reject(RejectedExecutionException e) {
+      setException(e);
+    }
+  }
+
+  /** Waits for a page, throwing the error it could not be fetched with. */
+  private F await(Future<F> future) throws IOException, ServiceException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted waiting for a page");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof ServiceException) {
+        throw (ServiceException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException(cause);
+    }
+  }
+}
@@ -0,0 +1,355 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client;
+
+import com.google.gdata.client.Service.GDataRequest;
+import com.google.gdata.data.AbstractExtension;
+import com.google.gdata.data.BaseEntry;
+import com.google.gdata.data.BaseFeed;
+import com.google.gdata.data.Feed;
+import com.google.gdata.util.PullXmlParser;
+import com.google.gdata.util.ServiceException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * An iterator over the entries of a feed retrieved from a service, which
+ * parses each entry as it is read from the response instead of building the
+ * whole feed in memory.  The memory used is therefore independent of the
+ * number of entries in the feed.
+ * <p>
+ * The feed-level data that precedes the entries in the response, such as the
+ * feed title, links or total number of results, is available from
+ * {@link #getFeed()} as soon as the stream is returned.  Data that follows
+ * the entries is added to it as the entries are read.  The entries returned
+ * by the stream are never added to the feed.
+ * <p>
+ * As when a whole feed is parsed, the feed and its entries are associated
+ * with the service.  When the feed is parsed as a generic {@link Feed}, the
+ * adapted feed and entries for its kind, such as a {@code ContactFeed} and
+ * its {@code ContactEntry} entries, do not extend {@link Feed} and
+ * {@code Entry}.  {@link #getFeed()} and {@link #nextEntry()} therefore
+ * return the generic feed and entries, and {@link #getAdaptedFeed()} and
+ * {@link #nextAdaptedEntry()} return them adapted to their kind.
+ * <p>
+ * The stream holds the underlying request open, so it must be closed once
+ * the entries have been read, typically in a {@code finally} block.  It is
+ * closed automatically when the last entry has been read.
+ * <p>
+ * Errors raised while reading an entry are thrown as checked exceptions by
+ * {@link #nextEntry()}.  The {@link Iterator} methods wrap them in a
+ * {@link StreamException}.
+ * <p>
+ * A stream is not thread-safe.
+ *
+ * @param <E> entry type
+ * @see Service#streamFeed(Query, Class)
+ */
+public class FeedStream<E extends BaseEntry<?>>
+    implements Iterator<E>, Closeable {
+
+  /**
+   * Unchecked exception thrown by the {@link Iterator} methods of a
+   * {@link FeedStream} when an entry could not be read.  The cause is the
+   * {@link IOException} or {@link ServiceException} that was raised.
+   */
+  public static class StreamException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    StreamException(Exception cause) {
+      super(cause.getMessage(), cause);
+    }
+  }
+
+  private final Service service;
+  private final GDataRequest request;
+  private final boolean disableValidation;
+
+  /** Feed into which the response is parsed. */
+  private final BaseFeed<?, E> parsedFeed;
+
+  /** Feed adapted to its kind, or {@code null} if it has no adaptor. */
+  private BaseFeed<?, ?> adaptedFeed;
+
+  /** {@code true} if the entries must be adapted to their kind. */
+  private final boolean adapting;
+
+  /** Parser reading the response, or {@code null} if it was fully parsed. */
+  private final PullXmlParser parser;
+
+  /** Entries read from a fully parsed response. */
+  private final LinkedList<E> parsedEntries = new LinkedList<E>();
+
+  /** The next entry to return, if it was read ahead by {@link #hasNext()}. */
+  private E pending;
+
+  private boolean closed;
+
+  /**
+   * Constructs a stream parsing the entries of a response one at a time.
+   * Parses the response until the first entry, so the feed-level data that
+   * precedes the entries is available.
+   *
+   * @param service service that executed the request
+   * @param request executed request, which is ended when the stream is
+   *     closed
+   * @param feed feed into which feed-level data is parsed
+   * @param parser parser reading the response into {@code feed}
+   * @param disableValidation {@code true} if the response must be parsed
+   *     without strict validation
+   */
+  FeedStream(Service service, GDataRequest request, BaseFeed<?, E> feed,
+      PullXmlParser parser, boolean disableValidation)
+      throws IOException, ServiceException {
+    this.service = service;
+    this.request = request;
+    this.parsedFeed = feed;
+    this.parser = parser;
+    this.disableValidation = disableValidation;
+    this.adapting = feed.getClass() == Feed.class;
+
+    startParse();
+    try {
+      while (feed.getEntries().isEmpty() && parser.next()) {
+        // Continue until the first entry starts.
+      }
+    } finally {
+      endParse();
+    }
+    feed.setService(service);
+    if (adapting) {
+      adaptFeed();
+    }
+  }
+
+  /**
+   * Constructs a stream over the entries of a fully parsed feed, for
+   * responses that cannot be parsed incrementally.  The entries are removed
+   * from the feed.
+   *
+   * @param service service that executed the request
+   * @param request executed request, which is ended when the stream is
+   *     closed
+   * @param feed parsed feed
+   */
+  FeedStream(Service service, GDataRequest request, BaseFeed<?, E> feed) {
+    this.service = service;
+    this.request = request;
+    this.parsedFeed = feed;
+    this.parser = null;
+    this.disableValidation = false;
+    this.adapting = false;
+
+    List<E> entries = feed.getEntries();
+    parsedEntries.addAll(entries);
+    entries.clear();
+  }
+
+  /**
+   * Adapts the feed to its kind, using the kind categories parsed before the
+   * first entry.  The adapted feed shares the state of the parsed one, so
+   * data parsed after the entries is visible through it.
+   */
+  private void adaptFeed() throws ServiceException {
+    BaseFeed<?, ?> adapted = parsedFeed.getAdaptedFeed();
+    if (adapted != null && adapted != parsedFeed) {
+      // Adapting copies the first entry, which is returned by the stream.
+      adapted.getEntries().clear();
+      adapted.setService(service);
+      adaptedFeed = adapted;
+    }
+  }
+
+  /**
+   * Returns the feed, holding the feed-level data parsed so far but none of
+   * the entries.
+   */
+  public BaseFeed<?, E> getFeed() {
+    return parsedFeed;
+  }
+
+  /**
+   * Returns the feed adapted to its kind, holding the feed-level data parsed
+   * so far but none of the entries.  This is the feed returned by
+   * {@link #getFeed()} if it was not parsed as a generic {@link Feed}, or if
+   * its kind has no adaptor.
+   */
+  public BaseFeed<?, ?> getAdaptedFeed() {
+    return (adaptedFeed != null) ? adaptedFeed : parsedFeed;
+  }
+
+  /**
+   * Returns the next entry of the feed adapted to its kind, or {@code null}
+   * once all the entries have been read or the stream was closed.  The entry
+   * is returned as read by {@link #nextEntry()} if the feed was not parsed as
+   * a generic {@link Feed}, or if the entry's kind has no adaptor.
+   *
+   * @return the next entry, or {@code null}
+   * @throws IOException error reading the response
+   * @throws ServiceException error parsing the response
+   */
+  public BaseEntry<?> nextAdaptedEntry() throws IOException, ServiceException {
+    E entry = nextEntry();
+    if (entry == null || !adapting) {
+      return entry;
+    }
+    BaseEntry<?> adaptedEntry = entry.getAdaptedEntry();
+    if (adaptedEntry == null) {
+      return entry;
+    }
+    adaptedEntry.setService(service);
+    return adaptedEntry;
+  }
+
+  /**
+   * Returns the next entry of the feed, or {@code null} once all the entries
+   * have been read or the stream was closed.
+   *
+   * @return the next entry, or {@code null}
+   * @throws IOException error reading the response
+   * @throws ServiceException error parsing the response
+   */
+  public E nextEntry() throws IOException, ServiceException {
+    if (pending != null) {
+      E entry = pending;
+      pending = null;
+      return entry;
+    }
+    if (closed) {
+      return null;
+    }
+
+    E entry;
+    boolean success = false;
+    try {
+      entry = (parser == null) ? parsedEntries.poll() : parseEntry();
+      success = true;
+    } finally {
+      if (!success) {
+        close();
+      }
+    }
+    if (entry == null) {
+      close();
+    }
+    return entry;
+  }
+
+  /**
+   * Parses the response until the end of the next entry.
+   *
+   * @return the entry, or {@code null} if the end of the feed was reached
+   */
+  private E parseEntry() throws IOException, ServiceException {
+    List<E> entries = parsedFeed.getEntries();
+    startParse();
+    try {
+      while (parser.next()) {
+        if (parser.getDepth() == 1 && !entries.isEmpty()) {
+          E entry = entries.remove(0);
+          entry.setService(service);
+          return entry;
+        }
+      }
+      return null;
+    } finally {
+      endParse();
+    }
+  }
+
+  /**
+   * Sets the parsing context of the current thread.  The stream can be read
+   * from any thread, so the context is set for each entry.
+   */
+  private void startParse() {
+    service.startVersionScope();
+    if (disableValidation) {
+      AbstractExtension.disableStrictValidation();
+    }
+  }
+
+  /** Resets the parsing context set by {@link #startParse()}. */
+  private void endParse() {
+    if (disableValidation) {
+      AbstractExtension.enableStrictValidation();
+    }
+    service.endVersionScope();
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @throws StreamException if the next entry could not be read
+   */
+  public boolean hasNext() {
+    if (pending == null) {
+      try {
+        pending = nextEntry();
+      } catch (IOException e) {
+        throw new StreamException(e);
+      } catch (ServiceException e) {
+        throw new StreamException(e);
+      }
+    }
+    return pending != null;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @throws StreamException if the next entry could not be read
+   */
+  public E next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    E entry = pending;
+    pending = null;
+    return entry;
+  }
+
+  /**
+   * Not supported.
+   *
+   * @throws UnsupportedOperationException always
+   */
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Ends the underlying request.  Entries that have not been read yet are
+   * discarded.  Closing a stream that is already closed has no effect.
+   */
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    parsedEntries.clear();
+    if (parser != null) {
+      parser.close();
+    }
+    request.end();
+  }
+}
@@ -49,6 +49,9 @@ import java.security.GeneralSecurityException;
 import java.security.PrivateKey;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 /**
  * A factory for creating Google authentication tokens (ClientLogin and
@@ -79,6 +82,9 @@ public class GoogleAuthTokenFactory implements AuthTokenFactory {
   // Current auth token.
   private HttpAuthToken authToken;
 
+  // Refresher the current OAuth 2.0 token is registered with, if any.
+  private OAuth2TokenRefresher oauth2Refresher;
+
   // Listener for token-related changes.
   private TokenListener tokenListener;
 
@@ -172,6 +178,15 @@ public class GoogleAuthTokenFactory implements AuthTokenFactory {
     OAuthParameters parameters;
     final OAuthSigner signer;
 
+    /** Helper generating three-legged OAuth headers, created on first use. */
+    private GoogleOAuthHelper oauthHelper;
+
+    /** Helper generating two-legged OAuth headers, created on first use. */
+    private TwoLeggedOAuthHelper twoLeggedOAuthHelper;
+
+    /** The parameters {@link #twoLeggedOAuthHelper} was created for. */
+    private OAuthParameters twoLeggedParameters;
+
     /**
      * Create a new {@link OAuthToken} object.  Store the
      * {@link OAuthParameters} and {@link OAuthSigner} to use when generating
@@ -201,31 +216,67 @@ public class GoogleAuthTokenFactory implements AuthTokenFactory {
     public String getAuthorizationHeader(URL requestUrl, String requestMethod) {
       try {
         if (parameters.getOAuthType() == OAuthType.TWO_LEGGED_OAUTH) {
-          TwoLeggedOAuthHelper twoLeggedOAuthHelper
-              = new TwoLeggedOAuthHelper(signer, parameters);
-          return twoLeggedOAuthHelper.getAuthorizationHeader(requestUrl.toString(),
-              requestMethod);
+          return getTwoLeggedOAuthHelper().getAuthorizationHeader(
+              requestUrl.toString(), requestMethod);
         } else {
-          GoogleOAuthHelper oauthHelper = new GoogleOAuthHelper(signer);
-          return oauthHelper.getAuthorizationHeader(requestUrl.toString(),
+          return getOAuthHelper().getAuthorizationHeader(requestUrl.toString(),
             requestMethod, parameters);
         }
       } catch (OAuthException e) {
         throw new RuntimeException(e);
       }
     }
+
+    /**
+     * Returns the helper generating three-legged OAuth headers.  The helper
+     * only holds the signer, so a single instance serves every request.
+     */
+    private synchronized GoogleOAuthHelper getOAuthHelper() {
+      if (oauthHelper == null) {
+        oauthHelper = new GoogleOAuthHelper(signer);
+      }
+      return oauthHelper;
+    }
+
+    /**
+     * Returns the helper generating two-legged OAuth headers for the current
+     * parameters, creating a new helper only if the parameters were replaced.
+     */
+    private synchronized TwoLeggedOAuthHelper getTwoLeggedOAuthHelper() {
+      if (twoLeggedOAuthHelper == null || twoLeggedParameters != parameters) {
+        twoLeggedOAuthHelper = new TwoLeggedOAuthHelper(signer, parameters);
+        twoLeggedParameters = parameters;
+      }
+      return twoLeggedOAuthHelper;
+    }
   }
 
 
   /**
    * Encapsulates the OAuth 2.0 information used by applications to login on
    * behalf of a user.
+   * <p>
+   * Concurrent calls to {@link #refreshToken()} are coalesced into a single
+   * request to the authorization endpoint, whose result is returned to all
+   * the callers.  While a refresh is in progress, authorization headers are
+   * generated from the previous access token instead of waiting for it, as
+   * the {@link Credential} is locked during the refresh.  Tokens can be
+   * refreshed before they expire with an {@link OAuth2TokenRefresher}.
    */
   public static class OAuth2Token implements HttpAuthToken {
 
     static final String HEADER_PREFIX = "Bearer ";
     final Credential credential;
 
+    /** Last access token read from the credential. */
+    private volatile String accessToken;
+
+    /** Whether a refresh is in progress. */
+    private volatile boolean refreshing;
+
+    /** The refresh in progress, or {@code null}.  Guarded by this. */
+    private FutureTask<Boolean> refresh;
+
     /**
      * Create a new {@link OAuth2Token} object.  Store the {@link Credential} to
      * use when generating the header.
@@ -234,6 +285,14 @@ public class GoogleAuthTokenFactory implements AuthTokenFactory {
      */
     public OAuth2Token(Credential credential) {
       this.credential = credential;
+      this.accessToken = credential.getAccessToken();
+    }
+
+    /**
+     * Returns the OAuth 2.0 credentials of the token.
+     */
+    public Credential getCredential() {
+      return credential;
     }
 
     /**
@@ -244,23 +303,69 @@ public class GoogleAuthTokenFactory implements AuthTokenFactory {
      * @return the authorization header to be used for the request
      */
     public String getAuthorizationHeader(URL requestUrl, String requestMethod) {
-      return HEADER_PREFIX + this.credential.getAccessToken();
+      String token = accessToken;
+      if (!refreshing || token == null) {
+        token = credential.getAccessToken();
+        accessToken = token;
+      }
+      return HEADER_PREFIX + token;
     }
 
     /**
      * Use the {@link Credential} to request a new access token from the
-     * authorization endpoint.
+     * authorization endpoint.  If a refresh is already in progress, waits
+     * for it and returns its result instead of starting another one.
      *
      * @return whether a new access token was successfully retrieved
      */
     public boolean refreshToken() throws AuthenticationException {
+      FutureTask<Boolean> task;
+      boolean owner = false;
+      synchronized (this) {
+        task = refresh;
+        if (task == null) {
+          task = new FutureTask<Boolean>(new Callable<Boolean>() {
+            public Boolean call() throws IOException {
+              return credential.refreshToken();
+            }
+          });
+          refresh = task;
+          refreshing = true;
+          owner = true;
+        }
+      }
+
+      if (owner) {
+        try {
+          task.run();
+        } finally {
+          synchronized (this) {
+            refresh = null;
+          }
+          accessToken = credential.getAccessToken();
+          refreshing = false;
+        }
+      }
+
       try {
-        return this.credential.refreshToken();
-      } catch (IOException e) {
-        AuthenticationException ae =
-            new AuthenticationException("Failed to refresh access token: " + e.getMessage());
+        return task.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        AuthenticationException ae = new AuthenticationException(
+            "Interrupted while refreshing access token");
         ae.initCause(e);
         throw ae;
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        AuthenticationException ae = new AuthenticationException(
+            "Failed to refresh access token: " + cause.getMessage());
+        ae.initCause(cause);
+        throw ae;
       }
     }
   }
@@ -465,12 +570,32 @@ public class GoogleAuthTokenFactory implements AuthTokenFactory {
     setAuthToken(new OAuth2Token(credential));
   }
 
+  /**
+   * Sets the OAuth 2.0 credentials used to generate the authorization header,
+   * and refreshes their access token before it expires.  The token is no
+   * longer refreshed once another token is set.
+   *
+   * @param credential the OAuth 2.0 credentials to use to generate the header
+   * @param refresher the refresher of the access token
+   */
+  public void setOAuth2Credentials(Credential credential,
+      OAuth2TokenRefresher refresher) {
+    OAuth2Token token = new OAuth2Token(credential);
+    setAuthToken(token);
+    refresher.register(token);
+    oauth2Refresher = refresher;
+  }
+
   /**
    * Set the authentication token.
    *
    * @param authToken authentication token
    */
   public void setAuthToken(HttpAuthToken authToken) {
+    if (oauth2Refresher != null) {
+      oauth2Refresher.unregister((OAuth2Token) this.authToken);
+      oauth2Refresher = null;
+    }
     this.authToken = authToken;
     if (tokenListener != null) {
       tokenListener.tokenChanged(authToken);
@@ -26,6 +26,8 @@ import com.google.gdata.client.authn.oauth.OAuthSigner;
 import com.google.gdata.client.batch.BatchInterruptedException;
 import com.google.gdata.client.http.GoogleGDataRequest;
 import com.google.gdata.client.http.GoogleGDataRequest.GoogleCookie;
+import com.google.gdata.data.BaseEntry;
+import com.google.gdata.data.BaseFeed;
 import com.google.gdata.data.DateTime;
 import com.google.gdata.data.IEntry;
 import com.google.gdata.data.IFeed;
@@ -36,8 +38,13 @@ import com.google.gdata.util.ServiceException;
 
 import java.io.IOException;
 import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.security.PrivateKey;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -58,6 +65,10 @@ public class GoogleService extends Service implements TokenListener {
   private CookieManager cookieManager;
 
 
+  // Redirect cache, or null if redirects are not cached.
+  private RedirectCache redirectCache;
+
+
   /**
    * Authentication failed, invalid credentials presented to server.
    */
@@ -277,6 +288,43 @@ public class GoogleService extends Service implements TokenListener {
    */
   public void setCookieManager(CookieManager cookieManager) {
     this.cookieManager = cookieManager;
+    clearRedirects();
+  }
+
+
+  /**
+   * Returns the {@link RedirectCache} currently associated with the service,
+   * or {@code null} if redirects are not cached.
+   */
+  public RedirectCache getRedirectCache() {
+    return redirectCache;
+  }
+
+
+  /**
+   * Sets the {@link RedirectCache} used to send requests straight to the
+   * session they were previously redirected to, and queries to the location
+   * they were previously redirected to permanently.  Redirects are not
+   * cached unless a cache is set.  A cache can be shared by services for the
+   * same user.
+   *
+   * @param redirectCache redirect cache, or {@code null} to always send
+   *     requests to their original URL
+   */
+  public void setRedirectCache(RedirectCache redirectCache) {
+    this.redirectCache = redirectCache;
+  }
+
+
+  /**
+   * Flushes the cached redirects, which may point to locations bound to
+   * the session of the current user, such as URLs with a
+   * {@code gsessionid} parameter.
+   */
+  private void clearRedirects() {
+    if (redirectCache != null) {
+      redirectCache.clear();
+    }
   }
 
 
@@ -286,6 +334,7 @@ public class GoogleService extends Service implements TokenListener {
       // previous user.
       cookieManager.clearCookies();
     }
+    clearRedirects();
     requestFactory.setAuthToken(newToken);
   }
 
@@ -412,6 +461,22 @@ public class GoogleService extends Service implements TokenListener {
     requestFactory.setAuthToken(authTokenFactory.getAuthToken());
   }
 
+  /**
+   * Sets the OAuth 2.0 credentials used to generate the authorization header,
+   * and refreshes their access token shortly before it expires, instead of
+   * after a request is rejected.  A refresher can be shared by many services.
+   *
+   * @param credential the OAuth 2.0 credentials to use to generate the header
+   * @param refresher the refresher of the access token
+   */
+  @Beta
+  public void setOAuth2Credentials(Credential credential,
+      OAuth2TokenRefresher refresher) {
+    GoogleAuthTokenFactory googleAuthTokenFactory = getGoogleAuthTokenFactory();
+    googleAuthTokenFactory.setOAuth2Credentials(credential, refresher);
+    requestFactory.setAuthToken(authTokenFactory.getAuthToken());
+  }
+
   /**
    * Sets the AuthSub token to be used to authenticate a user.
    *
@@ -495,6 +560,9 @@ public class GoogleService extends Service implements TokenListener {
       }
       return;
     }
+    if (handlesCookies != cookieManager.cookiesEnabled()) {
+      clearRedirects();
+    }
     cookieManager.setCookiesEnabled(handlesCookies);
   }
 
@@ -531,11 +599,36 @@ public class GoogleService extends Service implements TokenListener {
   }
 
 
+  /**
+   * Returns the cookies returned by previous requests that should be sent
+   * with a request to a URI.
+   */
+  public List<GoogleCookie> getCookies(URI uri) {
+    if (cookieManager == null) {
+      throw new IllegalArgumentException("No cookie manager defined");
+    }
+    if (cookieManager instanceof SimpleCookieManager) {
+      return ((SimpleCookieManager) cookieManager).getCookies(uri);
+    }
+    List<GoogleCookie> matches = new ArrayList<GoogleCookie>();
+    for (GoogleCookie cookie : cookieManager.getCookies()) {
+      if (cookie.matches(uri)) {
+        matches.add(cookie);
+      }
+    }
+    return matches;
+  }
+
+
   @Override
   public GDataRequest createRequest(GDataRequest.RequestType type,
                                     URL requestUrl,
                                     ContentType contentType)
       throws IOException, ServiceException {
+    if (redirectCache != null) {
+      requestUrl = redirectCache.resolve(type, requestUrl,
+          getRequestCookies(requestUrl));
+    }
     GDataRequest request = super.createRequest(type, requestUrl, contentType);
     if (request instanceof GoogleGDataRequest) {
       ((GoogleGDataRequest) request).setService(this);
@@ -546,13 +639,40 @@ public class GoogleService extends Service implements TokenListener {
   @Override
   protected GDataRequest createRequest(Query query, ContentType contentType)
       throws IOException, ServiceException {
-    GDataRequest request = super.createRequest(query, contentType);
+    GDataRequest request = null;
+    if (redirectCache != null) {
+      URL queryUrl = query.getUrl();
+      URL requestUrl = redirectCache.resolve(GDataRequest.RequestType.QUERY,
+          queryUrl, getRequestCookies(queryUrl));
+      if (requestUrl != queryUrl) {
+        request = super.createRequest(GDataRequest.RequestType.QUERY,
+            requestUrl, contentType);
+      }
+    }
+    if (request == null) {
+      request = super.createRequest(query, contentType);
+    }
     if (request instanceof GoogleGDataRequest) {
       ((GoogleGDataRequest) request).setService(this);
     }
     return request;
   }
 
+  /**
+   * Returns the cookies sent with a request to a URL, which session
+   * redirects are bound to.
+   */
+  private List<GoogleCookie> getRequestCookies(URL url) {
+    if (!handlesCookies()) {
+      return Collections.emptyList();
+    }
+    try {
+      return getCookies(url.toURI());
+    } catch (URISyntaxException e) {
+      return Collections.emptyList();
+    }
+  }
+
   @Override
   public <E extends IEntry> E getEntry(URL entryUrl,
                                        Class<E> entryClass,
@@ -683,6 +803,36 @@ public class GoogleService extends Service implements TokenListener {
     return super.getFeed(query, feedClass, etag);
   }
 
+  @Override
+  public <E extends BaseEntry<?>> FeedStream<E> streamFeed(URL feedUrl,
+      Class<? extends BaseFeed<?, E>> feedClass)
+      throws IOException, ServiceException {
+    try {
+      return super.streamFeed(feedUrl, feedClass);
+    } catch (RedirectRequiredException e) {
+      feedUrl = handleRedirectException(e);
+    } catch (SessionExpiredException e) {
+      handleSessionExpiredException(e);
+    }
+
+    return super.streamFeed(feedUrl, feedClass);
+  }
+
+  @Override
+  public <E extends BaseEntry<?>> FeedStream<E> streamFeed(Query query,
+      Class<? extends BaseFeed<?, E>> feedClass)
+      throws IOException, ServiceException {
+    try {
+      return super.streamFeed(query, feedClass);
+    } catch (RedirectRequiredException e) {
+      query = new Query(handleRedirectException(e));
+    } catch (SessionExpiredException e) {
+      handleSessionExpiredException(e);
+    }
+
+    return super.streamFeed(query, feedClass);
+  }
+
   @Override
   public void delete(URL entryUrl) throws IOException, ServiceException {
 
@@ -731,10 +881,12 @@ public class GoogleService extends Service implements TokenListener {
   }
 
   /**
-   * Delegates session expired exception to  {@link AuthTokenFactory}.
+   * Flushes the cached redirects, which may be bound to the expired session,
+   * and delegates session expired exception to  {@link AuthTokenFactory}.
    */
   protected void handleSessionExpiredException(SessionExpiredException e)
       throws ServiceException {
+    clearRedirects();
     authTokenFactory.handleSessionExpiredException(e);
   }
 
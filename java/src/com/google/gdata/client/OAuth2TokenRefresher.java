@@ -0,0 +1,222 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client;
+
+import com.google.gdata.client.GoogleAuthTokenFactory.OAuth2Token;
+import com.google.common.collect.MapMaker;
+import com.google.gdata.util.AuthenticationException;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Refreshes OAuth 2.0 access tokens shortly before they expire, so requests
+ * are not rejected with an expired token and retried.
+ * <p>
+ * Tokens are refreshed on a scheduler shared by all the registered tokens,
+ * and request threads keep using the previous access token while a refresh
+ * is in progress.  A refresh started by a request whose token was rejected
+ * anyway is coalesced with the scheduled one, see
+ * {@link OAuth2Token#refreshToken()}.
+ * <p>
+ * Tokens whose credential has no expiration time are not refreshed.  If a
+ * refresh fails, it is retried a few times until the token expires; if the
+ * credential cannot be refreshed at all, the token is unregistered.
+ * <p>
+ * Tokens are only weakly referenced, so a token that is no longer used is
+ * unregistered once it is garbage collected.
+ * <p>
+ * Instances are thread-safe.
+ */
+public class OAuth2TokenRefresher {
+
+  private static final Logger logger =
+      Logger.getLogger(OAuth2TokenRefresher.class.getName());
+
+  /** Default time before expiration at which tokens are refreshed. */
+  public static final long DEFAULT_LEAD_SECONDS = 300;
+
+  /** Number of threads of the default scheduler. */
+  private static final int DEFAULT_THREADS = 4;
+
+  /** Delay before retrying a failed refresh. */
+  private static final long RETRY_SECONDS = 30;
+
+  /** Maximum number of consecutive failed refreshes retried. */
+  private static final int MAX_RETRIES = 5;
+
+  private final ScheduledExecutorService scheduler;
+  private final long leadSeconds;
+
+  /**
+   * Scheduled refreshes by token.  Tokens are weakly referenced and compared
+   * by identity.  Guarded by this.
+   */
+  private final Map<OAuth2Token, ScheduledFuture<?>> refreshes =
+      new MapMaker().weakKeys().makeMap();
+
+  /**
+   * Creates a refresher refreshing tokens {@link #DEFAULT_LEAD_SECONDS}
+   * before they expire on its own daemon threads.
+   */
+  public OAuth2TokenRefresher() {
+    this(Executors.newScheduledThreadPool(DEFAULT_THREADS, new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "OAuth2TokenRefresher");
+        thread.setDaemon(true);
+        return thread;
+      }
+    }), DEFAULT_LEAD_SECONDS);
+  }
+
+  /**
+   * Creates a refresher.
+   *
+   * @param scheduler the scheduler running the refreshes
+   * @param leadSeconds time before expiration at which tokens are refreshed
+   */
+  public OAuth2TokenRefresher(ScheduledExecutorService scheduler,
+      long leadSeconds) {
+    if (leadSeconds < 0) {
+      throw new IllegalArgumentException("Lead time cannot be negative");
+    }
+    this.scheduler = scheduler;
+    this.leadSeconds = leadSeconds;
+  }
+
+  /**
+   * Starts refreshing a token before it expires.  Registering a token
+   * already registered has no effect.
+   */
+  public synchronized void register(OAuth2Token token) {
+    if (!refreshes.containsKey(token)) {
+      schedule(token, getDelay(token), 0);
+    }
+  }
+
+  /**
+   * Stops refreshing a token.
+   */
+  public synchronized void unregister(OAuth2Token token) {
+    ScheduledFuture<?> refresh = refreshes.remove(token);
+    if (refresh != null) {
+      refresh.cancel(false);
+    }
+  }
+
+  /**
+   * Stops refreshing all the tokens, and shuts down the scheduler.
+   */
+  public synchronized void shutdown() {
+    for (ScheduledFuture<?> refresh : refreshes.values()) {
+      refresh.cancel(false);
+    }
+    refreshes.clear();
+    scheduler.shutdown();
+  }
+
+  /**
+   * Schedules the refresh of a token, unless its expiration is unknown.  The
+   * scheduled task only holds a weak reference to the token.
+   *
+   * @param delay delay before the refresh, in seconds, or -1 if the
+   *     expiration is unknown
+   * @param failures number of consecutive failed refreshes
+   */
+  private void schedule(OAuth2Token token, long delay, final int failures) {
+    if (delay < 0) {
+      refreshes.remove(token);
+      return;
+    }
+    final WeakReference<OAuth2Token> ref =
+        new WeakReference<OAuth2Token>(token);
+    refreshes.put(token, scheduler.schedule(new Runnable() {
+      public void run() {
+        OAuth2Token token = ref.get();
+        if (token != null) {
+          refresh(token, failures);
+        }
+      }
+    }, delay, TimeUnit.SECONDS));
+  }
+
+  /**
+   * Refreshes a token, and schedules its next refresh.
+   *
+   * @param failures number of consecutive failed refreshes before this one
+   */
+  private void refresh(OAuth2Token token, int failures) {
+    long delay;
+    try {
+      if (token.refreshToken()) {
+        delay = getDelay(token);
+        failures = 0;
+      } else {
+        logger.warning("Unable to refresh access token, no longer refreshing");
+        delay = -1;
+      }
+    } catch (AuthenticationException e) {
+      logger.log(Level.WARNING, "Failed to refresh access token", e);
+      delay = getRetryDelay(token, ++failures);
+    } catch (RuntimeException e) {
+      logger.log(Level.WARNING, "Failed to refresh access token", e);
+      delay = getRetryDelay(token, ++failures);
+    }
+
+    synchronized (this) {
+      // The token may have been unregistered during the refresh.
+      if (refreshes.containsKey(token)) {
+        schedule(token, delay, failures);
+      }
+    }
+  }
+
+  /**
+   * Returns the delay before retrying a failed refresh, in seconds, or -1 if
+   * the token has expired or has failed to refresh too many times.
+   */
+  private long getRetryDelay(OAuth2Token token, int failures) {
+    if (failures > MAX_RETRIES) {
+      logger.warning("Too many failed refreshes, no longer refreshing");
+      return -1;
+    }
+    Long expiresIn = token.getCredential().getExpiresInSeconds();
+    return (expiresIn != null && expiresIn > 0) ? RETRY_SECONDS : -1;
+  }
+
+  /**
+   * Returns the delay before the next refresh of a token, in seconds, or -1
+   * if its expiration is unknown.  Tokens that expire sooner than the lead
+   * time are refreshed halfway to their expiration, so that short-lived
+   * tokens are not refreshed continuously.
+   */
+  private long getDelay(OAuth2Token token) {
+    Long expiresIn = token.getCredential().getExpiresInSeconds();
+    if (expiresIn == null) {
+      return -1;
+    }
+    long delay = Math.max(expiresIn - leadSeconds, expiresIn / 2);
+    return Math.max(delay, 0);
+  }
+}
@@ -0,0 +1,367 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client;
+
+import com.google.common.collect.Sets;
+import com.google.gdata.client.Service.GDataRequest.RequestType;
+import com.google.gdata.client.http.GoogleGDataRequest.GoogleCookie;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * A cache of the redirects returned by a service, used to send requests
+ * straight to their final location instead of being redirected again.  Two
+ * kinds of redirects are cached.
+ *
+ * <p>Session redirects add a {@code gsessionid} parameter to the URL of a
+ * request of any method, binding the user to a session.  They are keyed by
+ * URL prefix: the session applies to all the later requests to the same
+ * scheme, host and port that carry no {@code gsessionid}, including inserts,
+ * updates and deletes.  A session is bound to the cookies that were sent
+ * with the request that recorded it, and is dropped as soon as any of these
+ * cookies is replaced or removed, or another one is added.  A new session
+ * redirect replaces the previous session for the prefix.
+ *
+ * <p>Permanent redirects of queries are keyed by the full URL they were
+ * returned for, including its query, and only apply to later queries for
+ * that exact URL.  A temporary redirect that is not a session redirect, or a
+ * permanent one returned for another method, says nothing about later
+ * requests and is not cached.
+ *
+ * <p>Redirects expire after a fixed time, and the least recently used ones
+ * are evicted once the cache is full.  {@link GoogleService} also clears
+ * its cache when its cookies or auth token are reset.
+ *
+ * <p>Instances are thread-safe.
+ */
+public class RedirectCache {
+
+  private static final Logger logger =
+      Logger.getLogger(RedirectCache.class.getName());
+
+  /** Default maximum number of redirects. */
+  public static final int DEFAULT_MAX_ENTRIES = 256;
+
+  /** Default time after which a redirect expires, in milliseconds. */
+  public static final long DEFAULT_TTL_MILLIS = 30 * 60 * 1000L;
+
+  /**
+   * Maximum number of redirects applied to a request, which bounds the
+   * resolution of redirect chains and loops.
+   */
+  private static final int MAX_HOPS = 5;
+
+  /** Name of the query parameter identifying a session. */
+  private static final String SESSION_PARAMETER = "gsessionid";
+
+  /**
+   * A cached redirect.  Instances are immutable.
+   */
+  private static class Redirect {
+
+    /** Location of the redirect. */
+    final String target;
+
+    final long expires;
+
+    Redirect(String target, long expires) {
+      this.target = target;
+      this.expires = expires;
+    }
+  }
+
+  /**
+   * A cached session.  Instances are immutable.
+   */
+  private static class Session {
+
+    /** Value of the {@code gsessionid} parameter. */
+    final String id;
+
+    /** Cookies the session is bound to, compared by identity. */
+    final Set<GoogleCookie> cookies;
+
+    final long expires;
+
+    Session(String id, Set<GoogleCookie> cookies, long expires) {
+      this.id = id;
+      this.cookies = cookies;
+      this.expires = expires;
+    }
+  }
+
+  private final long ttlMillis;
+
+  /** Permanent redirects by request URL, least recently used first. */
+  private final Map<String, Redirect> redirects;
+
+  /** Sessions by URL prefix, least recently used first. */
+  private final Map<String, Session> sessions;
+
+  private long hits;
+  private long misses;
+
+  /**
+   * Creates a cache holding up to {@link #DEFAULT_MAX_ENTRIES} redirects
+   * for {@link #DEFAULT_TTL_MILLIS}.
+   */
+  public RedirectCache() {
+    this(DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MILLIS);
+  }
+
+  /**
+   * Creates a cache.
+   *
+   * @param maxEntries maximum number of redirects
+   * @param ttlMillis time after which a redirect expires, in milliseconds
+   */
+  public RedirectCache(final int maxEntries, long ttlMillis) {
+    if (maxEntries <= 0) {
+      throw new IllegalArgumentException("Cache size must be positive");
+    }
+    if (ttlMillis <= 0) {
+      throw new IllegalArgumentException("Time to live must be positive");
+    }
+    this.ttlMillis = ttlMillis;
+    this.redirects = newLruMap(maxEntries);
+    this.sessions = newLruMap(maxEntries);
+  }
+
+  private static <V> Map<String, V> newLruMap(final int maxEntries) {
+    return new LinkedHashMap<String, V>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, V> e) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  /**
+   * Returns the number of requests sent straight to a cached location.
+   */
+  public synchronized long getHitCount() {
+    return hits;
+  }
+
+  /**
+   * Returns the number of requests for which no redirect was cached.
+   */
+  public synchronized long getMissCount() {
+    return misses;
+  }
+
+  /**
+   * Removes all the redirects from the cache.
+   */
+  public synchronized void clear() {
+    redirects.clear();
+    sessions.clear();
+  }
+
+  /**
+   * Returns the URL a request should be sent to.
+   *
+   * @param type the type of the request
+   * @param requestUrl the URL of the request
+   * @param cookies the cookies sent with the request
+   * @return the location of the cached redirects for the URL, or the URL
+   *     itself if none applies
+   */
+  public synchronized URL resolve(RequestType type, URL requestUrl,
+      List<GoogleCookie> cookies) {
+    String url = requestUrl.toString();
+    long now = System.currentTimeMillis();
+    if (type == RequestType.QUERY) {
+      for (int i = 0; i < MAX_HOPS; i++) {
+        Redirect redirect = redirects.get(url);
+        if (redirect == null) {
+          break;
+        }
+        if (redirect.expires <= now) {
+          redirects.remove(url);
+          break;
+        }
+        url = redirect.target;
+      }
+    }
+
+    URL resolved = requestUrl;
+    try {
+      if (!url.equals(requestUrl.toString())) {
+        resolved = new URL(url);
+      }
+    } catch (MalformedURLException e) {
+      // Cannot happen, as the location was a valid URL when cached.
+      url = requestUrl.toString();
+    }
+    if (resolved.getRef() == null && getSessionId(resolved) == null) {
+      String prefix = getPrefix(resolved);
+      Session session = sessions.get(prefix);
+      if (session != null) {
+        if (session.expires <= now || !isBoundTo(session, cookies)) {
+          sessions.remove(prefix);
+        } else {
+          url += (resolved.getQuery() == null ? "?" : "&")
+              + SESSION_PARAMETER + "=" + session.id;
+        }
+      }
+    }
+
+    if (url.equals(requestUrl.toString())) {
+      misses++;
+      return requestUrl;
+    }
+    try {
+      URL location = new URL(url);
+      hits++;
+      return location;
+    } catch (MalformedURLException e) {
+      // Cannot happen, as the location was a valid URL when cached.
+      misses++;
+      return requestUrl;
+    }
+  }
+
+  /**
+   * Records a redirect returned by the service, if it is a session redirect
+   * or a permanent redirect of a query.  Other redirects are ignored.
+   *
+   * @param type the type of the request that was redirected
+   * @param requestUrl the URL of the request that was redirected
+   * @param responseCode the HTTP status code of the redirect
+   * @param location the value of the {@code Location} header of the
+   *     redirect, which may be relative to the request URL
+   * @param cookies the cookies to send with later requests, including any
+   *     set by the redirect
+   */
+  public void put(RequestType type, URL requestUrl, int responseCode,
+      String location, List<GoogleCookie> cookies) {
+    if (location == null) {
+      return;
+    }
+    URL target;
+    try {
+      target = new URL(requestUrl, location);
+    } catch (MalformedURLException e) {
+      // The caller reports the invalid location.
+      return;
+    }
+
+    String url = requestUrl.toString();
+    long expires = System.currentTimeMillis() + ttlMillis;
+    String sessionId = getSessionId(target);
+    if (sessionId != null && isSessionRedirect(requestUrl, target)) {
+      Set<GoogleCookie> boundCookies = Sets.newIdentityHashSet();
+      boundCookies.addAll(cookies);
+      synchronized (this) {
+        sessions.put(getPrefix(requestUrl),
+            new Session(sessionId, boundCookies, expires));
+      }
+      logger.fine("Cached session " + sessionId + " for "
+          + getPrefix(requestUrl));
+    } else if (type == RequestType.QUERY && responseCode == 301) {
+      synchronized (this) {
+        if (target.toString().equals(url)) {
+          redirects.remove(url);
+          return;
+        }
+        redirects.put(url, new Redirect(target.toString(), expires));
+      }
+      logger.fine("Cached redirect from " + url + " to " + target);
+    }
+  }
+
+  /**
+   * Returns {@code true} if a session is bound to exactly the given
+   * cookies.
+   */
+  private static boolean isBoundTo(Session session,
+      List<GoogleCookie> cookies) {
+    if (session.cookies.size() != cookies.size()) {
+      return false;
+    }
+    for (GoogleCookie cookie : cookies) {
+      if (!session.cookies.contains(cookie)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns {@code true} if a redirect only adds or changes the session of
+   * the request, leaving its prefix, path and other parameters unchanged.
+   */
+  private static boolean isSessionRedirect(URL requestUrl, URL target) {
+    return getPrefix(requestUrl).equals(getPrefix(target))
+        && requestUrl.getPath().equals(target.getPath())
+        && getParameters(requestUrl).equals(getParameters(target))
+        && !getSessionId(target).equals(getSessionId(requestUrl));
+  }
+
+  /**
+   * Returns the prefix sessions are keyed by, which is the scheme, host and
+   * port of a URL.
+   */
+  private static String getPrefix(URL url) {
+    int port = (url.getPort() != -1) ? url.getPort() : url.getDefaultPort();
+    return url.getProtocol().toLowerCase() + "://"
+        + url.getHost().toLowerCase() + ":" + port;
+  }
+
+  /**
+   * Returns the value of the {@code gsessionid} parameter of a URL, or
+   * {@code null} if it has none.
+   */
+  private static String getSessionId(URL url) {
+    String query = url.getQuery();
+    if (query == null) {
+      return null;
+    }
+    for (String parameter : query.split("&")) {
+      if (parameter.startsWith(SESSION_PARAMETER + "=")) {
+        return parameter.substring(SESSION_PARAMETER.length() + 1);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the query parameters of a URL other than {@code gsessionid}, in
+   * order.
+   */
+  private static List<String> getParameters(URL url) {
+    List<String> parameters = new ArrayList<String>();
+    String query = url.getQuery();
+    if (query != null) {
+      for (String parameter : query.split("&")) {
+        if (parameter.length() > 0
+            && !parameter.startsWith(SESSION_PARAMETER + "=")) {
+          parameters.add(parameter);
+        }
+      }
+    }
+    return parameters;
+  }
+}
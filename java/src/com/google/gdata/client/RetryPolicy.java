@@ -0,0 +1,63 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client;
+
+/**
+ * Policy deciding whether and when a failed {@link Service} request is
+ * retried.  A policy is shared by all the requests of a service, so
+ * implementations must be thread-safe.
+ * <p>
+ * The delay before a retry is waited in the thread executing the request,
+ * so a blocking call such as {@link Service#getFeed} does not return before
+ * the retries are over.  Interrupting the thread, for example by cancelling
+ * an operation of an {@link AsyncService} with {@code mayInterruptIfRunning},
+ * stops waiting and reports the last failure.
+ *
+ * @see Service#setRetryPolicy(RetryPolicy)
+ * @see DefaultRetryPolicy
+ */
+public interface RetryPolicy {
+
+  /**
+   * Value indicating that the request should not be retried, see
+   * {@link #getRetryDelay}.
+   */
+  public static final long STOP = -1L;
+
+  /**
+   * Called once for each request, before it is first sent.
+   */
+  public void requestStarted();
+
+  /**
+   * Returns the number of milliseconds to wait before retrying a failed
+   * request, or {@link #STOP} if the failure should be reported to the caller.
+   *
+   * @param retryCount number of the retry to make, starting at 1
+   * @param previousDelayMs delay returned for the previous retry of the
+   *     request, or 0 for the first retry
+   * @param failure exception the last attempt failed with, either an
+   *     {@link java.io.IOException} or a
+   *     {@link com.google.gdata.util.ServiceException}
+   * @param idempotent {@code true} if repeating the request has the same
+   *     effect as sending it once, in which case it is safe to retry even if
+   *     the server may have processed the failed attempt
+   * @return the retry delay, or {@link #STOP}
+   */
+  public long getRetryDelay(int retryCount, long previousDelayMs,
+      Exception failure, boolean idempotent);
+}
@@ -21,7 +21,10 @@ import com.google.gdata.util.common.net.UriParameterMap;
 import com.google.gdata.client.AuthTokenFactory.AuthToken;
 import com.google.gdata.client.batch.BatchInterruptedException;
 import com.google.gdata.client.http.HttpGDataRequest;
+import com.google.gdata.client.http.HttpUrlConnectionSource;
 import com.google.gdata.data.AbstractExtension;
+import com.google.gdata.data.BaseEntry;
+import com.google.gdata.data.BaseFeed;
 import com.google.gdata.data.DateTime;
 import com.google.gdata.data.ExtensionProfile;
 import com.google.gdata.data.IAtom;
@@ -41,28 +44,37 @@ import com.google.gdata.model.batch.BatchUtils;
 import com.google.gdata.model.transforms.atom.AtomVersionTransforms;
 import com.google.gdata.model.transforms.atompub.AtompubVersionTransforms;
 import com.google.gdata.util.ContentType;
+import com.google.gdata.util.Namespaces;
 import com.google.gdata.util.NotModifiedException;
 import com.google.gdata.util.ParseException;
 import com.google.gdata.util.PreconditionFailedException;
+import com.google.gdata.util.PullXmlParser;
 import com.google.gdata.util.ResourceNotFoundException;
 import com.google.gdata.util.ServiceException;
 import com.google.gdata.util.Version;
 import com.google.gdata.util.VersionRegistry;
+import com.google.gdata.util.io.base.UnicodeReader;
 import com.google.gdata.wireformats.AltFormat;
 import com.google.gdata.wireformats.AltRegistry;
 import com.google.gdata.wireformats.StreamProperties;
 import com.google.gdata.wireformats.input.AtomDualParser;
 import com.google.gdata.wireformats.input.AtomServiceDualParser;
+import com.google.gdata.wireformats.input.ElementParser;
 import com.google.gdata.wireformats.input.InputParser;
 import com.google.gdata.wireformats.input.InputProperties;
 import com.google.gdata.wireformats.output.AtomDualGenerator;
 import com.google.gdata.wireformats.output.AtomServiceDualGenerator;
+import com.google.gdata.wireformats.output.ElementGenerator;
 import com.google.gdata.wireformats.output.OutputGenerator;
 import com.google.gdata.wireformats.output.OutputProperties;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.InvocationTargetException;
 import java.net.URI;
 import java.net.URL;
 import java.util.Collection;
@@ -567,6 +579,10 @@ public class Service {
         null,
         new AtomDualGenerator(AltFormat.APPLICATION_XML));
 
+    BASE_REGISTRY.register(AltFormat.JSON,
+        ElementParser.of(AltFormat.JSON, Element.class),
+        ElementGenerator.of(AltFormat.JSON, Element.class));
+
     // protect against subsequent changes
     BASE_REGISTRY.lock();
   }
@@ -724,6 +740,35 @@ public class Service {
     ((HttpGDataRequest.Factory) this.requestFactory).useSsl();
   }
 
+  /**
+   * Sets the source of the HTTP connections used by the
+   * HttpGDataRequest.Factory associated with the service.
+   *
+   * @see com.google.gdata.client.http.PooledHttpUrlConnectionSource
+   */
+  public void setConnectionSource(HttpUrlConnectionSource connectionSource) {
+    if (!(this.requestFactory instanceof HttpGDataRequest.Factory)) {
+      throw new UnsupportedOperationException("Not a http transport");
+    }
+    ((HttpGDataRequest.Factory) this.requestFactory).setConnectionSource(
+        connectionSource);
+  }
+
+  /**
+   * Sets the policy used to retry requests that failed because of a
+   * transient error, or {@code null} to report all failures to the caller.
+   * Requests are not retried by default.
+   *
+   * @see DefaultRetryPolicy
+   */
+  public void setRetryPolicy(RetryPolicy retryPolicy) {
+    if (!(this.requestFactory instanceof HttpGDataRequest.Factory)) {
+      throw new UnsupportedOperationException("Not a http transport");
+    }
+    ((HttpGDataRequest.Factory) this.requestFactory).setRetryPolicy(
+        retryPolicy);
+  }
+
   /**
    * Defines the languages accepted by the application.
    *
@@ -1140,6 +1185,148 @@ public class Service {
     }
   }
 
+  /**
+   * Returns a stream over the entries of the feed associated with a feed URL.
+   * Unlike {@link #getFeed(URL, Class)}, the entries are parsed one at a time
+   * as they are read from the response, so the memory used does not depend
+   * on the number of entries in the feed.  The returned stream must be
+   * closed.
+   *
+   * @param feedUrl the feed URL.
+   * @param feedClass the class used to parse the feed.
+   * @return stream over the entries of the feed.
+   * @throws IOException error sending request or reading the feed.
+   * @throws ParseException error parsing the feed data preceding the entries.
+   * @throws ResourceNotFoundException invalid feed URL.
+   * @throws ServiceException system error retrieving feed.
+   * @see FeedStream
+   */
+  public <E extends BaseEntry<?>> FeedStream<E> streamFeed(URL feedUrl,
+      Class<? extends BaseFeed<?, E>> feedClass)
+      throws IOException, ServiceException {
+    return streamFeed(createFeedRequest(feedUrl), feedClass);
+  }
+
+  /**
+   * Returns a stream over the entries of the feed resulting from execution of
+   * a query.  Unlike {@link #getFeed(Query, Class)}, the entries are parsed
+   * one at a time as they are read from the response, so the memory used does
+   * not depend on the number of entries in the feed.  The returned stream
+   * must be closed.
+   *
+   * @param query feed query.
+   * @param feedClass the class used to parse query results.
+   * @return stream over the entries of the feed.
+   * @throws IOException error sending request or reading the feed.
+   * @throws ParseException error parsing the feed data preceding the entries.
+   * @throws ResourceNotFoundException invalid feed URL.
+   * @throws ServiceException system error retrieving feed.
+   * @see FeedStream
+   */
+  public <E extends BaseEntry<?>> FeedStream<E> streamFeed(Query query,
+      Class<? extends BaseFeed<?, E>> feedClass)
+      throws IOException, ServiceException {
+    return streamFeed(createFeedRequest(query), feedClass);
+  }
+
+  /**
+   * Executes a feed request and returns a stream over the entries of the
+   * response.  The request is ended when the stream is closed.
+   */
+  private <E extends BaseEntry<?>> FeedStream<E> streamFeed(
+      GDataRequest request, Class<? extends BaseFeed<?, E>> feedClass)
+      throws IOException, ServiceException {
+
+    boolean success = false;
+    try {
+      startVersionScope();
+      request.execute();
+      FeedStream<E> stream = createFeedStream(request, feedClass);
+      success = true;
+      return stream;
+    } finally {
+      endVersionScope();
+      if (!success) {
+        request.end();
+      }
+    }
+  }
+
+  /**
+   * Creates a stream over the entries of the response to an executed feed
+   * request.  Only Atom responses are parsed incrementally, others are parsed
+   * in full before the stream is returned.
+   */
+  private <E extends BaseEntry<?>> FeedStream<E> createFeedStream(
+      GDataRequest request, Class<? extends BaseFeed<?, E>> feedClass)
+      throws IOException, ServiceException {
+
+    ClientInputProperties inputProperties =
+        new ClientInputProperties(request, feedClass);
+    ParseSource source = request.getParseSource();
+
+    AltFormat inputFormat = null;
+    String alt = inputProperties.getQueryParameter(GDataProtocol.Parameter.ALT);
+    if (alt != null) {
+      inputFormat = altRegistry.lookupName(alt);
+    }
+    if (inputFormat == null) {
+      inputFormat = altRegistry.lookupType(inputProperties.getContentType());
+    }
+    if (inputFormat != AltFormat.ATOM || source.getEventSource() != null) {
+      return new FeedStream<E>(this, request,
+          parseResponseData(source, inputProperties, feedClass));
+    }
+
+    BaseFeed<?, E> feed;
+    try {
+      feed = feedClass.getDeclaredConstructor().newInstance();
+    } catch (NoSuchMethodException e) {
+      throw new IllegalStateException("Can't create parse target", e);
+    } catch (InvocationTargetException e) {
+      throw new IllegalStateException("Can't create parse target", e);
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException("Can't create parse target", e);
+    } catch (InstantiationException e) {
+      throw new IllegalStateException("Can't create parse target", e);
+    }
+    feed.setService(this);
+    Reader reader = source.getReader();
+    if (reader == null) {
+      reader = createReader(source.getInputStream(),
+          inputProperties.getContentType().getCharset());
+    }
+    PullXmlParser parser = new PullXmlParser(reader,
+        feed.new FeedHandler(inputProperties.getExtensionProfile()),
+        Namespaces.atom, "feed");
+
+    // Disable validation for partial responses, as in parseResponseData.
+    boolean disableValidation = !strictValidation
+        || inputProperties.getQueryParameter(
+            GDataProtocol.Parameter.FIELDS) != null;
+    return new FeedStream<E>(this, request, feed, parser, disableValidation);
+  }
+
+  /**
+   * Creates a reader decoding response data in a given character set, or in
+   * UTF-8 if it is not known.
+   */
+  private static Reader createReader(InputStream input, String charset)
+      throws IOException, ParseException {
+    if (charset == null) {
+      charset = "UTF-8";
+    }
+    try {
+      if (charset.toLowerCase().startsWith("utf-")) {
+        return new UnicodeReader(input, charset);
+      }
+      return new InputStreamReader(input, charset);
+    } catch (UnsupportedEncodingException e) {
+      throw new ParseException("Unsupported encoding: " +
+          e.getLocalizedMessage(), e);
+    }
+  }
+
   /**
    * Executes a GData feed request against the target service and returns the
    * resulting feed results via an input stream.
@@ -17,23 +17,218 @@
 package com.google.gdata.client;
 
 import com.google.common.collect.ConcurrentHashMultiset;
+import com.google.common.collect.ForwardingMultiset;
 import com.google.common.collect.Multiset;
 import com.google.gdata.client.http.GoogleGDataRequest.GoogleCookie;
 
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * A simple cookie manager implementation.
+ * <p>
+ * Cookies are indexed by domain, and the cookies of a domain are ordered by
+ * decreasing path length, so finding the cookies of a request only looks at
+ * the domains the request host can match.  Lookups do not lock, as the
+ * cookies of a domain are replaced rather than modified.  Expired cookies are
+ * removed in order of expiration, without scanning the other cookies.
+ *
  *
- * 
  */
 public class SimpleCookieManager implements CookieManager {
 
+  private static final GoogleCookie[] NO_COOKIES = new GoogleCookie[0];
+
+  /** Orders the cookies of a domain by decreasing path length. */
+  private static final Comparator<GoogleCookie> PATH_ORDER =
+      new Comparator<GoogleCookie>() {
+        public int compare(GoogleCookie c1, GoogleCookie c2) {
+          return c2.getPath().length() - c1.getPath().length();
+        }
+      };
+
+  /**
+   * The expiration of a cookie, which is kept in milliseconds so that the
+   * expiration set does not copy the date of the cookie on every comparison.
+   * Expirations at the same time are ordered by sequence number, so that
+   * each one is a distinct element of the set.
+   */
+  private static class Expiration implements Comparable<Expiration> {
+
+    final GoogleCookie cookie;
+    final long time;
+    final long sequence;
+
+    Expiration(GoogleCookie cookie, long sequence) {
+      this.cookie = cookie;
+      this.time = cookie.getExpires().getTime();
+      this.sequence = sequence;
+    }
+
+    public int compareTo(Expiration other) {
+      if (time != other.time) {
+        return (time < other.time) ? -1 : 1;
+      }
+      return (sequence < other.sequence) ? -1
+          : ((sequence == other.sequence) ? 0 : 1);
+    }
+  }
+
+  /**
+   * The multiset of {@link #cookies}, which marks the index stale whenever it
+   * is modified directly.
+   */
+  private class CookieSet extends ForwardingMultiset<GoogleCookie> {
+
+    final Multiset<GoogleCookie> delegate = ConcurrentHashMultiset.create();
+
+    @Override
+    protected Multiset<GoogleCookie> delegate() {
+      return delegate;
+    }
+
+    @Override
+    public boolean add(GoogleCookie cookie) {
+      indexStale = true;
+      return delegate.add(cookie);
+    }
+
+    @Override
+    public int add(GoogleCookie cookie, int occurrences) {
+      indexStale = true;
+      return delegate.add(cookie, occurrences);
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends GoogleCookie> collection) {
+      indexStale = true;
+      return delegate.addAll(collection);
+    }
+
+    @Override
+    public boolean remove(Object cookie) {
+      indexStale = true;
+      return delegate.remove(cookie);
+    }
+
+    @Override
+    public int remove(Object cookie, int occurrences) {
+      indexStale = true;
+      return delegate.remove(cookie, occurrences);
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> collection) {
+      indexStale = true;
+      return delegate.removeAll(collection);
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> collection) {
+      indexStale = true;
+      return delegate.retainAll(collection);
+    }
+
+    @Override
+    public int setCount(GoogleCookie cookie, int count) {
+      indexStale = true;
+      return delegate.setCount(cookie, count);
+    }
+
+    @Override
+    public boolean setCount(GoogleCookie cookie, int oldCount, int newCount) {
+      indexStale = true;
+      return delegate.setCount(cookie, oldCount, newCount);
+    }
+
+    @Override
+    public void clear() {
+      indexStale = true;
+      delegate.clear();
+    }
+
+    // The views below can remove cookies.
+
+    @Override
+    public Iterator<GoogleCookie> iterator() {
+      indexStale = true;
+      return delegate.iterator();
+    }
+
+    @Override
+    public Set<GoogleCookie> elementSet() {
+      indexStale = true;
+      return delegate.elementSet();
+    }
+
+    @Override
+    public Set<Multiset.Entry<GoogleCookie>> entrySet() {
+      indexStale = true;
+      return delegate.entrySet();
+    }
+  }
+
+  private final CookieSet cookieSet = new CookieSet();
+
   /**
    * Storage for a set of cookies.
+   *
+   * @deprecated Cookies are looked up through an index by domain, which is
+   *     rebuilt from this set after it is modified directly.  Use
+   *     {@link #addCookie}, {@link #getCookies()} and {@link #clearCookies()}
+   *     instead.  If the field is replaced, cookies are no longer indexed.
+   */
+  @Deprecated
+  protected Multiset<GoogleCookie> cookies = cookieSet;
+
+  /**
+   * Cookies by domain.  The arrays are never modified once stored.
+   */
+  private final ConcurrentMap<String, GoogleCookie[]> domains =
+      new ConcurrentHashMap<String, GoogleCookie[]>();
+
+  /**
+   * Cookies with an expiration date, in order of expiration.  Guarded by
+   * this.
+   */
+  private final TreeSet<Expiration> expirations = new TreeSet<Expiration>();
+
+  /**
+   * The expiration of each cookie of {@link #expirations}, by cookie
+   * identity, so a replaced cookie's expiration is removed without a scan.
+   * Guarded by this.
+   */
+  private final Map<GoogleCookie, Expiration> cookieExpirations =
+      new IdentityHashMap<GoogleCookie, Expiration>();
+
+  /**
+   * Sequence number of the next expiration.  Guarded by this.
+   */
+  private long expirationSequence = 0;
+
+  /**
+   * Time at which the next cookie expires, or {@link Long#MAX_VALUE}.
+   */
+  private volatile long nextExpiration = Long.MAX_VALUE;
+
+  /**
+   * True if {@link #cookies} was modified directly since the index was
+   * built.
    */
-  protected Multiset<GoogleCookie> cookies = ConcurrentHashMultiset.create();
+  private volatile boolean indexStale = false;
 
   /**
    * Indicates whether cookie handling is enabled.
@@ -51,31 +246,243 @@ public class SimpleCookieManager implements CookieManager {
     return cookiesEnabled;
   }
 
-  public void clearCookies() {
-    cookies.clear();
+  @SuppressWarnings("deprecation")
+  public synchronized void clearCookies() {
+    if (cookies != cookieSet) {
+      cookies.clear();
+      return;
+    }
+    cookieSet.delegate.clear();
+    domains.clear();
+    expirations.clear();
+    cookieExpirations.clear();
+    nextExpiration = Long.MAX_VALUE;
+    indexStale = false;
   }
 
-  public void addCookie(GoogleCookie cookie) {
+  @SuppressWarnings("deprecation")
+  public synchronized void addCookie(GoogleCookie cookie) {
     assert cookiesEnabled;
 
     // Remove any previous value of this cookie, since expiration and
     // and cookie value are not part of the hashCode/equals algorithm
     // for GoogleCookie.  This ensures that we always replace with the
-    // most recently received cookie state.
-    cookies.remove(cookie);
-    cookies.add(cookie);
+    // most recently received cookie state.  An expired cookie only
+    // removes the previous value.
+    if (cookies != cookieSet) {
+      cookies.remove(cookie);
+      cookies.add(cookie);
+      return;
+    }
+    if (indexStale) {
+      rebuildIndex();
+    }
+    cookieSet.delegate.remove(cookie);
+    String domain = cookie.getDomain();
+    GoogleCookie[] domainCookies = domains.get(domain);
+    List<GoogleCookie> updated = new ArrayList<GoogleCookie>();
+    if (domainCookies != null) {
+      for (GoogleCookie c : domainCookies) {
+        if (c.equals(cookie)) {
+          removeExpiration(c);
+        } else {
+          updated.add(c);
+        }
+      }
+    }
+    if (!cookie.hasExpired()) {
+      cookieSet.delegate.add(cookie);
+      updated.add(cookie);
+      if (cookie.getExpires() != null) {
+        addExpiration(cookie);
+      }
+    }
+    setDomainCookies(domain, updated);
+    removeExpiredCookies();
   }
 
+  @SuppressWarnings("deprecation")
   public Set<GoogleCookie> getCookies() {
+    if (cookies != cookieSet) {
+      // Lazy flushing of expired cookies
+      Iterator<GoogleCookie> cookieIter = cookies.iterator();
+      while (cookieIter.hasNext()) {
+        if (cookieIter.next().hasExpired()) {
+          cookieIter.remove();
+        }
+      }
+      return cookies.elementSet();
+    }
+    updateIndex();
+    Set<GoogleCookie> result = new LinkedHashSet<GoogleCookie>();
+    for (GoogleCookie[] domainCookies : domains.values()) {
+      Collections.addAll(result, domainCookies);
+    }
+    return Collections.unmodifiableSet(result);
+  }
 
-    // Lazy flushing of expired cookies
-    Iterator<GoogleCookie> cookieIter = cookies.iterator();
-    while (cookieIter.hasNext()) {
-      GoogleCookie cookie = cookieIter.next();
-      if (cookie.hasExpired()) {
-        cookieIter.remove();
+  /**
+   * Returns the cookies to send with a request, most specific first.  Only
+   * the domains the host of the URI can match are looked at.
+   *
+   * @param uri the URI of the request
+   * @return the unexpired cookies matching the URI
+   */
+  @SuppressWarnings("deprecation")
+  public List<GoogleCookie> getCookies(URI uri) {
+    if (cookies != cookieSet) {
+      List<GoogleCookie> result = new ArrayList<GoogleCookie>();
+      for (GoogleCookie cookie : getCookies()) {
+        if (cookie.matches(uri)) {
+          result.add(cookie);
+        }
+      }
+      Collections.sort(result, PATH_ORDER);
+      return result;
+    }
+    String host = uri.getHost();
+    if (host == null) {
+      return Collections.emptyList();
+    }
+    updateIndex();
+    if (domains.isEmpty()) {
+      return Collections.emptyList();
+    }
+
+    List<GoogleCookie> result = null;
+    // The domains matching a host are the host itself, and its suffixes
+    // starting at or just after a dot.
+    int dot = -1;
+    do {
+      result = addMatches(result, host.substring(dot + 1), uri);
+      dot = host.indexOf('.', dot + 1);
+      if (dot >= 0) {
+        result = addMatches(result, host.substring(dot), uri);
       }
+    } while (dot >= 0);
+    return (result != null) ? result : Collections.<GoogleCookie>emptyList();
+  }
+
+  /**
+   * Adds the cookies of a domain that match a URI to a list.
+   *
+   * @return the list, which is created if {@code null} and needed
+   */
+  private List<GoogleCookie> addMatches(List<GoogleCookie> result,
+      String domain, URI uri) {
+    GoogleCookie[] domainCookies = domains.get(domain);
+    if (domainCookies != null) {
+      for (GoogleCookie cookie : domainCookies) {
+        if (cookie.matches(uri)) {
+          if (result == null) {
+            result = new ArrayList<GoogleCookie>();
+          }
+          result.add(cookie);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Rebuilds the index if {@link #cookies} was modified directly, and removes
+   * the cookies that have expired.
+   */
+  private void updateIndex() {
+    if (indexStale || System.currentTimeMillis() > nextExpiration) {
+      synchronized (this) {
+        if (indexStale) {
+          rebuildIndex();
+        }
+        removeExpiredCookies();
+      }
+    }
+  }
+
+  /**
+   * Rebuilds the index from the cookies of {@link #cookies}.  Must be called
+   * while holding the lock of this manager.
+   */
+  private void rebuildIndex() {
+    indexStale = false;
+    domains.clear();
+    expirations.clear();
+    cookieExpirations.clear();
+    List<GoogleCookie> all =
+        new ArrayList<GoogleCookie>(cookieSet.delegate.elementSet());
+    for (GoogleCookie cookie : all) {
+      String domain = cookie.getDomain();
+      GoogleCookie[] domainCookies = domains.get(domain);
+      List<GoogleCookie> updated = new ArrayList<GoogleCookie>();
+      if (domainCookies != null) {
+        updated.addAll(Arrays.asList(domainCookies));
+      }
+      updated.add(cookie);
+      setDomainCookies(domain, updated);
+      if (cookie.getExpires() != null) {
+        addExpiration(cookie);
+      }
+    }
+  }
+
+  /**
+   * Removes the cookies that have expired, in order of expiration.  Must be
+   * called while holding the lock of this manager.
+   */
+  private void removeExpiredCookies() {
+    long now = System.currentTimeMillis();
+    while (!expirations.isEmpty() && expirations.first().time < now) {
+      Expiration next = expirations.first();
+      expirations.remove(next);
+      cookieExpirations.remove(next.cookie);
+      cookieSet.delegate.remove(next.cookie);
+      String domain = next.cookie.getDomain();
+      GoogleCookie[] domainCookies = domains.get(domain);
+      if (domainCookies != null) {
+        List<GoogleCookie> updated = new ArrayList<GoogleCookie>();
+        for (GoogleCookie c : domainCookies) {
+          if (c != next.cookie) {
+            updated.add(c);
+          }
+        }
+        setDomainCookies(domain, updated);
+      }
+    }
+    nextExpiration =
+        expirations.isEmpty() ? Long.MAX_VALUE : expirations.first().time;
+  }
+
+  /**
+   * Adds the expiration of a cookie.  Must be called while holding the lock
+   * of this manager.
+   */
+  private void addExpiration(GoogleCookie cookie) {
+    Expiration expiration = new Expiration(cookie, expirationSequence++);
+    expirations.add(expiration);
+    cookieExpirations.put(cookie, expiration);
+  }
+
+  /**
+   * Removes the expiration of a cookie, if it has one.  Must be called while
+   * holding the lock of this manager.
+   */
+  private void removeExpiration(GoogleCookie cookie) {
+    Expiration expiration = cookieExpirations.remove(cookie);
+    if (expiration != null) {
+      expirations.remove(expiration);
+    }
+  }
+
+  /**
+   * Replaces the cookies of a domain.
+   */
+  private void setDomainCookies(String domain, List<GoogleCookie> updated) {
+    if (updated.isEmpty()) {
+      domains.remove(domain);
+    } else {
+      GoogleCookie[] domainCookies = updated.toArray(NO_COOKIES);
+      Arrays.sort(domainCookies, PATH_ORDER);
+      domains.put(domain, domainCookies);
     }
-    return cookies.elementSet();
   }
 }
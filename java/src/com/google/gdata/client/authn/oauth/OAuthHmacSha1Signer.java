@@ -33,16 +33,44 @@ import javax.crypto.spec.SecretKeySpec;
  */
 public class OAuthHmacSha1Signer implements OAuthSigner {
 
+  /**
+   * A {@link Mac} initialized with the key derived from a consumer secret and
+   * a token secret.  The {@link Mac} is reset by each {@link Mac#doFinal}
+   * call, so it can be reused for as long as the secrets stay the same.
+   */
+  private static class KeyedMac {
+
+    final String consumerSecret;
+    final String tokenSecret;
+    final Mac mac;
+
+    KeyedMac(String consumerSecret, String tokenSecret, Mac mac) {
+      this.consumerSecret = consumerSecret;
+      this.tokenSecret = tokenSecret;
+      this.mac = mac;
+    }
+
+    boolean matches(String consumerSecret, String tokenSecret) {
+      return this.consumerSecret.equals(consumerSecret)
+          && this.tokenSecret.equals(tokenSecret);
+    }
+  }
+
+  /**
+   * The most recently used {@link Mac} of each thread.  {@link Mac} instances
+   * are not thread-safe, and looking up the provider and initializing the key
+   * is a significant part of the cost of signing a request.
+   */
+  private static final ThreadLocal<KeyedMac> cachedMac =
+      new ThreadLocal<KeyedMac>();
+
   public String getSignature(String baseString, OAuthParameters oauthParameters)
       throws OAuthException {
     try {
       if (oauthParameters == null) {
         throw new OAuthException("OAuth parameters cannot be null");
       }
-      String keyString = getKey(oauthParameters);
-      SecretKey key = new SecretKeySpec(keyString.getBytes("UTF-8"), "HmacSHA1");
-      Mac mac = Mac.getInstance("HmacSHA1");
-      mac.init(key);
+      Mac mac = getMac(oauthParameters);
       return Base64.encode(mac.doFinal(baseString.getBytes("UTF-8")));
     } catch (UnsupportedEncodingException e) {
       throw new OAuthException(e);
@@ -53,6 +81,29 @@ public class OAuthHmacSha1Signer implements OAuthSigner {
     }
   }
 
+  /**
+   * Returns a {@link Mac} initialized with the key for the given parameters,
+   * reusing the calling thread's cached instance if it was initialized with
+   * the same secrets.
+   */
+  private Mac getMac(OAuthParameters oauthParameters)
+      throws UnsupportedEncodingException, NoSuchAlgorithmException,
+      InvalidKeyException {
+    String consumerSecret = oauthParameters.getOAuthConsumerSecret();
+    String tokenSecret = oauthParameters.getOAuthTokenSecret();
+    KeyedMac keyedMac = cachedMac.get();
+    if (keyedMac != null && keyedMac.matches(consumerSecret, tokenSecret)) {
+      return keyedMac.mac;
+    }
+
+    String keyString = getKey(oauthParameters);
+    SecretKey key = new SecretKeySpec(keyString.getBytes("UTF-8"), "HmacSHA1");
+    Mac mac = (keyedMac != null) ? keyedMac.mac : Mac.getInstance("HmacSHA1");
+    mac.init(key);
+    cachedMac.set(new KeyedMac(consumerSecret, tokenSecret, mac));
+    return mac;
+  }
+
   private String getKey(OAuthParameters oauthParameters) {
     return (new StringBuilder())
         .append(OAuthUtil.encode(oauthParameters.getOAuthConsumerSecret()))
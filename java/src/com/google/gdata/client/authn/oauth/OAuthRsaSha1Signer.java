@@ -36,6 +36,31 @@ public class OAuthRsaSha1Signer implements OAuthSigner {
 
   PrivateKey privateKey;
 
+  /**
+   * A {@link Signature} initialized for signing with a private key.  The
+   * {@link Signature} is reset by each {@link Signature#sign} call, so it can
+   * be reused for as long as the private key stays the same.
+   */
+  private static class KeyedSignature {
+
+    final PrivateKey privateKey;
+    final Signature signature;
+
+    KeyedSignature(PrivateKey privateKey, Signature signature) {
+      this.privateKey = privateKey;
+      this.signature = signature;
+    }
+  }
+
+  /**
+   * The {@link Signature} of each thread signing with this signer.
+   * {@link Signature} instances are not thread-safe, and looking up the
+   * provider and initializing the key is a significant part of the cost of
+   * signing a request.
+   */
+  private final ThreadLocal<KeyedSignature> cachedSignature =
+      new ThreadLocal<KeyedSignature>();
+
   /**
    * Constructor for {@link OAuthRsaSha1Signer}.  This form of the constructor
    * does not set the private key, so be sure to call
@@ -122,8 +147,7 @@ public class OAuthRsaSha1Signer implements OAuthSigner {
       throw new OAuthException("Private key cannot be null");
     }
     try {
-      Signature signer = Signature.getInstance("SHA1withRSA");
-      signer.initSign(privateKey);
+      Signature signer = getSigner(privateKey);
       signer.update(baseString.getBytes("UTF-8"));
       return Base64.encode(signer.sign());
     } catch (NoSuchAlgorithmException e) {
@@ -131,12 +155,32 @@ public class OAuthRsaSha1Signer implements OAuthSigner {
     } catch (InvalidKeyException e) {
       throw new OAuthException("Error generating signature", e);
     } catch (SignatureException e) {
+      // the signature may have been left in an unknown state
+      cachedSignature.remove();
       throw new OAuthException("Error generating signature", e);
     } catch (UnsupportedEncodingException e) {
       throw new OAuthException("Error generating signature", e);
     }
   }
 
+  /**
+   * Returns a {@link Signature} initialized for signing with the given key,
+   * reusing the calling thread's cached instance if it was initialized with
+   * the same key.
+   */
+  private Signature getSigner(PrivateKey key)
+      throws NoSuchAlgorithmException, InvalidKeyException {
+    KeyedSignature keyedSignature = cachedSignature.get();
+    if (keyedSignature != null && keyedSignature.privateKey == key) {
+      return keyedSignature.signature;
+    }
+    Signature signer = (keyedSignature != null)
+        ? keyedSignature.signature : Signature.getInstance("SHA1withRSA");
+    signer.initSign(key);
+    cachedSignature.set(new KeyedSignature(key, signer));
+    return signer;
+  }
+
   public String getSignatureMethod() {
     return "RSA-SHA1";
   }
@@ -0,0 +1,578 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client.batch;
+
+import com.google.gdata.client.Service;
+import com.google.gdata.data.BaseEntry;
+import com.google.gdata.data.BaseFeed;
+import com.google.gdata.data.IEntry;
+import com.google.gdata.data.batch.BatchOperationType;
+import com.google.gdata.data.batch.BatchStatus;
+import com.google.gdata.data.batch.BatchUtils;
+import com.google.gdata.util.RateLimitExceededException;
+import com.google.gdata.util.ServiceException;
+import com.google.gdata.util.VersionRegistry;
+import com.google.gdata.util.common.xml.XmlWriter;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.NoRouteToHostException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+
+/**
+ * Executes any number of batch operations against a feed.  The operations
+ * are split into batch feeds that respect the server limits on the number of
+ * entries and the size of a batch request, and several batches are sent
+ * concurrently on an executor supplied by the caller.
+ * <p>
+ * Operations that the server reports as temporarily failed, or did not
+ * process because the batch was interrupted, are sent again in a later batch,
+ * after a delay that doubles with each attempt.  So are the operations of a
+ * batch request that failed as a whole with a transient error, see
+ * {@link #isRetryable(Throwable, BatchOperationType)}.  The result of every
+ * operation, keyed by batch id, is returned once all the operations have
+ * completed or run out of attempts.
+ * <p>
+ * Each operation of a batch request that failed for good gets a result entry
+ * whose {@link BatchStatus} describes the failure, and the results of the
+ * other batches are still returned.
+ *
+ * @param <F> batch feed type
+ * @param <E> entry type
+ */
+public class BatchExecutor<F extends BaseFeed<?, E>, E extends BaseEntry<?>> {
+
+  /**
+   * Default maximum number of operations in a batch.
+   */
+  public static final int DEFAULT_MAX_BATCH_ENTRIES = 100;
+
+  /**
+   * Maximum size of a batch request accepted by most services, in bytes
+   * (1 MB).  Batches are not limited in size unless a limit is set with
+   * {@link #setMaxBatchSize(int, int)}.
+   */
+  public static final int MAX_REQUEST_BYTES = 1024 * 1024;
+
+  /**
+   * Default number of batches sent concurrently.
+   */
+  public static final int DEFAULT_MAX_CONCURRENT_BATCHES = 4;
+
+  /**
+   * Default number of times an operation is sent before its failure is
+   * reported.
+   */
+  public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+  /**
+   * Default delay before the first resend of failed operations (1 s).
+   */
+  public static final long DEFAULT_RETRY_DELAY_MS = 1000L;
+
+  private final Service service;
+  private final URL batchUrl;
+  private final Class<F> feedClass;
+  private final Executor executor;
+
+  private int maxBatchEntries = DEFAULT_MAX_BATCH_ENTRIES;
+  private int maxBatchBytes = 0;
+  private int maxConcurrentBatches = DEFAULT_MAX_CONCURRENT_BATCHES;
+  private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+  private long retryDelayMs = DEFAULT_RETRY_DELAY_MS;
+
+  /**
+   * Constructs a batch executor.
+   *
+   * @param service the service that sends the batches
+   * @param batchUrl the batch URL of the feed
+   * @param feedClass the class of the batch feeds
+   * @param executor the executor sending the batches
+   */
+  public BatchExecutor(Service service, URL batchUrl, Class<F> feedClass,
+      Executor executor) {
+    if (service == null) {
+      throw new NullPointerException("service");
+    }
+    this.service = service;
+    this.batchUrl = batchUrl;
+    this.feedClass = feedClass;
+    this.executor = executor;
+  }
+
+  /**
+   * Sets the maximum number of operations and the maximum size in bytes of
+   * the entries in a batch.  The size is that of the serialized entries and
+   * does not include the enclosing feed.  An entry larger than the maximum
+   * size is sent alone.
+   * <p>
+   * Measuring the size serializes every entry once before it is sent, so
+   * it should only be limited if the entries can be large enough to exceed
+   * the limit of the service, such as {@link #MAX_REQUEST_BYTES}.
+   *
+   * @param entries maximum number of operations in a batch
+   * @param bytes maximum size of the entries of a batch, or 0 to not limit
+   *     the size, which is the default
+   */
+  public void setMaxBatchSize(int entries, int bytes) {
+    if (entries < 1 || bytes < 0) {
+      throw new IllegalArgumentException("Invalid batch size");
+    }
+    this.maxBatchEntries = entries;
+    this.maxBatchBytes = bytes;
+  }
+
+  /**
+   * Sets the maximum number of batches sent concurrently.
+   */
+  public void setMaxConcurrentBatches(int batches) {
+    if (batches < 1) {
+      throw new IllegalArgumentException("Invalid batch count");
+    }
+    this.maxConcurrentBatches = batches;
+  }
+
+  /**
+   * Sets the number of times an operation that failed temporarily is sent
+   * before its failure is reported, and the delay before the first resend.
+   */
+  public void setRetries(int attempts, long delayMs) {
+    if (attempts < 1 || delayMs < 0) {
+      throw new IllegalArgumentException("Invalid retries");
+    }
+    this.maxAttempts = attempts;
+    this.retryDelayMs = delayMs;
+  }
+
+  /**
+   * Executes batch operations, using the operation type set on each entry.
+   *
+   * @see #execute(List, BatchOperationType)
+   */
+  public Map<String, E> execute(List<? extends E> entries)
+      throws IOException {
+    return execute(entries, null);
+  }
+
+  /**
+   * Executes batch operations.  Entries that have no batch id are given the
+   * lowest numbers that are not the batch id of another entry, in order, as
+   * batch id: their index in the list, unless other entries already use
+   * numbers as batch ids.  Entries that have no operation
+   * type are given {@code operation}, if not {@code null}.  The batch id and
+   * operation type are set on the entries of {@code entries} themselves,
+   * which are sent as they are rather than copied.
+   *
+   * @param entries the operations to execute
+   * @param operation the operation type of the entries that have none
+   * @return the result entry of each operation, keyed by batch id, in the
+   *     order of {@code entries}.  The {@link BatchStatus} of each result
+   *     tells whether the operation succeeded.
+   * @throws IllegalArgumentException if two entries have the same batch id
+   * @throws InterruptedIOException if interrupted while waiting for the
+   *     batches
+   */
+  public Map<String, E> execute(List<? extends E> entries,
+      BatchOperationType operation) throws IOException {
+
+    // Generated ids must not collide with the ids set by the caller.
+    Set<String> callerIds = new HashSet<String>();
+    for (E entry : entries) {
+      String id = BatchUtils.getBatchId(entry);
+      if (id != null && !callerIds.add(id)) {
+        throw new IllegalArgumentException("Duplicate batch id: " + id);
+      }
+    }
+
+    Map<String, E> operations = new LinkedHashMap<String, E>();
+    int nextId = 0;
+    for (E entry : entries) {
+      String id = BatchUtils.getBatchId(entry);
+      if (id == null) {
+        do {
+          id = Integer.toString(nextId++);
+        } while (callerIds.contains(id));
+        BatchUtils.setBatchId(entry, id);
+      }
+      if (operation != null
+          && BatchUtils.getBatchOperationType(entry) == null) {
+        BatchUtils.setBatchOperationType(entry, operation);
+      }
+      if (operations.put(id, entry) != null) {
+        throw new IllegalArgumentException("Duplicate batch id: " + id);
+      }
+    }
+
+    Map<String, Integer> sizes =
+        (maxBatchBytes > 0) ? getSizes(operations) : null;
+    Map<String, E> results = new HashMap<String, E>();
+    List<E> pending = new ArrayList<E>(operations.values());
+    long delayMs = retryDelayMs;
+    for (int attempt = 1; !pending.isEmpty(); attempt++) {
+      if (attempt > 1) {
+        sleep(delayMs);
+        delayMs *= 2;
+      }
+      pending = send(split(pending, sizes), results, attempt < maxAttempts);
+    }
+
+    Map<String, E> orderedResults = new LinkedHashMap<String, E>();
+    for (String id : operations.keySet()) {
+      orderedResults.put(id, results.get(id));
+    }
+    return orderedResults;
+  }
+
+  /**
+   * Returns {@code true} if an operation that failed with a given status can
+   * be sent again.  By default, operations rejected because the service was
+   * unavailable or overloaded are retried, and so are server errors for
+   * operations other than inserts, which are not idempotent.
+   *
+   * @param status the status of the failed operation
+   * @param operation the operation type, {@code null} for an insert
+   */
+  protected boolean isRetryable(BatchStatus status,
+      BatchOperationType operation) {
+    switch (status.getCode()) {
+      case HttpURLConnection.HTTP_UNAVAILABLE:
+      case 429:
+        return true;
+      case HttpURLConnection.HTTP_INTERNAL_ERROR:
+      case HttpURLConnection.HTTP_BAD_GATEWAY:
+      case HttpURLConnection.HTTP_GATEWAY_TIMEOUT:
+        return operation != null && operation != BatchOperationType.INSERT;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Returns {@code true} if an operation of a batch request that failed as a
+   * whole can be sent again.  By default, operations are sent again if the
+   * request failed with a status accepted by
+   * {@link #isRetryable(BatchStatus, BatchOperationType)}, was rate limited,
+   * or could not connect to the server.  Other I/O errors may happen after
+   * the server processed the batch, so the operations are only sent again if
+   * they are not inserts.
+   *
+   * @param failure the {@link IOException}, {@link ServiceException} or
+   *     {@link RuntimeException} the batch request failed with
+   * @param operation the operation type, {@code null} for an insert
+   */
+  protected boolean isRetryable(Throwable failure,
+      BatchOperationType operation) {
+    if (failure instanceof RateLimitExceededException) {
+      return true;
+    }
+    if (failure instanceof ServiceException) {
+      return isRetryable(new BatchStatus((ServiceException) failure),
+          operation);
+    }
+    if (failure instanceof ConnectException
+        || failure instanceof NoRouteToHostException
+        || failure instanceof UnknownHostException) {
+      return true;
+    }
+    if (failure instanceof IOException) {
+      return operation != null && operation != BatchOperationType.INSERT;
+    }
+    return false;
+  }
+
+  /**
+   * Sends batches, at most {@link #maxConcurrentBatches} at a time, and
+   * records the results of their operations.  A batch that fails with an
+   * {@link Error} cancels the batches in flight.
+   *
+   * @param batches the batches to send
+   * @param results the results, keyed by batch id
+   * @param retry {@code true} if failed operations can be sent again
+   * @return the operations to send again
+   */
+  private List<E> send(List<List<E>> batches, Map<String, E> results,
+      boolean retry) throws InterruptedIOException {
+
+    CompletionService<Map<String, E>> completion =
+        new ExecutorCompletionService<Map<String, E>>(executor);
+    Map<Future<Map<String, E>>, List<E>> inFlight =
+        new HashMap<Future<Map<String, E>>, List<E>>();
+    List<E> failed = new ArrayList<E>();
+    int next = 0;
+
+    while (next < batches.size() || !inFlight.isEmpty()) {
+      while (next < batches.size() && inFlight.size() < maxConcurrentBatches) {
+        final List<E> batch = batches.get(next++);
+        inFlight.put(completion.submit(new Callable<Map<String, E>>() {
+          public Map<String, E> call() throws IOException, ServiceException {
+            return sendBatch(batch);
+          }
+        }), batch);
+      }
+
+      Future<Map<String, E>> done;
+      try {
+        done = completion.take();
+      } catch (InterruptedException e) {
+        cancel(inFlight.keySet());
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted waiting for batches");
+      }
+      List<E> batch = inFlight.remove(done);
+
+      Map<String, E> responses;
+      try {
+        responses = done.get();
+      } catch (InterruptedException e) {
+        // Cannot happen, the future is done.
+        throw new IllegalStateException(e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof Error) {
+          cancel(inFlight.keySet());
+          throw (Error) cause;
+        }
+        for (E entry : batch) {
+          if (retry && isRetryable(cause,
+              BatchUtils.getBatchOperationType(entry))) {
+            failed.add(entry);
+          } else {
+            String id = BatchUtils.getBatchId(entry);
+            results.put(id, createResult(id, new BatchStatus(
+                toServiceException(cause))));
+          }
+        }
+        continue;
+      }
+
+      for (E entry : batch) {
+        String id = BatchUtils.getBatchId(entry);
+        E response = responses.get(id);
+        BatchStatus status = (response == null)
+            ? null : BatchUtils.getBatchStatus(response);
+        if (retry && (status == null || isRetryable(status,
+            BatchUtils.getBatchOperationType(entry)))) {
+          failed.add(entry);
+        } else if (response == null) {
+          BatchStatus skipped = new BatchStatus();
+          skipped.setCode(HttpURLConnection.HTTP_UNAVAILABLE);
+          skipped.setReason("Operation not processed");
+          results.put(id, createResult(id, skipped));
+        } else {
+          results.put(id, response);
+        }
+      }
+    }
+    return failed;
+  }
+
+  /** Cancels the batches in flight. */
+  private static void cancel(Iterable<? extends Future<?>> futures) {
+    for (Future<?> future : futures) {
+      future.cancel(true);
+    }
+  }
+
+  /**
+   * Sends one batch.  If the server interrupted the batch, the result
+   * entries of the operations it processed are returned.
+   *
+   * @return the result entries of the batch, keyed by batch id
+   */
+  private Map<String, E> sendBatch(List<E> batch)
+      throws IOException, ServiceException {
+    F feed = createFeed();
+    feed.getEntries().addAll(batch);
+
+    List<? extends IEntry> responses;
+    try {
+      responses = service.batch(batchUrl, feed).getEntries();
+    } catch (BatchInterruptedException e) {
+      responses = e.getIFeed().getEntries();
+    }
+
+    Map<String, E> responsesById = new HashMap<String, E>();
+    for (IEntry response : responses) {
+      // Result entries are parsed with the class of the batch feed.
+      @SuppressWarnings("unchecked")
+      E entry = (E) response;
+      String id = BatchUtils.getBatchId(entry);
+      if (id != null && BatchUtils.getBatchStatus(entry) != null) {
+        responsesById.put(id, entry);
+      }
+    }
+    return responsesById;
+  }
+
+  /**
+   * Splits operations into batches.
+   *
+   * @param sizes the size of each operation, or {@code null} if the size of
+   *     the batches is not limited
+   */
+  private List<List<E>> split(List<E> entries, Map<String, Integer> sizes) {
+    List<List<E>> batches = new ArrayList<List<E>>();
+    List<E> batch = new ArrayList<E>();
+    long batchBytes = 0;
+    for (E entry : entries) {
+      int size = (sizes == null) ? 0 : sizes.get(BatchUtils.getBatchId(entry));
+      if (!batch.isEmpty() && (batch.size() >= maxBatchEntries
+          || (sizes != null && batchBytes + size > maxBatchBytes))) {
+        batches.add(batch);
+        batch = new ArrayList<E>();
+        batchBytes = 0;
+      }
+      batch.add(entry);
+      batchBytes += size;
+    }
+    if (!batch.isEmpty()) {
+      batches.add(batch);
+    }
+    return batches;
+  }
+
+  /**
+   * Returns the serialized size in bytes of each operation, keyed by batch
+   * id.
+   */
+  private Map<String, Integer> getSizes(Map<String, E> operations)
+      throws IOException {
+    Map<String, Integer> sizes = new HashMap<String, Integer>();
+    VersionRegistry.get().setThreadVersion(service.getProtocolVersion());
+    try {
+      for (Map.Entry<String, E> operation : operations.entrySet()) {
+        ByteCounter counter = new ByteCounter();
+        XmlWriter w = new XmlWriter(counter);
+        operation.getValue().generateAtom(w, service.getExtensionProfile());
+        w.flush();
+        sizes.put(operation.getKey(), (int) Math.min(counter.count,
+            Integer.MAX_VALUE));
+      }
+    } finally {
+      VersionRegistry.get().resetThreadVersion();
+    }
+    return sizes;
+  }
+
+  /**
+   * Creates the result entry of an operation that failed without a result
+   * from the server.
+   */
+  private E createResult(String id, BatchStatus status) {
+    E result = createFeed().createEntry();
+    BatchUtils.setBatchId(result, id);
+    result.setExtension(status);
+    return result;
+  }
+
+  private F createFeed() {
+    try {
+      return feedClass.getDeclaredConstructor().newInstance();
+    } catch (NoSuchMethodException e) {
+      throw new IllegalStateException("Can't create batch feed", e);
+    } catch (InvocationTargetException e) {
+      throw new IllegalStateException("Can't create batch feed", e);
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException("Can't create batch feed", e);
+    } catch (InstantiationException e) {
+      throw new IllegalStateException("Can't create batch feed", e);
+    }
+  }
+
+  /**
+   * Returns the exception describing the failure of a batch request in the
+   * status of its operations.
+   */
+  private static ServiceException toServiceException(Throwable t) {
+    if (t instanceof ServiceException) {
+      return (ServiceException) t;
+    }
+    return new ServiceException(t.getMessage(), t);
+  }
+
+  private static void sleep(long delayMs) throws InterruptedIOException {
+    try {
+      Thread.sleep(delayMs);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted waiting to retry");
+    }
+  }
+
+  /** Counts the bytes of the UTF-8 encoding of the characters written. */
+  private static class ByteCounter extends Writer {
+
+    long count;
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+      for (int i = off; i < off + len; i++) {
+        count(cbuf[i]);
+      }
+    }
+
+    @Override
+    public void write(String str, int off, int len) {
+      for (int i = off; i < off + len; i++) {
+        count(str.charAt(i));
+      }
+    }
+
+    @Override
+    public void write(int c) {
+      count((char) c);
+    }
+
+    private void count(char c) {
+      if (c < 0x80) {
+        count += 1;
+      } else if (c < 0x800 || Character.isHighSurrogate(c)
+          || Character.isLowSurrogate(c)) {
+        // A surrogate pair is encoded in 4 bytes.
+        count += 2;
+      } else {
+        count += 3;
+      }
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
@@ -20,6 +20,7 @@ import com.google.gdata.client.GDataProtocol;
 import com.google.gdata.client.GoogleAuthTokenFactory.OAuth2Token;
 import com.google.gdata.client.GoogleService;
 import com.google.gdata.client.GoogleService.SessionExpiredException;
+import com.google.gdata.client.RedirectCache;
 import com.google.gdata.client.Service.GDataRequest;
 import com.google.gdata.util.AuthenticationException;
 import com.google.gdata.util.ContentType;
@@ -32,6 +33,7 @@ import java.lang.reflect.InvocationTargetException;
 import java.net.CookieHandler;
 import java.net.HttpURLConnection;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.text.SimpleDateFormat;
 import java.util.Collections;
@@ -40,7 +42,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Set;
 import java.util.logging.Logger;
 
 
@@ -221,8 +222,7 @@ public class GoogleGDataRequest extends HttpGDataRequest {
       if (expires == null) {
         return false;
       }
-      Date now = new Date();
-      return now.after(expires);
+      return System.currentTimeMillis() > expires.getTime();
     }
 
     /**
@@ -355,16 +355,14 @@ public class GoogleGDataRequest extends HttpGDataRequest {
 
         // Get the list of matching cookies and accumulate a buffer
         // containing the cookie name/value pairs.
-        Set<GoogleCookie> cookies = service.getCookies();
+        List<GoogleCookie> cookies = service.getCookies(uri);
         StringBuilder cookieBuf = new StringBuilder();
         for (GoogleCookie cookie : cookies) {
-          if (cookie.matches(uri)) {
-            if (cookieBuf.length() > 0) {
-              cookieBuf.append("; ");
-            }
-            cookieBuf.append(cookie.getHeaderValue());
-            logger.fine("Setting cookie: " + cookie);
+          if (cookieBuf.length() > 0) {
+            cookieBuf.append("; ");
           }
+          cookieBuf.append(cookie.getHeaderValue());
+          logger.fine("Setting cookie: " + cookie);
         }
 
         // If any matching cookies were found, update the request headers.
@@ -559,7 +557,25 @@ public class GoogleGDataRequest extends HttpGDataRequest {
       switch (httpConn.getResponseCode()) {
         case HttpURLConnection.HTTP_MOVED_PERM:
         case HttpURLConnection.HTTP_MOVED_TEMP:
-          throw new RedirectRequiredException(httpConn);
+          RedirectRequiredException redirect =
+              new RedirectRequiredException(httpConn);
+          // Remember session redirects and the location of a permanently
+          // moved query, so later requests are sent there first.
+          RedirectCache redirectCache =
+              (service != null) ? service.getRedirectCache() : null;
+          if (redirectCache != null) {
+            List<GoogleCookie> cookies = Collections.emptyList();
+            if (service.handlesCookies()) {
+              try {
+                cookies = service.getCookies(requestUrl.toURI());
+              } catch (URISyntaxException e) {
+                // Bind the session to no cookies.
+              }
+            }
+            redirectCache.put(type, requestUrl, httpConn.getResponseCode(),
+                redirect.getRedirectLocation(), cookies);
+          }
+          throw redirect;
       }
       super.handleErrorResponse();
     } catch (AuthenticationException e) {
@@ -20,6 +20,7 @@ import com.google.gdata.util.common.xml.XmlWriter;
 import com.google.gdata.client.AuthTokenFactory;
 import com.google.gdata.client.GDataProtocol;
 import com.google.gdata.client.Query;
+import com.google.gdata.client.RetryPolicy;
 import com.google.gdata.client.GDataProtocol.Header;
 import com.google.gdata.client.Service.GDataRequest;
 import com.google.gdata.client.Service.GDataRequestFactory;
@@ -38,11 +39,15 @@ import com.google.gdata.util.NotImplementedException;
 import com.google.gdata.util.NotModifiedException;
 import com.google.gdata.util.OAuthProxyException;
 import com.google.gdata.util.PreconditionFailedException;
+import com.google.gdata.util.RateLimitExceededException;
 import com.google.gdata.util.ResourceNotFoundException;
 import com.google.gdata.util.ServiceException;
 import com.google.gdata.util.ServiceForbiddenException;
+import com.google.gdata.util.ServiceUnavailableException;
 import com.google.gdata.util.VersionConflictException;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -59,6 +64,7 @@ import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * The HttpGDataRequest class provides a basic implementation of the
@@ -95,6 +101,27 @@ public class HttpGDataRequest implements GDataRequest {
       GDataProtocol.Header.METHOD_OVERRIDE;
 
 
+  /**
+   * Maximum number of redirects followed for a single request.
+   */
+  private static final int MAX_REDIRECTS = 20;
+
+  /**
+   * Headers describing the request body, which are dropped when a
+   * {@code 303 See Other} is followed with a {@code GET}.
+   */
+  private static final String[] BODY_HEADERS = {
+      "Content-Type", "Content-Encoding", "Content-Length",
+      GDataProtocol.Header.METHOD_OVERRIDE };
+
+  /**
+   * Size above which the body of a streaming request is streamed to the
+   * connection.  Smaller bodies are buffered, so they can be replayed if the
+   * request is retried or redirected, and are sent along with the headers.
+   */
+  private static final int STREAMING_THRESHOLD = 64 * 1024;
+
+
   /**
    * The HttpGDataRequest.Factory class is a factory class for constructing
    * new HttpGDataRequest instances.
@@ -109,6 +136,10 @@ public class HttpGDataRequest implements GDataRequest {
     protected boolean useSsl = false;
     protected HttpUrlConnectionSource connectionSource =
         JdkHttpUrlConnectionSource.INSTANCE;
+    protected RetryPolicy retryPolicy;
+    protected QueryResponseCache responseCache;
+    protected int chunkSize = 0;
+    protected boolean compressRequests = false;
 
     public void setAuthToken(AuthTokenFactory.AuthToken authToken) {
       if (authToken != null && !(authToken instanceof HttpAuthToken)) {
@@ -153,6 +184,47 @@ public class HttpGDataRequest implements GDataRequest {
       this.connectionSource = connectionSource;
     }
 
+    /**
+     * Sets the policy used to retry failed requests, or {@code null} to not
+     * retry them.
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+      this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Sets the cache used to conditionalize queries on their previous
+     * response, or {@code null} to not cache responses.
+     */
+    public void setResponseCache(QueryResponseCache responseCache) {
+      this.responseCache = responseCache;
+    }
+
+    /**
+     * Configures how the requests carrying a body send it.  By default, bodies
+     * larger than 64 KB are streamed to the service while they are written,
+     * in chunks of the JDK default size.  Streamed bodies cannot be replayed
+     * if the request is retried or redirected; buffered bodies always can.
+     *
+     * @param chunkSize the number of bytes to write in each chunk, {@code 0}
+     *     to use the JDK default, or {@code -1} to buffer bodies
+     * @see HttpGDataRequest#setChunkedStreamingMode(int)
+     */
+    public void setChunkedStreamingMode(int chunkSize) {
+      this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Configures the requests carrying an Atom, XML or JSON body to compress
+     * it with gzip.  Other bodies, such as media, are sent as is.  Only enable
+     * this for services that accept compressed requests.
+     *
+     * @see HttpGDataRequest#setCompressRequestBody(boolean)
+     */
+    public void setCompressRequests(boolean compressRequests) {
+      this.compressRequests = compressRequests;
+    }
+
     @SuppressWarnings("unused")
     public GDataRequest getRequest(RequestType type,
                                    URL requestUrl,
@@ -162,7 +234,38 @@ public class HttpGDataRequest implements GDataRequest {
         requestUrl = new URL(
             requestUrl.toString().replaceFirst("http", "https"));
       }
-      return createRequest(type, requestUrl, contentType);
+      GDataRequest request = createRequest(type, requestUrl, contentType);
+      if (request instanceof HttpGDataRequest) {
+        HttpGDataRequest httpRequest = (HttpGDataRequest) request;
+        if (retryPolicy != null) {
+          httpRequest.setRetryPolicy(retryPolicy);
+        }
+        if (responseCache != null) {
+          httpRequest.setResponseCache(responseCache);
+        }
+        if (httpRequest.expectsInput) {
+          if (chunkSize >= 0) {
+            httpRequest.setChunkedStreamingMode(chunkSize);
+          }
+          if (compressRequests && isCompressible(contentType)) {
+            httpRequest.setCompressRequestBody(true);
+          }
+        }
+      }
+      return request;
+    }
+
+    /**
+     * Returns {@code true} if bodies of the given type are worth compressing,
+     * which is the case of Atom, XML and JSON documents.
+     */
+    private static boolean isCompressible(ContentType contentType) {
+      if (contentType == null) {
+        return false;
+      }
+      String subType = contentType.getSubType();
+      return subType.equals("xml") || subType.endsWith("+xml")
+          || subType.equals("json");
     }
 
     @SuppressWarnings("unused")
@@ -255,6 +358,172 @@ public class HttpGDataRequest implements GDataRequest {
    */
   private InputStream inputStream = null;
 
+  /**
+   * Set once the underlying connection has been connected, even if the
+   * request subsequently failed.
+   */
+  private boolean connected = false;
+
+  /**
+   * Headers set on the request, retained so they can be reapplied when a
+   * redirect is followed.
+   */
+  private final Map<String, String> requestHeaders =
+      new LinkedHashMap<String, String>();
+
+  /**
+   * Buffered request body or {@code null} if no body has been written or the
+   * body is streamed directly to the connection.
+   */
+  private RequestBuffer requestBody = null;
+
+  /**
+   * True if the request body is streamed to the connection once it exceeds
+   * {@link #STREAMING_THRESHOLD}, instead of being buffered.
+   */
+  private boolean streamingBody = false;
+
+  /**
+   * Number of bytes to write in each chunk of a streamed body, or {@code 0}
+   * to use the JDK default.
+   */
+  private int chunkSize = 0;
+
+  /**
+   * Stream the request body is written to, or {@code null} if no body has
+   * been written.
+   */
+  private BodyStream bodyStream = null;
+
+  /**
+   * True if the request body has been streamed to the connection, in which
+   * case the request cannot be sent again.
+   */
+  private boolean bodyStreamed = false;
+
+  /**
+   * True if the request body is compressed with gzip.
+   */
+  private boolean compressBody = false;
+
+  /**
+   * Stream compressing the request body, or {@code null} if the body is not
+   * compressed or has not been written.
+   */
+  private GZIPOutputStream compressedBody = null;
+
+  /**
+   * Policy deciding whether failed attempts of the request are retried, or
+   * {@code null} if they are not.
+   */
+  private RetryPolicy retryPolicy = null;
+
+  /**
+   * Cache of query responses, or {@code null} if responses are not cached.
+   */
+  private QueryResponseCache responseCache = null;
+
+  /**
+   * Key of the response in {@link #responseCache}, or {@code null} if the
+   * response is not cached.
+   */
+  private String cacheKey = null;
+
+  /**
+   * Cached response the request was conditionalized on, or {@code null}.
+   */
+  private QueryResponseCache.CachedResponse cachedResponse = null;
+
+  /**
+   * True if the service reported that {@link #cachedResponse} is still
+   * current, in which case it is returned as the response.
+   */
+  private boolean cacheHit = false;
+
+  /**
+   * An in-memory request body that can be written to the connection (again)
+   * without copying.
+   */
+  private static class RequestBuffer extends ByteArrayOutputStream {
+
+    RequestBuffer() {
+      super(1024);
+    }
+  }
+
+  /**
+   * A stream buffering the request body in {@link #requestBody}.  If the
+   * request streams its body, a body growing larger than
+   * {@link #STREAMING_THRESHOLD} is written to the connection instead, along
+   * with everything buffered so far.
+   */
+  private class BodyStream extends OutputStream {
+
+    /** Stream of the connection, or {@code null} while buffering. */
+    private OutputStream out = null;
+
+    private boolean closed = false;
+
+    @Override
+    public void write(int b) throws IOException {
+      if (out == null) {
+        checkSize(1);
+      }
+      if (out == null) {
+        requestBody.write(b);
+      } else {
+        out.write(b);
+      }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (out == null) {
+        checkSize(len);
+      }
+      if (out == null) {
+        requestBody.write(b, off, len);
+      } else {
+        out.write(b, off, len);
+      }
+    }
+
+    /**
+     * Starts streaming the body if it would exceed the threshold after
+     * writing {@code len} more bytes.
+     */
+    private void checkSize(int len) throws IOException {
+      if (!streamingBody || requestBody.size() + len <= STREAMING_THRESHOLD) {
+        return;
+      }
+      // The connection is opened by the first write.
+      applyTimeouts();
+      httpConn.setChunkedStreamingMode(chunkSize);
+      out = httpConn.getOutputStream();
+      requestBody.writeTo(out);
+      requestBody = null;
+      bodyStreamed = true;
+    }
+
+    @Override
+    public void flush() throws IOException {
+      if (out != null) {
+        out.flush();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      // Both the caller and the request close the stream.
+      if (!closed) {
+        closed = true;
+        if (out != null) {
+          out.close();
+        }
+      }
+    }
+  }
+
   /**
    * Constructs a new HttpGDataRequest instance of the specified RequestType,
    * targeting the specified URL.
@@ -281,6 +550,23 @@ public class HttpGDataRequest implements GDataRequest {
     this.httpConn = getRequestConnection(requestUrl);
     this.authToken = authToken;
 
+    boolean success = false;
+    try {
+      initRequest(headerMap, privateHeaderMap);
+      success = true;
+    } finally {
+      if (!success) {
+        releaseConnection();
+      }
+    }
+  }
+
+  /**
+   * Configures the method and headers of the underlying connection.
+   */
+  private void initRequest(Map<String, String> headerMap,
+      Map<String, String> privateHeaderMap) throws IOException {
+
     switch (type) {
 
       case QUERY:
@@ -451,15 +737,70 @@ public class HttpGDataRequest implements GDataRequest {
     }
   }
 
+  /**
+   * Configures the request to stream its body to the service using chunked
+   * transfer encoding instead of buffering it, once the body exceeds
+   * {@value #STREAMING_THRESHOLD} bytes.  Smaller bodies are buffered and
+   * sent along with the headers.  A streamed body cannot be replayed, so the
+   * request is then neither retried nor redirected.
+   *
+   * @param chunkSize the number of bytes to write in each chunk, or
+   *     {@code 0} to use the JDK default.
+   * @see HttpURLConnection#setChunkedStreamingMode(int)
+   */
+  public void setChunkedStreamingMode(int chunkSize) {
+    this.chunkSize = chunkSize;
+    streamingBody = true;
+  }
+
+  /**
+   * Configures the request to compress its body with gzip, and to send it
+   * with a {@code Content-Encoding: gzip} header.  Buffered bodies are held
+   * compressed.  This must be called before the body is written.
+   *
+   * @param compress {@code true} to compress the body
+   */
+  public void setCompressRequestBody(boolean compress) {
+    if (!expectsInput) {
+      throw new IllegalStateException("Request doesn't accept input");
+    }
+    if (bodyStream != null) {
+      throw new IllegalStateException("Request body already written");
+    }
+    compressBody = compress;
+    if (compress) {
+      setHeader("Content-Encoding", "gzip");
+    } else {
+      httpConn.setRequestProperty("Content-Encoding", null);
+      requestHeaders.remove("Content-Encoding");
+    }
+  }
+
   public OutputStream getRequestStream() throws IOException {
 
     if (!expectsInput) {
       throw new IllegalStateException("Request doesn't accept input");
     }
+    OutputStream requestStream;
+    if (compressedBody != null) {
+      requestStream = compressedBody;
+    } else {
+      if (bodyStream == null) {
+        // Buffer the body ourselves so it can be replayed if the request is
+        // redirected.
+        requestBody = new RequestBuffer();
+        bodyStream = new BodyStream();
+      }
+      requestStream = bodyStream;
+      if (compressBody) {
+        compressedBody = new GZIPOutputStream(requestStream, 8192);
+        requestStream = compressedBody;
+      }
+    }
     if (logger.isLoggable(Level.FINEST)){
-      return new LoggableOutputStream(logger, httpConn.getOutputStream());
+      return new LoggableOutputStream(logger, requestStream);
     }
-    return httpConn.getOutputStream();
+    return requestStream;
   }
 
 
@@ -478,17 +819,208 @@ public class HttpGDataRequest implements GDataRequest {
 
   public void setHeader(String name, String value) {
     httpConn.setRequestProperty(name, value);
+    requestHeaders.put(name, value);
     logger.finer(name + ": " + value);
   }
 
 
   public void setPrivateHeader(String name, String value) {
     httpConn.setRequestProperty(name, value);
+    requestHeaders.put(name, value);
     logger.finer(name + ": <Not Logged>");
   }
 
   public void execute() throws IOException, ServiceException {
 
+    // Redirects of anything but a query are followed here rather than by the
+    // JDK, whose handling of redirected POSTs depends on the JVM-wide
+    // http.strictPostRedirect system property.
+    boolean followRedirects = httpConn.getInstanceFollowRedirects()
+        && type != RequestType.QUERY;
+    if (type != RequestType.QUERY) {
+      httpConn.setInstanceFollowRedirects(false);
+    }
+
+    if (responseCache != null && type == RequestType.QUERY) {
+      prepareCachedQuery();
+    }
+    if (retryPolicy != null) {
+      retryPolicy.requestStarted();
+    }
+    int retries = 0;
+    long retryDelay = 0;
+    while (true) {
+      try {
+        executeAttempt(followRedirects);
+        break;
+      } catch (IOException e) {
+        retryDelay = getRetryDelay(++retries, retryDelay, e);
+        if (retryDelay == RetryPolicy.STOP) {
+          throw e;
+        }
+        // The state of the connection is unknown, never reuse it.
+        abandonConnection();
+        if (!awaitRetry(retryDelay)) {
+          throw e;
+        }
+      } catch (ServiceException e) {
+        retryDelay = getRetryDelay(++retries, retryDelay, e);
+        if (retryDelay == RetryPolicy.STOP) {
+          throw e;
+        }
+        discardResponse();
+        if (!awaitRetry(retryDelay)) {
+          throw e;
+        }
+      }
+      reopen(httpConn.getURL(), httpConn.getInstanceFollowRedirects());
+      if (logger.isLoggable(Level.FINE)) {
+        logger.fine("Retrying (" + retries + "): "
+            + httpConn.getRequestMethod() + " "
+            + httpConn.getURL().toExternalForm());
+      }
+    }
+
+    if (cacheKey != null) {
+      responseCache.recordQuery(cacheHit);
+    }
+    executed = true;
+  }
+
+  /**
+   * Conditionalizes the query on its cached response, if any.  Queries the
+   * caller conditionalized are left alone, as they expect to fail if the
+   * resource has not been modified.
+   */
+  private void prepareCachedQuery() {
+    if (requestHeaders.containsKey(GDataProtocol.Header.IF_NONE_MATCH)
+        || requestHeaders.containsKey(
+            GDataProtocol.Header.IF_MODIFIED_SINCE)) {
+      return;
+    }
+    cacheKey = responseCache.getKey(requestUrl.toExternalForm(), authToken);
+    cachedResponse = responseCache.get(cacheKey);
+    if (cachedResponse != null) {
+      if (cachedResponse.etag != null) {
+        setHeader(GDataProtocol.Header.IF_NONE_MATCH, cachedResponse.etag);
+      } else {
+        setHeader(GDataProtocol.Header.IF_MODIFIED_SINCE,
+            cachedResponse.lastModified);
+      }
+    }
+  }
+
+  /**
+   * Sends the request, following redirects if requested, and checks the
+   * response.
+   */
+  private void executeAttempt(boolean followRedirects)
+      throws IOException, ServiceException {
+
+    sendRequest();
+    if (followRedirects) {
+      int redirects = 0;
+      URL location;
+      while ((location = getRedirectLocation()) != null) {
+        if (++redirects > MAX_REDIRECTS) {
+          throw new ProtocolException(
+              "Server redirected too many times (" + MAX_REDIRECTS + ")");
+        }
+        redirect(location);
+        sendRequest();
+      }
+    }
+
+    if (logger.isLoggable(Level.FINE)) {
+
+      // Avoid calling URL.equals() unless an object equivalence test fails,
+      // because URL.equals() requires DNS resolution. This test will
+      // fail on the first check for any URLConnection implementation
+      // that derives from java.net.URLConnection. The 2nd check would
+      // work on an alternate impl that clones the URL.
+      if (httpConn.getURL() != requestUrl
+          && !httpConn.getURL().toExternalForm().equals(
+              requestUrl.toExternalForm())) {
+        logger.fine("Redirected to:" + httpConn.getURL().toExternalForm());
+      }
+
+      // Log response information here, if enabled
+      logger.fine(httpConn.getResponseCode() + " "
+          + httpConn.getResponseMessage());
+      if (logger.isLoggable(Level.FINER)) {
+        for (Map.Entry<String, List<String>> headerField : httpConn
+            .getHeaderFields().entrySet()) {
+          for (String value : headerField.getValue()) {
+            logger.finer(headerField.getKey() + ": " + value);
+          }
+        }
+      }
+    }
+    checkResponse(); // will flush any request data
+  }
+
+  /**
+   * Sets the cache used to conditionalize the request on its previous
+   * response, or {@code null} to not cache the response.  Only queries are
+   * cached.
+   */
+  public void setResponseCache(QueryResponseCache responseCache) {
+    this.responseCache = responseCache;
+  }
+
+  /**
+   * Sets the policy used to retry failed attempts of the request, or
+   * {@code null} to not retry them.  Only requests whose body is buffered can
+   * be retried.
+   */
+  public void setRetryPolicy(RetryPolicy retryPolicy) {
+    this.retryPolicy = retryPolicy;
+  }
+
+  /**
+   * Returns the number of milliseconds to wait before retrying the request
+   * after a failed attempt, or {@link RetryPolicy#STOP} if it is not retried.
+   */
+  private long getRetryDelay(int retryCount, long previousDelayMs,
+      Exception failure) {
+    if (retryPolicy == null || !isReplayable()) {
+      return RetryPolicy.STOP;
+    }
+    boolean idempotent = type == RequestType.QUERY
+        || type == RequestType.UPDATE || type == RequestType.DELETE;
+    return retryPolicy.getRetryDelay(retryCount, previousDelayMs, failure,
+        idempotent);
+  }
+
+  /**
+   * Waits before retrying the request.
+   *
+   * @return {@code true} if the request should be retried, {@code false} if
+   *     the thread was interrupted
+   */
+  private boolean awaitRetry(long delayMs) {
+    try {
+      Thread.sleep(delayMs);
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  /**
+   * Returns {@code true} if the request can be sent again, which is the case
+   * unless its body was streamed.
+   */
+  private boolean isReplayable() {
+    return !bodyStreamed;
+  }
+
+  /**
+   * Applies the timeouts of the request to the underlying connection.
+   */
+  private void applyTimeouts() {
+
     if (connectTimeout >= 0) {
       httpConn.setConnectTimeout(connectTimeout);
     }
@@ -496,56 +1028,168 @@ public class HttpGDataRequest implements GDataRequest {
     if (readTimeout >= 0) {
       httpConn.setReadTimeout(readTimeout);
     }
+  }
 
-    // Set the http.strictPostRedirect property to prevent redirected
-    // POST/PUT/DELETE from being mapped to a GET. This
-    // system property was a hack to fix a jdk bug w/out changing back
-    // compat behavior. It's bogus that this is a system (and not a
-    // per-connection) property, so we just change it for the duration
-    // of the connection.
-    // See http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=4023866
-    String httpStrictPostRedirect =
-        System.getProperty("http.strictPostRedirect");
-    try {
-      System.setProperty("http.strictPostRedirect", "true");
-      httpConn.connect();
+  /**
+   * Connects the underlying connection and writes any buffered request body.
+   * A streamed body has already been written to the connection.
+   */
+  private void sendRequest() throws IOException {
 
-      if (logger.isLoggable(Level.FINE)) {
+    applyTimeouts();
 
-        // Avoid calling URL.equals() unless an object equivalence test fails,
-        // because URL.equals() requires DNS resolution. This test will
-        // fail on the first check for any URLConnection implementation
-        // that derives from java.net.URLConnection. The 2nd check would
-        // work on an alternate impl that clones the URL.
-        if (httpConn.getURL() != requestUrl
-            && !httpConn.getURL().toExternalForm().equals(
-                requestUrl.toExternalForm())) {
-          logger.fine("Redirected to:" + httpConn.getURL().toExternalForm());
+    if (compressedBody != null) {
+      // Writes the end of the compressed data, if the caller did not close
+      // the request stream.
+      compressedBody.finish();
+    }
+    if (bodyStreamed) {
+      bodyStream.close();
+    } else if (requestBody != null) {
+      if (requestBody.size() > STREAMING_THRESHOLD) {
+        try {
+          httpConn.setFixedLengthStreamingMode(requestBody.size());
+        } catch (IllegalStateException e) {
+          // Chunked mode was configured directly on the connection.
         }
+      }
+      // A small body is left to the JDK to buffer, which sends it in the
+      // same packet as the headers rather than after them.
+      OutputStream out = httpConn.getOutputStream();
+      requestBody.writeTo(out);
+      out.close();
+    }
+    httpConn.connect();
+    connected = true;
+  }
 
-        // Log response information here, if enabled
-        logger.fine(httpConn.getResponseCode() + " "
-            + httpConn.getResponseMessage());
-        if (logger.isLoggable(Level.FINER)) {
-          for (Map.Entry<String, List<String>> headerField : httpConn
-              .getHeaderFields().entrySet()) {
-            for (String value : headerField.getValue()) {
-              logger.finer(headerField.getKey() + ": " + value);
-            }
-          }
-        }
+  /**
+   * Returns the location the current response redirects to, or {@code null}
+   * if the response is not a redirect that can be followed.
+   */
+  private URL getRedirectLocation() throws IOException {
+
+    switch (httpConn.getResponseCode()) {
+      case HttpURLConnection.HTTP_MOVED_PERM:
+      case HttpURLConnection.HTTP_MOVED_TEMP:
+      case HttpURLConnection.HTTP_SEE_OTHER:
+      case 307:  // Temporary Redirect
+      case 308:  // Permanent Redirect
+        break;
+      default:
+        return null;
+    }
+    String location = httpConn.getHeaderField("Location");
+    if (location == null || !isReplayable()) {
+      return null;
+    }
+    URL target = new URL(httpConn.getURL(), location);
+    if (!target.getProtocol().equalsIgnoreCase(
+        httpConn.getURL().getProtocol())) {
+      // Like the JDK, never follow redirects across protocols.
+      return null;
+    }
+    return target;
+  }
+
+  /**
+   * Replaces the underlying connection by a new one to {@code target} that
+   * carries the same method and headers as the current one.  A
+   * {@code 303 See Other} is followed with a {@code GET} without a body
+   * instead.  Credentials are only sent along if the target has the same
+   * origin.
+   */
+  private void redirect(URL target) throws IOException {
+    if (httpConn.getResponseCode() == HttpURLConnection.HTTP_SEE_OTHER) {
+      expectsInput = false;
+      streamingBody = false;
+      requestBody = null;
+      bodyStream = null;
+      compressedBody = null;
+      for (String header : BODY_HEADERS) {
+        requestHeaders.remove(header);
       }
-      checkResponse(); // will flush any request data
+      reopen(target, false, "GET");
+    } else {
+      reopen(target, false, httpConn.getRequestMethod());
+    }
+    if (logger.isLoggable(Level.FINE)) {
+      logger.fine("Following redirect: " + httpConn.getRequestMethod() + " "
+          + target.toExternalForm());
+    }
+  }
 
-    } finally {
-      if (httpStrictPostRedirect == null) {
-        System.clearProperty("http.strictPostRedirect");
-      } else {
-        System.setProperty("http.strictPostRedirect", httpStrictPostRedirect);
+  /**
+   * Replaces the underlying connection by a new one to {@code target} that
+   * carries the same method and headers as the current one, so the request
+   * can be sent again.  Credentials are only sent along if the target has the
+   * same origin.
+   */
+  private void reopen(URL target, boolean followRedirects)
+      throws IOException {
+    reopen(target, followRedirects, httpConn.getRequestMethod());
+  }
+
+  /**
+   * Replaces the underlying connection by a new one to {@code target} that
+   * carries the headers of the current one and the given method.
+   */
+  private void reopen(URL target, boolean followRedirects, String method)
+      throws IOException {
+
+    boolean sameOrigin = isSameOrigin(target, httpConn.getURL());
+    discardResponse();
+
+    httpConn = getRequestConnection(target);
+    httpConn.setInstanceFollowRedirects(followRedirects);
+    httpConn.setRequestMethod(method);
+    httpConn.setDoOutput(expectsInput);
+    for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+      if (!"Authorization".equalsIgnoreCase(header.getKey())) {
+        httpConn.setRequestProperty(header.getKey(), header.getValue());
       }
     }
+    if (authToken != null && sameOrigin) {
+      httpConn.setRequestProperty("Authorization",
+          authToken.getAuthorizationHeader(target, method));
+    }
+  }
 
-    executed = true;
+  /**
+   * Returns {@code true} if two URLs have the same scheme, host and port.
+   */
+  private static boolean isSameOrigin(URL a, URL b) {
+    int portA = (a.getPort() != -1) ? a.getPort() : a.getDefaultPort();
+    int portB = (b.getPort() != -1) ? b.getPort() : b.getDefaultPort();
+    return a.getProtocol().equalsIgnoreCase(b.getProtocol())
+        && a.getHost().equalsIgnoreCase(b.getHost())
+        && portA == portB;
+  }
+
+  /**
+   * Discards the response on the current connection, allowing the JDK to
+   * reuse the underlying socket.
+   */
+  private void discardResponse() {
+    if (connectionSource instanceof HttpUrlConnectionPool) {
+      releaseConnection();
+    } else if (connected) {
+      try {
+        httpConn.getInputStream().close();
+      } catch (IOException e) {
+        // Nothing left to discard.
+      }
+    }
+    connected = false;
+  }
+
+  /**
+   * Closes the current connection without reading the response.
+   */
+  private void abandonConnection() {
+    httpConn.disconnect();
+    connected = false;
+    releaseConnection();
   }
 
   /**
@@ -554,7 +1198,10 @@ public class HttpGDataRequest implements GDataRequest {
    */
   protected void checkResponse() throws IOException, ServiceException {
 
-    if (isOAuthProxyErrorResponse()) {
+    if (cachedResponse != null
+        && httpConn.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+      cacheHit = true;
+    } else if (isOAuthProxyErrorResponse()) {
       handleOAuthProxyErrorResponse();
     } else if (httpConn.getResponseCode() >= 300) {
       handleErrorResponse();
@@ -628,6 +1275,25 @@ public class HttpGDataRequest implements GDataRequest {
       case HttpURLConnection.HTTP_GONE:
         throw new NoLongerAvailableException(httpConn);
 
+      case HttpURLConnection.HTTP_UNAVAILABLE:
+        ServiceUnavailableException unavailable =
+            new ServiceUnavailableException(httpConn);
+        String retryAfter = httpConn.getHeaderField("Retry-After");
+        if (retryAfter != null) {
+          try {
+            unavailable.setRetryTime(Integer.parseInt(retryAfter.trim()));
+          } catch (NumberFormatException e) {
+            // An HTTP date, left in the response headers.
+          }
+        }
+        throw unavailable;
+
+      case 429:  // Too Many Requests
+        RateLimitExceededException rateLimited =
+            new RateLimitExceededException(httpConn);
+        rateLimited.setHttpErrorCodeOverride(429);
+        throw rateLimited;
+
       default:
         throw new ServiceException(httpConn);
     }
@@ -639,7 +1305,8 @@ public class HttpGDataRequest implements GDataRequest {
       throw new IllegalStateException(
           "Must call execute() before attempting to read response");
     }
-    String value = httpConn.getHeaderField("Content-Type");
+    String value = cacheHit ? cachedResponse.contentType
+        : httpConn.getHeaderField("Content-Type");
     if (value == null) {
       return null;
     }
@@ -647,6 +1314,9 @@ public class HttpGDataRequest implements GDataRequest {
   }
 
   public String getResponseHeader(String headerName) {
+    if (cacheHit && "Content-Type".equalsIgnoreCase(headerName)) {
+      return cachedResponse.contentType;
+    }
     return httpConn.getHeaderField(headerName);
   }
 
@@ -670,9 +1340,16 @@ public class HttpGDataRequest implements GDataRequest {
       return inputStream;
     }
 
-    inputStream = httpConn.getInputStream();
-    if ("gzip".equalsIgnoreCase(httpConn.getContentEncoding())) {
-      inputStream = new GZIPInputStream(inputStream);
+    if (cacheHit) {
+      inputStream = new ByteArrayInputStream(cachedResponse.body);
+    } else {
+      inputStream = httpConn.getInputStream();
+      if ("gzip".equalsIgnoreCase(httpConn.getContentEncoding())) {
+        inputStream = new GZIPInputStream(inputStream);
+      }
+      if (cacheKey != null) {
+        inputStream = cacheResponse(inputStream);
+      }
     }
     if (logger.isLoggable(Level.FINEST)){
       return new LoggableInputStream(logger, inputStream);
@@ -680,6 +1357,25 @@ public class HttpGDataRequest implements GDataRequest {
     return inputStream;
   }
 
+  /**
+   * Returns a stream storing the response in the cache as it is read, if it
+   * carries a validator and may be stored.
+   */
+  private InputStream cacheResponse(InputStream in) {
+    String etag = httpConn.getHeaderField(GDataProtocol.Header.ETAG);
+    String lastModified =
+        httpConn.getHeaderField(GDataProtocol.Header.LAST_MODIFIED);
+    String cacheControl = httpConn.getHeaderField("Cache-Control");
+    if ((etag == null && lastModified == null)
+        || (cacheControl != null
+            && cacheControl.toLowerCase().contains("no-store"))) {
+      responseCache.remove(cacheKey);
+      return in;
+    }
+    return responseCache.store(cacheKey, etag, lastModified,
+        httpConn.getHeaderField("Content-Type"), in);
+  }
+
   public ParseSource getParseSource() throws IOException {
     return new ParseSource(getResponseStream());
   }
@@ -695,12 +1391,29 @@ public class HttpGDataRequest implements GDataRequest {
   }
 
   public void end() {
+    // Pooled connections are released first, so that the pool can drain any
+    // unread response data before the stream is closed.
     try {
-      if (inputStream != null) {
-        inputStream.close();
+      releaseConnection();
+    } finally {
+      try {
+        if (inputStream != null) {
+          inputStream.close();
+        }
+      } catch (IOException ioe) {
+        logger.log(Level.WARNING, "Error closing response stream", ioe);
       }
-    } catch (IOException ioe) {
-      logger.log(Level.WARNING, "Error closing response stream", ioe);
+    }
+  }
+
+  /**
+   * Returns the underlying connection to its source if the source is an
+   * {@link HttpUrlConnectionPool}.
+   */
+  private void releaseConnection() {
+    if (httpConn != null && connectionSource instanceof HttpUrlConnectionPool) {
+      ((HttpUrlConnectionPool) connectionSource).releaseConnection(
+          httpConn, connected);
     }
   }
 }
@@ -0,0 +1,41 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client.http;
+
+import java.net.HttpURLConnection;
+
+/**
+ * An {@link HttpUrlConnectionSource} that keeps track of the connections it
+ * hands out and expects them to be returned once the request using them has
+ * completed.
+ *
+ * @see PooledHttpUrlConnectionSource
+ */
+public interface HttpUrlConnectionPool extends HttpUrlConnectionSource {
+
+  /**
+   * Returns a connection previously obtained from
+   * {@link #openConnection(java.net.URL)} to the pool.  Releasing a connection
+   * that was already released or that was not opened by this pool has no
+   * effect.
+   *
+   * @param connection connection to release
+   * @param connected {@code true} if the request was sent on the connection,
+   *     {@code false} if the connection was never connected
+   */
+  void releaseConnection(HttpURLConnection connection, boolean connected);
+}
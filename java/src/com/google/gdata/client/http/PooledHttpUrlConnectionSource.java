@@ -0,0 +1,455 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A connection source that bounds the number of concurrent connections to
+ * each route (scheme, host and port) and makes sure completed connections are
+ * handed back to the JDK keep-alive cache in a reusable state, so that
+ * subsequent requests to the same route reuse the open socket instead of
+ * paying for a new TCP and TLS handshake.
+ *
+ * <p>The JDK only reuses a persistent connection if its response body has
+ * been read to the end.  When a connection is released, any unread part of
+ * the response (up to {@link #setMaxDrainBytes(int) a limit}) is drained;
+ * larger responses are discarded by disconnecting the socket.  Requests
+ * created by {@link HttpGDataRequest} release their connection from
+ * {@link HttpGDataRequest#end()}, so callers must always end their requests
+ * to avoid exhausting the per-route limit: the permit of a connection that is
+ * never released is not reclaimed, even once the connection is garbage
+ * collected.
+ *
+ * <p>Route bookkeeping for hosts that have not been used for longer than the
+ * idle timeout, and that have no connection in use or being waited for, is
+ * evicted by {@link #closeIdleRoutes()}, which is also called
+ * opportunistically whenever a new route is created.
+ *
+ * <p>Instances are thread-safe and are meant to be shared by all services of
+ * an application, for example through
+ * {@link com.google.gdata.client.Service#setConnectionSource}.
+ */
+public class PooledHttpUrlConnectionSource implements HttpUrlConnectionPool {
+
+  private static final Logger logger =
+      Logger.getLogger(PooledHttpUrlConnectionSource.class.getName());
+
+  /**
+   * Default maximum number of concurrent connections per route.  Matches the
+   * default size of the JDK keep-alive cache ({@code http.maxConnections}).
+   */
+  public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 5;
+
+  /** Default maximum time to wait for a connection to become available. */
+  public static final long DEFAULT_LEASE_TIMEOUT_MS = 60000L;
+
+  /** Default time after which an unused route is evicted. */
+  public static final long DEFAULT_IDLE_TIMEOUT_MS = 300000L;
+
+  /** Default maximum number of unread response bytes drained on release. */
+  public static final int DEFAULT_MAX_DRAIN_BYTES = 65536;
+
+  /**
+   * Statistics about the connections to a single route.  Instances are
+   * immutable snapshots.
+   */
+  public static class RouteStats {
+
+    private final int maxConnections;
+    private final int leased;
+    private final long opened;
+    private final long reusable;
+    private final long discarded;
+    private final long leaseTimeouts;
+
+    RouteStats(int maxConnections, int leased, long opened, long reusable,
+        long discarded, long leaseTimeouts) {
+      this.maxConnections = maxConnections;
+      this.leased = leased;
+      this.opened = opened;
+      this.reusable = reusable;
+      this.discarded = discarded;
+      this.leaseTimeouts = leaseTimeouts;
+    }
+
+    /** Returns the maximum number of concurrent connections to the route. */
+    public int getMaxConnections() {
+      return maxConnections;
+    }
+
+    /** Returns the number of connections currently in use. */
+    public int getLeased() {
+      return leased;
+    }
+
+    /** Returns the number of connections that may still be opened. */
+    public int getAvailable() {
+      return maxConnections - leased;
+    }
+
+    /** Returns the total number of connections opened to the route. */
+    public long getOpened() {
+      return opened;
+    }
+
+    /**
+     * Returns the number of connections that were released in a state that
+     * allows the underlying socket to be reused.
+     */
+    public long getReusable() {
+      return reusable;
+    }
+
+    /**
+     * Returns the number of connections whose underlying socket had to be
+     * closed on release.
+     */
+    public long getDiscarded() {
+      return discarded;
+    }
+
+    /**
+     * Returns the number of times a caller gave up waiting for a connection.
+     */
+    public long getLeaseTimeouts() {
+      return leaseTimeouts;
+    }
+
+    @Override
+    public String toString() {
+      return "[leased=" + leased + "/" + maxConnections + ", opened=" + opened
+          + ", reusable=" + reusable + ", discarded=" + discarded
+          + ", leaseTimeouts=" + leaseTimeouts + "]";
+    }
+  }
+
+  /**
+   * Connection state for a single route.
+   */
+  private static class Route {
+
+    final String key;
+    final Semaphore permits;
+    final AtomicLong opened = new AtomicLong();
+    final AtomicLong reusable = new AtomicLong();
+    final AtomicLong discarded = new AtomicLong();
+    final AtomicLong leaseTimeouts = new AtomicLong();
+
+    /**
+     * Number of callers holding or waiting for a permit.  Guarded by this,
+     * together with {@link #lastUsed} and {@link #evicted}.
+     */
+    private int users;
+    private long lastUsed = System.nanoTime();
+    private boolean evicted;
+
+    Route(String key, int maxConnections) {
+      this.key = key;
+      this.permits = new Semaphore(maxConnections, true);
+    }
+
+    /**
+     * Registers a caller about to acquire a permit.
+     *
+     * @return {@code false} if the route was evicted, in which case a new
+     *     route must be used
+     */
+    synchronized boolean use() {
+      if (evicted) {
+        return false;
+      }
+      users++;
+      lastUsed = System.nanoTime();
+      return true;
+    }
+
+    /**
+     * Unregisters a caller that released its permit or failed to acquire
+     * one.
+     */
+    synchronized void unuse() {
+      users--;
+      lastUsed = System.nanoTime();
+    }
+
+    /**
+     * Marks the route as evicted if nobody uses it and it has been idle for
+     * longer than the given time.
+     *
+     * @return {@code true} if the route was evicted
+     */
+    synchronized boolean evictIfIdle(long now, long idleNanos) {
+      if (users == 0 && now - lastUsed > idleNanos) {
+        evicted = true;
+      }
+      return evicted;
+    }
+  }
+
+  private final int maxConnectionsPerRoute;
+
+  private final ConcurrentMap<String, Route> routes =
+      new ConcurrentHashMap<String, Route>();
+
+  /** Connections that have been handed out and not yet released. */
+  private final ConcurrentMap<HttpURLConnection, Route> leased =
+      new ConcurrentHashMap<HttpURLConnection, Route>();
+
+  private volatile long leaseTimeoutMs = DEFAULT_LEASE_TIMEOUT_MS;
+  private volatile long idleTimeoutMs = DEFAULT_IDLE_TIMEOUT_MS;
+  private volatile int maxDrainBytes = DEFAULT_MAX_DRAIN_BYTES;
+
+  /**
+   * Creates a connection source allowing up to
+   * {@link #DEFAULT_MAX_CONNECTIONS_PER_ROUTE} concurrent connections to each
+   * route.
+   */
+  public PooledHttpUrlConnectionSource() {
+    this(DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+  }
+
+  /**
+   * Creates a connection source allowing up to {@code maxConnectionsPerRoute}
+   * concurrent connections to each route.
+   *
+   * @param maxConnectionsPerRoute maximum number of concurrent connections
+   * @throws IllegalArgumentException if the maximum is not positive
+   */
+  public PooledHttpUrlConnectionSource(int maxConnectionsPerRoute) {
+    if (maxConnectionsPerRoute <= 0) {
+      throw new IllegalArgumentException(
+          "maxConnectionsPerRoute must be positive");
+    }
+    this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+  }
+
+  /**
+   * Returns the maximum number of concurrent connections to each route.
+   */
+  public int getMaxConnectionsPerRoute() {
+    return maxConnectionsPerRoute;
+  }
+
+  /**
+   * Sets the maximum time {@link #openConnection(URL)} waits for a connection
+   * to the route to become available.
+   */
+  public void setLeaseTimeout(long timeout, TimeUnit unit) {
+    if (timeout < 0) {
+      throw new IllegalArgumentException("Timeout cannot be negative");
+    }
+    this.leaseTimeoutMs = unit.toMillis(timeout);
+  }
+
+  /**
+   * Sets the time after which a route without active connections is evicted.
+   */
+  public void setIdleTimeout(long timeout, TimeUnit unit) {
+    if (timeout < 0) {
+      throw new IllegalArgumentException("Timeout cannot be negative");
+    }
+    this.idleTimeoutMs = unit.toMillis(timeout);
+  }
+
+  /**
+   * Sets the maximum number of unread response bytes that are drained when a
+   * connection is released.  Responses with more unread data are discarded.
+   */
+  public void setMaxDrainBytes(int maxDrainBytes) {
+    if (maxDrainBytes < 0) {
+      throw new IllegalArgumentException("maxDrainBytes cannot be negative");
+    }
+    this.maxDrainBytes = maxDrainBytes;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Blocks until a connection to the route of {@code url} is available.
+   *
+   * @throws IOException if no connection became available within the lease
+   *     timeout or the thread was interrupted while waiting
+   */
+  public HttpURLConnection openConnection(URL url) throws IOException {
+    if (!url.getProtocol().startsWith("http")) {
+      throw new IllegalArgumentException("Not an HTTP url: " + url);
+    }
+    Route route = useRoute(url);
+    try {
+      if (!route.permits.tryAcquire(leaseTimeoutMs, TimeUnit.MILLISECONDS)) {
+        route.leaseTimeouts.incrementAndGet();
+        route.unuse();
+        throw new IOException("Timeout waiting for connection to "
+            + route.key);
+      }
+    } catch (InterruptedException e) {
+      route.unuse();
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted waiting for connection to "
+          + route.key);
+    }
+
+    boolean success = false;
+    try {
+      HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+      route.opened.incrementAndGet();
+      leased.put(connection, route);
+      success = true;
+      return connection;
+    } finally {
+      if (!success) {
+        route.permits.release();
+        route.unuse();
+      }
+    }
+  }
+
+  public void releaseConnection(HttpURLConnection connection,
+      boolean connected) {
+    Route route = leased.remove(connection);
+    if (route == null) {
+      return;
+    }
+    try {
+      if (!connected || drain(connection)) {
+        route.reusable.incrementAndGet();
+      } else {
+        connection.disconnect();
+        route.discarded.incrementAndGet();
+      }
+    } finally {
+      route.permits.release();
+      route.unuse();
+    }
+  }
+
+  /**
+   * Reads and closes any remaining response data so the JDK can return the
+   * underlying socket to its keep-alive cache.  Requests release their
+   * connection before closing the response stream, so that the unread data
+   * is still available.
+   *
+   * @return {@code true} if the response was fully consumed
+   */
+  private boolean drain(HttpURLConnection connection) {
+    InputStream in = null;
+    try {
+      if (connection.getResponseCode() >= 400) {
+        in = connection.getErrorStream();
+      } else {
+        in = connection.getInputStream();
+      }
+      if (in == null) {
+        return true;
+      }
+      byte[] buf = new byte[Math.min(4096, Math.max(1, maxDrainBytes))];
+      int remaining = maxDrainBytes;
+      int read;
+      while ((read = in.read(buf)) != -1) {
+        remaining -= read;
+        if (remaining < 0) {
+          return false;
+        }
+      }
+      in.close();
+      return true;
+    } catch (IOException e) {
+      // The response stream was closed by the caller, which lets the JDK
+      // decide whether the socket can be kept alive.
+      return true;
+    }
+  }
+
+  /**
+   * Returns the route of a URL, registering the caller as a user so the
+   * route cannot be evicted until {@link Route#unuse()} is called.
+   */
+  private Route useRoute(URL url) {
+    int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+    String key = url.getProtocol() + "://" + url.getHost() + ":" + port;
+    while (true) {
+      Route route = routes.get(key);
+      if (route == null) {
+        closeIdleRoutes();
+        Route newRoute = new Route(key, maxConnectionsPerRoute);
+        route = routes.putIfAbsent(key, newRoute);
+        if (route == null) {
+          route = newRoute;
+        }
+      }
+      if (route.use()) {
+        return route;
+      }
+      // Evicted after it was looked up; its removal may still be pending.
+      routes.remove(key, route);
+    }
+  }
+
+  /**
+   * Evicts the bookkeeping for routes that have no connections in use or
+   * being waited for, and have not been used for longer than the idle
+   * timeout.
+   */
+  public void closeIdleRoutes() {
+    long idleNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+    long now = System.nanoTime();
+    for (Route route : routes.values()) {
+      if (route.evictIfIdle(now, idleNanos)) {
+        routes.remove(route.key, route);
+        if (logger.isLoggable(Level.FINE)) {
+          logger.fine("Evicted idle route " + route.key);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the total number of connections currently in use.
+   */
+  public int getLeasedConnections() {
+    return leased.size();
+  }
+
+  /**
+   * Returns a snapshot of the statistics of each known route, keyed by
+   * {@code scheme://host:port}.
+   */
+  public Map<String, RouteStats> getRouteStats() {
+    Map<String, RouteStats> stats = new LinkedHashMap<String, RouteStats>();
+    for (Route route : routes.values()) {
+      stats.put(route.key, new RouteStats(maxConnectionsPerRoute,
+          maxConnectionsPerRoute - route.permits.availablePermits(),
+          route.opened.get(), route.reusable.get(), route.discarded.get(),
+          route.leaseTimeouts.get()));
+    }
+    return Collections.unmodifiableMap(stats);
+  }
+}
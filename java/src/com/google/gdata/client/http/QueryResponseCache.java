@@ -0,0 +1,461 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client.http;
+
+import com.google.common.collect.MapMaker;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A cache of query responses, used to turn repeated queries into conditional
+ * requests.  When a query is sent for a URL whose previous response carried
+ * an entity tag or a last modification date, the request is conditionalized
+ * on them; if the service answers that the resource has not been modified,
+ * the cached response body is returned to the caller as if it had been sent
+ * again, and is parsed as usual.
+ *
+ * <p>Cached responses are always revalidated with the service, so they are
+ * never served stale.  Queries that the caller already conditionalized with
+ * {@link com.google.gdata.client.Service.GDataRequest#setEtag} or
+ * {@link com.google.gdata.client.Service.GDataRequest#setIfModifiedSince}
+ * bypass the cache and still throw
+ * {@link com.google.gdata.util.NotModifiedException}.
+ *
+ * <p>Responses are keyed by URL and by the auth token of the request, so a
+ * response is never returned for another token, even for the same URL.
+ * Tokens are compared by identity, which means a new token object (after
+ * logging in again, for example) starts with an empty cache.
+ *
+ * <p>Bodies are held in memory, up to a maximum total size, and the least
+ * recently used ones are evicted first.  If a directory is given, evicted
+ * bodies are moved to files in it, up to a second maximum size, and moved
+ * back to memory when used.  As tokens are only known to the process, the
+ * files are only meaningful to the cache that wrote them: any cache files
+ * left in the directory are deleted when the cache is created.
+ *
+ * <p>A response is only stored once its body has been read to the end, and
+ * bodies larger than a quarter of the memory size are not stored.
+ *
+ * <p>Instances are thread-safe and can be shared by several request
+ * factories, using {@link HttpGDataRequest.Factory#setResponseCache}.
+ */
+public class QueryResponseCache {
+
+  private static final Logger logger =
+      Logger.getLogger(QueryResponseCache.class.getName());
+
+  /** Suffix of the files of the disk tier. */
+  private static final String FILE_SUFFIX = ".cache";
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  /**
+   * A cached response.  Instances are immutable.
+   */
+  static class CachedResponse {
+
+    final String etag;
+    final String lastModified;
+    final String contentType;
+    final byte[] body;
+
+    CachedResponse(String etag, String lastModified, String contentType,
+        byte[] body) {
+      this.etag = etag;
+      this.lastModified = lastModified;
+      this.contentType = contentType;
+      this.body = body;
+    }
+  }
+
+  private final long maxMemoryBytes;
+  private final File directory;
+  private final long maxDiskBytes;
+
+  /** Responses held in memory, least recently used first. */
+  private final LinkedHashMap<String, CachedResponse> memory =
+      new LinkedHashMap<String, CachedResponse>(16, 0.75f, true);
+  private long memoryBytes;
+
+  /** Sizes of the responses held on disk, least recently used first. */
+  private final LinkedHashMap<String, Long> disk =
+      new LinkedHashMap<String, Long>(16, 0.75f, true);
+  private long diskBytes;
+
+  /**
+   * Identifiers of the auth tokens seen by the cache.  Weak keys are
+   * compared by identity, unlike those of a {@link java.util.WeakHashMap}.
+   */
+  private final Map<Object, String> principals =
+      new MapMaker().weakKeys().makeMap();
+  private long nextPrincipal;
+
+  private long hits;
+  private long misses;
+
+  /**
+   * Creates a cache holding responses in memory only.
+   *
+   * @param maxMemoryBytes maximum total size of the cached bodies
+   */
+  public QueryResponseCache(long maxMemoryBytes) {
+    this(maxMemoryBytes, null, 0);
+  }
+
+  /**
+   * Creates a cache moving the responses evicted from memory to a directory.
+   *
+   * @param maxMemoryBytes maximum total size of the bodies held in memory
+   * @param directory directory holding the evicted responses, which is
+   *     created if necessary, or {@code null} to hold responses in memory
+   *     only
+   * @param maxDiskBytes maximum total size of the files in the directory
+   * @throws IllegalArgumentException if the directory cannot be created
+   */
+  public QueryResponseCache(long maxMemoryBytes, File directory,
+      long maxDiskBytes) {
+    if (maxMemoryBytes <= 0) {
+      throw new IllegalArgumentException("Cache size must be positive");
+    }
+    this.maxMemoryBytes = maxMemoryBytes;
+    this.directory = directory;
+    this.maxDiskBytes = maxDiskBytes;
+    if (directory != null) {
+      if (!directory.isDirectory() && !directory.mkdirs()) {
+        throw new IllegalArgumentException(
+            "Cannot create cache directory " + directory);
+      }
+      File[] files = directory.listFiles();
+      if (files != null) {
+        for (File file : files) {
+          if (file.getName().endsWith(FILE_SUFFIX)) {
+            file.delete();
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the number of queries answered from the cache.
+   */
+  public synchronized long getHitCount() {
+    return hits;
+  }
+
+  /**
+   * Returns the number of queries that had to download a response.
+   */
+  public synchronized long getMissCount() {
+    return misses;
+  }
+
+  /**
+   * Removes all the responses from the cache.
+   */
+  public synchronized void clear() {
+    memory.clear();
+    memoryBytes = 0;
+    for (String key : disk.keySet()) {
+      getFile(key).delete();
+    }
+    disk.clear();
+    diskBytes = 0;
+  }
+
+  /**
+   * Returns the key of the response to a query.
+   *
+   * @param url the URL of the query
+   * @param authToken the auth token of the query, or {@code null}
+   */
+  synchronized String getKey(String url, Object authToken) {
+    String principal = "";
+    if (authToken != null) {
+      principal = principals.get(authToken);
+      if (principal == null) {
+        principal = String.valueOf(++nextPrincipal);
+        principals.put(authToken, principal);
+      }
+    }
+    return principal + " " + url;
+  }
+
+  /**
+   * Returns the cached response for a key, or {@code null} if there is none.
+   */
+  synchronized CachedResponse get(String key) {
+    CachedResponse response = memory.get(key);
+    if (response == null && disk.containsKey(key)) {
+      response = readFile(key);
+      if (response != null) {
+        put(key, response);
+      }
+    }
+    return response;
+  }
+
+  /**
+   * Records whether a query was answered from the cache.
+   */
+  synchronized void recordQuery(boolean hit) {
+    if (hit) {
+      hits++;
+    } else {
+      misses++;
+    }
+  }
+
+  /**
+   * Returns a stream reading a response body and storing it in the cache
+   * once it has been read to the end.
+   *
+   * @param key key of the response
+   * @param etag entity tag of the response, or {@code null}
+   * @param lastModified last modification date of the response, or
+   *     {@code null}
+   * @param contentType content type of the response
+   * @param in stream reading the response body
+   */
+  InputStream store(final String key, final String etag,
+      final String lastModified, final String contentType, InputStream in) {
+    final long maxBodyBytes = maxMemoryBytes / 4;
+    return new FilterInputStream(in) {
+      private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+      @Override
+      public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+          record(b);
+        } else {
+          complete();
+        }
+        return b;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        int count = super.read(b, off, len);
+        if (count > 0) {
+          record(b, off, count);
+        } else if (count < 0) {
+          complete();
+        }
+        return count;
+      }
+
+      @Override
+      public long skip(long n) throws IOException {
+        // Skipped bytes are not recorded, so the body cannot be stored.
+        buffer = null;
+        return super.skip(n);
+      }
+
+      @Override
+      public boolean markSupported() {
+        return false;
+      }
+
+      private void record(int b) {
+        if (buffer != null) {
+          buffer.write(b);
+          checkSize();
+        }
+      }
+
+      private void record(byte[] b, int off, int len) {
+        if (buffer != null) {
+          buffer.write(b, off, len);
+          checkSize();
+        }
+      }
+
+      private void checkSize() {
+        if (buffer.size() > maxBodyBytes) {
+          buffer = null;
+        }
+      }
+
+      private void complete() {
+        if (buffer != null) {
+          synchronized (QueryResponseCache.this) {
+            put(key, new CachedResponse(etag, lastModified, contentType,
+                buffer.toByteArray()));
+          }
+          buffer = null;
+        }
+      }
+    };
+  }
+
+  /**
+   * Removes the response for a key, if any.
+   */
+  synchronized void remove(String key) {
+    CachedResponse response = memory.remove(key);
+    if (response != null) {
+      memoryBytes -= response.body.length;
+    }
+    removeFile(key);
+  }
+
+  /**
+   * Adds a response to memory, evicting the least recently used ones if
+   * needed.  Must be called with the lock held.
+   */
+  private void put(String key, CachedResponse response) {
+    CachedResponse previous = memory.put(key, response);
+    if (previous != null) {
+      memoryBytes -= previous.body.length;
+    }
+    memoryBytes += response.body.length;
+    removeFile(key);
+
+    Iterator<Map.Entry<String, CachedResponse>> it =
+        memory.entrySet().iterator();
+    while (memoryBytes > maxMemoryBytes && it.hasNext()) {
+      Map.Entry<String, CachedResponse> eldest = it.next();
+      it.remove();
+      memoryBytes -= eldest.getValue().body.length;
+      if (directory != null) {
+        writeFile(eldest.getKey(), eldest.getValue());
+      }
+    }
+  }
+
+  /**
+   * Moves a response evicted from memory to the disk tier, evicting the least
+   * recently used files if needed.  Must be called with the lock held.
+   */
+  private void writeFile(String key, CachedResponse response) {
+    File file = getFile(key);
+    try {
+      DataOutputStream out =
+          new DataOutputStream(new FileOutputStream(file));
+      try {
+        out.writeUTF(key);
+        writeString(out, response.etag);
+        writeString(out, response.lastModified);
+        writeString(out, response.contentType);
+        out.writeInt(response.body.length);
+        out.write(response.body);
+      } finally {
+        out.close();
+      }
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Cannot write cache file " + file, e);
+      file.delete();
+      return;
+    }
+
+    long size = file.length();
+    disk.put(key, size);
+    diskBytes += size;
+    Iterator<Map.Entry<String, Long>> it = disk.entrySet().iterator();
+    while (diskBytes > maxDiskBytes && it.hasNext()) {
+      Map.Entry<String, Long> eldest = it.next();
+      it.remove();
+      diskBytes -= eldest.getValue();
+      getFile(eldest.getKey()).delete();
+    }
+  }
+
+  /**
+   * Reads a response from the disk tier, removing it from the tier, or
+   * returns {@code null} if it cannot be read.  Must be called with the lock
+   * held.
+   */
+  private CachedResponse readFile(String key) {
+    File file = getFile(key);
+    CachedResponse response = null;
+    try {
+      DataInputStream in = new DataInputStream(new FileInputStream(file));
+      try {
+        // The key is checked in case another key has the same digest.
+        if (key.equals(in.readUTF())) {
+          String etag = readString(in);
+          String lastModified = readString(in);
+          String contentType = readString(in);
+          byte[] body = new byte[in.readInt()];
+          in.readFully(body);
+          response = new CachedResponse(etag, lastModified, contentType, body);
+        }
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Cannot read cache file " + file, e);
+    }
+    removeFile(key);
+    return response;
+  }
+
+  private void removeFile(String key) {
+    Long size = disk.remove(key);
+    if (size != null) {
+      diskBytes -= size;
+      getFile(key).delete();
+    }
+  }
+
+  private File getFile(String key) {
+    byte[] digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1").digest(
+          key.getBytes("UTF-8"));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+    char[] name = new char[digest.length * 2];
+    for (int i = 0; i < digest.length; i++) {
+      name[i * 2] = HEX[(digest[i] >> 4) & 0xf];
+      name[i * 2 + 1] = HEX[digest[i] & 0xf];
+    }
+    return new File(directory, new String(name) + FILE_SUFFIX);
+  }
+
+  private static void writeString(DataOutputStream out, String s)
+      throws IOException {
+    out.writeBoolean(s != null);
+    if (s != null) {
+      out.writeUTF(s);
+    }
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+}
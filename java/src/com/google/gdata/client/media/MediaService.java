@@ -312,7 +312,7 @@ public class MediaService extends GoogleService {
     if (chunkedBufferSize != NO_CHUNKED_MEDIA_REQUEST
         && request instanceof HttpGDataRequest) {
       HttpGDataRequest httpRequest = (HttpGDataRequest) request;
-      httpRequest.getConnection().setChunkedStreamingMode(chunkedBufferSize);
+      httpRequest.setChunkedStreamingMode(chunkedBufferSize);
     }
   }
 
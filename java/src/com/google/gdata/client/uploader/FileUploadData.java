@@ -16,19 +16,30 @@
 
 package com.google.gdata.client.uploader;
 
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
  * An implementation of {@link UploadData} that provides data from a {@code File}.
- * 
+ * <p>
+ * The file is read through a {@link FileChannel} with positional reads
+ * straight into the caller's buffer, so changing the position does not reopen
+ * or skip through the file, and no memory outside of the caller's buffers is
+ * held.
+ *
  * 
  */
-public class FileUploadData implements UploadData {
+public class FileUploadData implements UploadData, Closeable {
 
   private final File file;
-  private FileInputStream stream;
+  private final FileChannel channel;
+
+  /** Offset in the file from which the next read begins. */
+  private long position;
 
   public FileUploadData(File file) throws IOException {
     if (file == null) {
@@ -38,8 +49,7 @@ public class FileUploadData implements UploadData {
     if (!file.exists() || !file.canRead()) {
       throw new IOException();
     }
-    stream = new FileInputStream(file);
-    
+    channel = new RandomAccessFile(file, "r").getChannel();
   }
 
   public long length() {
@@ -47,17 +57,31 @@ public class FileUploadData implements UploadData {
   }
   
   public void read(byte[] destination) throws IOException {
-    stream.read(destination);
+    read(destination, 0, destination.length);
   }
   
-  public void setPosition(long position) throws IOException {
-    stream = new FileInputStream(file);
-    stream.skip(position);
+  public synchronized void setPosition(long position) throws IOException {
+    if (position < 0 || position > channel.size()) {
+      throw new IOException("Invalid position: " + position);
+    }
+    this.position = position;
   }
   
-  public int read(byte[] chunk, int i, int length) throws IOException {
-    return stream.read(chunk, i, length);
-  }    
+  public synchronized int read(byte[] chunk, int i, int length)
+      throws IOException {
+    int numRead = channel.read(ByteBuffer.wrap(chunk, i, length), position);
+    if (numRead > 0) {
+      position += numRead;
+    }
+    return numRead;
+  }
+
+  /**
+   * Closes the file.
+   */
+  public synchronized void close() throws IOException {
+    channel.close();
+  }
 
   /**
    * Gets the filename.
@@ -145,6 +145,17 @@ public class ResumableHttpFileUploader {
    */
   public static long DEFAULT_MAX_CHUNK_SIZE = 10485760L;
 
+  /**
+   * Granularity of adaptively sized chunks (256 KB).  Every chunk but the
+   * last one is a multiple of this size.
+   */
+  public static final long CHUNK_SIZE_GRANULARITY = 262144L;
+
+  /**
+   * Number of milliseconds adaptively sized chunks should take to upload.
+   */
+  public static final long ADAPTIVE_CHUNK_MILLIS = 5000L;
+
   /**
    * Default number of milliseconds for the progress notification interval.
    */
@@ -248,6 +259,12 @@ public class ResumableHttpFileUploader {
    */
   private final long chunkSize;
 
+  /**
+   * Maximum size of adaptively sized chunks, or <code>0</code> if chunks are
+   * not adaptively sized.
+   */
+  private final long maxChunkSize;
+
   /**
    * Back off policy which determines the amount of time to wait before retrying
    * an HTTP request.
@@ -265,6 +282,7 @@ public class ResumableHttpFileUploader {
         UrlConnectionFactory.DEFAULT;
     private ProgressListener progressListener;
     private long chunkSize = DEFAULT_MAX_CHUNK_SIZE;
+    private long maxChunkSize = 0L;
     private long progressIntervalMillis = DEFAULT_PROGRESS_INTERVAL_MS;
     private RequestMethod requestMethod = RequestMethod.PUT;
     private BackoffPolicy backoffPolicy = BackoffPolicy.DEFAULT;
@@ -339,6 +357,23 @@ public class ResumableHttpFileUploader {
       return this;
     }
 
+    /**
+     * Enables adaptive chunk sizing.  The first chunk has the size set by
+     * {@link #setChunkSize(long)}, and the size of the following chunks is
+     * adapted to the measured upload throughput, so that each HTTP request
+     * takes about {@link ResumableHttpFileUploader#ADAPTIVE_CHUNK_MILLIS}.
+     * Adapted sizes are multiples of
+     * {@link ResumableHttpFileUploader#CHUNK_SIZE_GRANULARITY}.
+     *
+     * @param maxChunkSize maximum size of the chunks, or <code>0</code> to
+     *     upload chunks of a fixed size
+     * @return this
+     */
+    public Builder setMaxChunkSize(long maxChunkSize) {
+      this.maxChunkSize = maxChunkSize;
+      return this;
+    }
+
     /**
      * @param progressIntervalMillis number of milliseconds between
      *     progress listener notifications
@@ -450,6 +485,7 @@ public class ResumableHttpFileUploader {
     progressListener = builder.progressListener;
     progressIntervalMillis = Math.max(0, builder.progressIntervalMillis);
     chunkSize = builder.chunkSize;
+    maxChunkSize = builder.maxChunkSize;
     httpRequestMethod = builder.requestMethod;
     backoffPolicy =  builder.backoffPolicy;
 
@@ -678,6 +714,16 @@ public class ResumableHttpFileUploader {
     return chunkSize;
   }
 
+  /**
+   * Gets the maximum size of adaptively sized chunks.
+   *
+   * @return maximum chunk size, or <code>0</code> if chunks are not
+   *     adaptively sized
+   */
+  long getMaxChunkSize() {
+    return maxChunkSize;
+  }
+
   /**
    * Sends a progress notification to the progress listener if one has been
    * specified.
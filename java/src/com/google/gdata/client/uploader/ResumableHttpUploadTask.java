@@ -20,6 +20,7 @@ import com.google.gdata.client.uploader.ResumableHttpFileUploader.ResponseMessag
 import com.google.gdata.client.uploader.ResumableHttpFileUploader.UploadState;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
@@ -53,6 +54,12 @@ class ResumableHttpUploadTask implements Callable<ResponseMessage> {
    */
   private final UrlConnectionFactory urlConnectionFactory;
 
+  /**
+   * Reads the data to upload ahead of the requests, while the task is busy
+   * writing to or waiting on the server.
+   */
+  private UploadDataPrefetcher prefetcher;
+
   /**
    * Content length header name.
    */
@@ -189,20 +196,44 @@ class ResumableHttpUploadTask implements Callable<ResponseMessage> {
    * @throws IOException if no connection can be made to the server
    */
   private ResponseMessage upload() throws IOException {
+    prefetcher = new UploadDataPrefetcher(uploader.getData());
+    try {
+      return uploadChunks();
+    } finally {
+      prefetcher.close();
+    }
+  }
+
+  /**
+   * Uploads the data one chunk per request, until the upload is complete,
+   * paused or fails.
+   *
+   * @return the response to the last chunk, or <code>null</code> if the
+   *     upload did not complete
+   * @throws IOException if no connection can be made to the server
+   */
+  private ResponseMessage uploadChunks() throws IOException {
     long start = resume ? getNextStartByteFromServer() : 0L;
+    long chunkSize = uploader.getChunkSize();
 
     while (uploader.getUploadState().equals(UploadState.IN_PROGRESS)) {
 
       // Compute the length to upload.
       long length = Math.min(
-          (uploader.getData().length() - start), uploader.getChunkSize());
+          (uploader.getData().length() - start), chunkSize);
+      long requestStartMs = System.currentTimeMillis();
 
-      // Establish a writable connection at the request URL.
+      // Establish a writable connection at the request URL.  The slice is
+      // streamed to the server as it is written rather than being buffered
+      // in memory by the connection.
       HttpURLConnection connection =
           urlConnectionFactory.create(uploader.getUrl());
       connection.setDoOutput(true);
       connection.setDoInput(true);
       connection.setRequestMethod(uploader.getHttpRequestMethod().toString());
+      if (length <= Integer.MAX_VALUE) {
+        connection.setFixedLengthStreamingMode((int) length);
+      }
       setHeaders(connection, start, length);
       OutputStream out = connection.getOutputStream();
 
@@ -210,12 +241,28 @@ class ResumableHttpUploadTask implements Callable<ResponseMessage> {
 
         // Write the contents of the file (slice) to the output stream and
         // close the stream when completed.
-        writeSlice(start, length, out);
-        out.close();
+        if (!writeSlice(start, length, out)) {
+
+          // The slice was not fully written, abandon the request.  Resuming
+          // asks the server where to continue from.  A slice that was fully
+          // written is still completed below, even if the upload was paused
+          // meanwhile, so that it is not sent again.
+          connection.disconnect();
+          break;
+        }
+        int responseCode;
+        try {
+          out.close();
+          responseCode = connection.getResponseCode();
+        } catch (IOException e) {
+
+          // The connection was broken while completing the request.
+          throw new ServerException();
+        }
 
         // Check for 308 and 503, and handle accordingly, otherwise return
         // the response stream.
-        switch (connection.getResponseCode()) {
+        switch (responseCode) {
           case 308:
 
             // Incomplete, set the byte range to the next chunk of bytes.
@@ -225,6 +272,8 @@ class ResumableHttpUploadTask implements Callable<ResponseMessage> {
             } else {
               start = start + length;
             }
+            chunkSize = getNextChunkSize(chunkSize, length,
+                System.currentTimeMillis() - requestStartMs);
 
             // Check for a new location.
             String location = connection.getHeaderField("Location");
@@ -242,20 +291,7 @@ class ResumableHttpUploadTask implements Callable<ResponseMessage> {
 
               // Correct the number of total uploaded bytes.
               uploader.addNumBytesUploaded(-length);
-
-              // Backoff before making another request (pausing the upload
-              // if the backoff has terminated).
-              try {
-                long backoffMs = uploader.getBackoffPolicy().getNextBackoffMs();
-                if (backoffMs == BackoffPolicy.STOP) {
-                  uploader.pause();
-                } else {
-                  Thread.sleep(backoffMs);
-                }
-              } catch (InterruptedException e) {
-
-                // Ignore.
-              }
+              backOff();
             }
             break;
           default:
@@ -270,9 +306,11 @@ class ResumableHttpUploadTask implements Callable<ResponseMessage> {
         }
       } catch (ServerException e) {
 
-        // If the connection was broken, try again.
+        // If the connection was broken, try again from where the server
+        // stopped receiving data.
         if (!uploader.isPaused()) {
           start = getNextStartByteFromServer();
+          backOff();
         }
       } catch (IOException e) {
 
@@ -285,77 +323,109 @@ class ResumableHttpUploadTask implements Callable<ResponseMessage> {
     return null;
   }
 
+  /**
+   * Backs off before making another request, pausing the upload if the
+   * backoff policy has terminated.
+   */
+  private void backOff() {
+    try {
+      long backoffMs = uploader.getBackoffPolicy().getNextBackoffMs();
+      if (backoffMs == BackoffPolicy.STOP) {
+        uploader.pause();
+      } else {
+        Thread.sleep(backoffMs);
+      }
+    } catch (InterruptedException e) {
+
+      // Ignore.
+    }
+  }
+
+  /**
+   * Returns the size of the next chunk to upload.  If the uploader has a
+   * maximum chunk size, the size is adapted to the throughput measured for the
+   * last chunk, so that each request takes about
+   * {@link ResumableHttpFileUploader#ADAPTIVE_CHUNK_MILLIS}: a fast link gets
+   * fewer, larger requests, while a slow one loses less on a failed request.
+   *
+   * @param chunkSize size of the last chunk
+   * @param length number of bytes sent in the last request
+   * @param elapsedMs time taken by the last request
+   * @return the size of the next chunk
+   */
+  private long getNextChunkSize(long chunkSize, long length, long elapsedMs) {
+    long maxChunkSize = uploader.getMaxChunkSize();
+    if (maxChunkSize <= 0 || length < chunkSize) {
+      return chunkSize;
+    }
+    long granularity = ResumableHttpFileUploader.CHUNK_SIZE_GRANULARITY;
+    long targetSize = (elapsedMs <= 0) ? maxChunkSize
+        : length * ResumableHttpFileUploader.ADAPTIVE_CHUNK_MILLIS / elapsedMs;
+
+    // Change by at most a factor of 2 per request, to smooth out noise.
+    targetSize = Math.max(chunkSize / 2, Math.min(chunkSize * 2, targetSize));
+    targetSize = Math.max(granularity, Math.min(maxChunkSize, targetSize));
+    return Math.max(granularity, targetSize - targetSize % granularity);
+  }
+
   /**
    * Writes the contents of <code>file</code> specified by the byte range
    * beginning at <code>start</code> and ending at
-   * <code>start + length - 1</code> inclusive.  Chunks of 64 KB are written
-   * to the output stream successively, checking before each write to see
-   * if the uploader has been paused, until <code>length</code> bytes have
-   * been written to <code>out</code>.
+   * <code>start + length - 1</code> inclusive.  Buffers read ahead by the
+   * prefetcher are written to the output stream successively, checking before
+   * each write to see if the uploader has been paused, until
+   * <code>length</code> bytes have been written to <code>out</code>.
    *
    * @param start byte index from which to begin sending data
    * @param length of the byte range to send in the request
    * @param out stream to write the request to
+   * @return <code>true</code> if the whole byte range was written,
+   *     <code>false</code> if the upload was paused or the data ended early
    * @throws IOException if the contents of <code>file</code> cannot be read
    *     or written properly
    * @throws ServerException if the connection to the server is broken
    */
-  void writeSlice(long start, long length, OutputStream out)
+  boolean writeSlice(long start, long length, OutputStream out)
       throws IOException, ServerException {
 
-    // The number of bytes read from the file to be uploaded.
-    int numRead = 0;
-
     // The number of expected remaining bytes to read/write. This number could
     // actually differ from the number of bytes available in the file. When
     // there is a difference, an InvalidStateException will be thrown.
     long numRemaining = length;
+    long position = start;
 
-    // Buffer to read bytes from the file into (64 KB).
-    byte[] chunk = new byte[65536];
-
-    // Input stream to the file to upload (starting at <code>start</code>).
-    UploadData uploadData = uploader.getData();
-    uploadData.setPosition(start);
-
-    synchronized (uploadData) {
-      while (!uploader.isPaused()) {
+    while (!uploader.isPaused() && numRemaining > 0) {
 
-        // Buffer some bytes from the file.
-        if (numRemaining < chunk.length) {
-          numRead = uploadData.read(chunk, 0, (int) numRemaining);
-        } else {
-          numRead = uploadData.read(chunk, 0, chunk.length);
-        }
-
-        try {
-          // Break out of the loop if the end of the file has been reached.
-          if (numRead < 0) {
-
-            // If we expected to read more bytes from the file, but the end of
-            // the file has been reached, fail the upload.
-            if (numRemaining > 0) {
-              out.flush();
-              uploader.setUploadState(UploadState.CLIENT_ERROR);
-            }
-            break;
-          }
+      // Get the next bytes of the file, read ahead by the prefetcher.
+      UploadDataPrefetcher.Buffer buffer;
+      try {
+        buffer = prefetcher.next(position);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      }
 
-          // Write a chunk of bytes to the output stream.
-          out.write(chunk, 0, numRead);
-          out.flush();
-          numRemaining -= numRead;
-          uploader.addNumBytesUploaded(numRead);
+      // If we expected to read more bytes from the file, but the end of
+      // the file has been reached, fail the upload.
+      if (buffer.isEndOfData()) {
+        uploader.setUploadState(UploadState.CLIENT_ERROR);
+        break;
+      }
 
-          // Break out of the loop if the end of the slice has been reached.
-          if (numRemaining == 0) {
-            break;
-          }
-        } catch (IOException e) {
-          throw new ServerException();
-        }
+      int numRead = (int) Math.min(buffer.remaining(), numRemaining);
+      try {
+        // Write a chunk of bytes to the output stream.
+        out.write(buffer.bytes, buffer.offset, numRead);
+        out.flush();
+      } catch (IOException e) {
+        throw new ServerException();
       }
+      prefetcher.consume(buffer, numRead);
+      position += numRead;
+      numRemaining -= numRead;
+      uploader.addNumBytesUploaded(numRead);
     }
+    return numRemaining == 0;
   }
 
   /**
@@ -0,0 +1,285 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client.uploader;
+
+import java.io.IOException;
+import java.util.LinkedList;
+
+/**
+ * Reads {@link UploadData} ahead of the upload on a background thread, so the
+ * next bytes to send are already in memory while the current ones are being
+ * written to the network or while the server is acknowledging a chunk.
+ * <p>
+ * Data is read sequentially into a fixed number of buffers, which bounds the
+ * amount of memory used and how far the reader can run ahead.  Reading from a
+ * position other than the one following the last bytes read discards the
+ * buffered data and restarts reading from that position.
+ * <p>
+ * A prefetcher is used by a single upload task at a time.  It must be closed
+ * once the upload has finished, to stop the background thread.
+ */
+class UploadDataPrefetcher implements Runnable {
+
+  /**
+   * A buffer of data read from a given position.  Bytes are consumed from
+   * {@link #offset} to {@link #limit}.
+   */
+  static class Buffer {
+    final byte[] bytes;
+    long position;
+    int offset;
+    int limit;
+    IOException error;
+
+    Buffer(byte[] bytes) {
+      this.bytes = bytes;
+    }
+
+    /** Returns the number of bytes not yet consumed. */
+    int remaining() {
+      return limit - offset;
+    }
+
+    /** Returns {@code true} if the end of the data was reached early. */
+    boolean isEndOfData() {
+      return limit < 0;
+    }
+  }
+
+  /**
+   * Default size of each buffer (256 KB).
+   */
+  static final int DEFAULT_BUFFER_SIZE = 262144;
+
+  /**
+   * Default number of buffers, which is also how far the prefetcher may read
+   * ahead of the upload (1 MB with the default buffer size).
+   */
+  static final int DEFAULT_BUFFER_COUNT = 4;
+
+  /**
+   * Time to wait before reading again when no data was available (ms).
+   */
+  static final long EMPTY_READ_DELAY_MS = 50;
+
+  private final UploadData data;
+  private final long dataLength;
+
+  /** Buffers holding data read ahead, in position order. */
+  private final LinkedList<Buffer> filled = new LinkedList<Buffer>();
+
+  /** Buffers available for reading. */
+  private final LinkedList<Buffer> free = new LinkedList<Buffer>();
+
+  /** Position at which the background thread reads next. */
+  private long readPosition;
+
+  /** Position at which the upload consumes data next. */
+  private long consumePosition;
+
+  /** Position of the underlying data, or -1 if unknown. */
+  private long dataPosition = -1;
+
+  private Thread thread;
+  private boolean closed;
+
+  /**
+   * Constructs a prefetcher with the default buffer size and count.
+   *
+   * @param data data to read
+   */
+  UploadDataPrefetcher(UploadData data) {
+    this(data, DEFAULT_BUFFER_SIZE, DEFAULT_BUFFER_COUNT);
+  }
+
+  /**
+   * Constructs a prefetcher.
+   *
+   * @param data data to read
+   * @param bufferSize size of each buffer
+   * @param bufferCount number of buffers
+   */
+  UploadDataPrefetcher(UploadData data, int bufferSize, int bufferCount) {
+    this.data = data;
+    this.dataLength = data.length();
+    for (int i = 0; i < bufferCount; i++) {
+      free.add(new Buffer(new byte[bufferSize]));
+    }
+  }
+
+  /**
+   * Returns a buffer holding the data at {@code position}, waiting for it to
+   * be read if necessary.  Once the bytes have been used, the buffer must be
+   * passed to {@link #consume(Buffer, int)}.
+   *
+   * @param position position of the data to return
+   * @return a buffer whose first remaining byte is at {@code position}, whose
+   *     {@link Buffer#isEndOfData()} is {@code true} if the data ended before
+   *     {@code position}
+   * @throws IOException if the data could not be read
+   * @throws InterruptedException if interrupted while waiting for the data
+   */
+  synchronized Buffer next(long position)
+      throws IOException, InterruptedException {
+    if (closed) {
+      throw new IOException("Prefetcher is closed");
+    }
+    if (position != consumePosition || thread == null) {
+      free.addAll(filled);
+      filled.clear();
+      readPosition = position;
+      consumePosition = position;
+      notifyAll();
+    }
+    if (position >= dataLength) {
+      Buffer end = new Buffer(new byte[0]);
+      end.position = position;
+      end.limit = -1;
+      return end;
+    }
+    if (thread == null) {
+      thread = new Thread(this, "UploadDataPrefetcher");
+      thread.setDaemon(true);
+      thread.start();
+    }
+    while (filled.isEmpty()) {
+      wait();
+    }
+
+    Buffer buffer = filled.getFirst();
+    if (buffer.error != null) {
+      IOException e = buffer.error;
+      recycle(filled.removeFirst());
+      readPosition = consumePosition;
+      throw e;
+    }
+    return buffer;
+  }
+
+  /**
+   * Marks {@code count} bytes of a buffer returned by {@link #next(long)} as
+   * consumed.  Once all of its bytes are consumed, the buffer is reused to
+   * read further data.
+   */
+  synchronized void consume(Buffer buffer, int count) {
+    buffer.offset += count;
+    buffer.position += count;
+    consumePosition += count;
+    if (buffer.remaining() <= 0 && !filled.isEmpty()
+        && filled.getFirst() == buffer) {
+      recycle(filled.removeFirst());
+    }
+  }
+
+  /**
+   * Stops the background thread and releases the buffers.
+   */
+  synchronized void close() {
+    closed = true;
+    filled.clear();
+    free.clear();
+    notifyAll();
+  }
+
+  public void run() {
+    while (true) {
+      Buffer buffer;
+      long position;
+      synchronized (this) {
+        while (!closed && (free.isEmpty() || readPosition >= dataLength)) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+        if (closed) {
+          return;
+        }
+        buffer = free.removeFirst();
+        position = readPosition;
+      }
+
+      buffer.position = position;
+      buffer.offset = 0;
+      buffer.error = null;
+      try {
+        buffer.limit = read(position, buffer.bytes,
+            (int) Math.min(buffer.bytes.length, dataLength - position));
+      } catch (IOException e) {
+        buffer.limit = -1;
+        buffer.error = e;
+      }
+
+      synchronized (this) {
+        if (closed) {
+          return;
+        }
+        if (position != readPosition) {
+          // The upload moved to another position while the data was read.
+          free.add(buffer);
+          continue;
+        }
+        if (buffer.limit == 0) {
+          // No data was available yet.  Wait before reading again, unless the
+          // upload moves to another position or the prefetcher is closed.
+          free.add(buffer);
+          try {
+            wait(EMPTY_READ_DELAY_MS);
+          } catch (InterruptedException e) {
+            return;
+          }
+          continue;
+        }
+        filled.add(buffer);
+        readPosition = (buffer.limit > 0 && buffer.error == null)
+            ? position + buffer.limit : dataLength;
+        notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Reads up to {@code length} bytes of data from {@code position}.  The
+   * position of the underlying data is only changed if the previous read did
+   * not end at {@code position}.
+   *
+   * @return the number of bytes read, or -1 if the end of the data was
+   *     reached
+   */
+  private int read(long position, byte[] bytes, int length)
+      throws IOException {
+    synchronized (data) {
+      if (position != dataPosition) {
+        dataPosition = -1;
+        data.setPosition(position);
+        dataPosition = position;
+      }
+      int numRead = data.read(bytes, 0, length);
+      if (numRead > 0) {
+        dataPosition += numRead;
+      }
+      return numRead;
+    }
+  }
+
+  /** Makes a buffer available for reading. */
+  private void recycle(Buffer buffer) {
+    free.add(buffer);
+    notifyAll();
+  }
+}
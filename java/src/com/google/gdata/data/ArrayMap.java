@@ -0,0 +1,271 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.data;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A map storing its keys and values in arrays, in insertion order.  Lookups
+ * scan the keys, so it is meant for the few entries an extension point
+ * usually holds, where it takes a fraction of the memory of a
+ * {@link java.util.LinkedHashMap} and is as fast.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+final class ArrayMap<K, V> extends AbstractMap<K, V> {
+
+  private static final int INITIAL_CAPACITY = 4;
+
+  private Object[] keys = new Object[INITIAL_CAPACITY];
+  private Object[] values = new Object[INITIAL_CAPACITY];
+  private int size;
+
+  /** Number of structural modifications, to detect concurrent changes. */
+  private int modCount;
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return indexOf(key) >= 0;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V get(Object key) {
+    int index = indexOf(key);
+    return index >= 0 ? (V) values[index] : null;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V put(K key, V value) {
+    int index = indexOf(key);
+    if (index >= 0) {
+      V previous = (V) values[index];
+      values[index] = value;
+      return previous;
+    }
+    if (size == keys.length) {
+      Object[] newKeys = new Object[size * 2];
+      Object[] newValues = new Object[size * 2];
+      System.arraycopy(keys, 0, newKeys, 0, size);
+      System.arraycopy(values, 0, newValues, 0, size);
+      keys = newKeys;
+      values = newValues;
+    }
+    keys[size] = key;
+    values[size] = value;
+    size++;
+    modCount++;
+    return null;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V remove(Object key) {
+    int index = indexOf(key);
+    if (index < 0) {
+      return null;
+    }
+    V previous = (V) values[index];
+    removeAt(index);
+    return previous;
+  }
+
+  @Override
+  public void clear() {
+    for (int i = 0; i < size; i++) {
+      keys[i] = null;
+      values[i] = null;
+    }
+    size = 0;
+    modCount++;
+  }
+
+  @Override
+  public Set<Map.Entry<K, V>> entrySet() {
+    return new AbstractSet<Map.Entry<K, V>>() {
+      @Override
+      public Iterator<Map.Entry<K, V>> iterator() {
+        return new ArrayIterator<Map.Entry<K, V>>() {
+          @Override
+          Map.Entry<K, V> get(int index) {
+            return new ArrayEntry(index);
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  /**
+   * Returns a view of the values.  Unlike the view of
+   * {@link AbstractMap#values()}, it does not create an entry for each value
+   * and is not retained by the map.
+   */
+  @Override
+  public Collection<V> values() {
+    return new AbstractCollection<V>() {
+      @Override
+      public Iterator<V> iterator() {
+        return new ArrayIterator<V>() {
+          @Override
+          @SuppressWarnings("unchecked")
+          V get(int index) {
+            return (V) values[index];
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  private int indexOf(Object key) {
+    for (int i = 0; i < size; i++) {
+      Object k = keys[i];
+      if (k == key || (key != null && key.equals(k))) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private void removeAt(int index) {
+    int moved = size - index - 1;
+    if (moved > 0) {
+      System.arraycopy(keys, index + 1, keys, index, moved);
+      System.arraycopy(values, index + 1, values, index, moved);
+    }
+    size--;
+    keys[size] = null;
+    values[size] = null;
+    modCount++;
+  }
+
+  /** Iterator over the entries, in insertion order. */
+  private abstract class ArrayIterator<T> implements Iterator<T> {
+
+    private int next;
+    private int last = -1;
+    private int expectedModCount = modCount;
+
+    /** Returns the element for the entry at a given index. */
+    abstract T get(int index);
+
+    public boolean hasNext() {
+      return next < size;
+    }
+
+    public T next() {
+      if (modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+      if (next >= size) {
+        throw new NoSuchElementException();
+      }
+      last = next++;
+      return get(last);
+    }
+
+    public void remove() {
+      if (last < 0) {
+        throw new IllegalStateException();
+      }
+      if (modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+      removeAt(last);
+      next = last;
+      last = -1;
+      expectedModCount = modCount;
+    }
+  }
+
+  /** Entry backed by the arrays. */
+  private class ArrayEntry implements Map.Entry<K, V> {
+
+    private final int index;
+
+    ArrayEntry(int index) {
+      this.index = index;
+    }
+
+    @SuppressWarnings("unchecked")
+    public K getKey() {
+      return (K) keys[index];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V getValue() {
+      return (V) values[index];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V setValue(V value) {
+      V previous = (V) values[index];
+      values[index] = value;
+      return previous;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Map.Entry<?, ?>)) {
+        return false;
+      }
+      Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+      return eq(getKey(), e.getKey()) && eq(getValue(), e.getValue());
+    }
+
+    @Override
+    public int hashCode() {
+      K key = getKey();
+      V value = getValue();
+      return (key == null ? 0 : key.hashCode())
+          ^ (value == null ? 0 : value.hashCode());
+    }
+
+    @Override
+    public String toString() {
+      return getKey() + "=" + getValue();
+    }
+  }
+
+  private static boolean eq(Object a, Object b) {
+    return a == null ? b == null : a.equals(b);
+  }
+}
@@ -18,7 +18,6 @@ package com.google.gdata.data;
 
 import com.google.gdata.util.ParseException;
 
-import java.math.BigDecimal;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
@@ -155,79 +154,93 @@ public class DateTime implements Comparable<Object> {
                     "([Zz]|((\\+|\\-)(\\d\\d):(\\d\\d)))?");
 
 
-  /** RFC 822 date/time format. */
-  private static final SimpleDateFormat dateTimeFormat822 =
-    new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss Z", Locale.ENGLISH);
+  /** RFC 822 date/time format pattern. */
+  private static final String RFC822_FORMAT = "EEE, dd MMM yyyy HH:mm:ss Z";
+
+  /**
+   * RFC 822 date/time format of each thread, used for the values the
+   * hand-written codec below does not handle.
+   */
+  private static final ThreadLocal<SimpleDateFormat> dateTimeFormat822 =
+      new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+          SimpleDateFormat format =
+              new SimpleDateFormat(RFC822_FORMAT, Locale.ENGLISH);
+          format.setTimeZone(GMT);
+          return format;
+        }
+      };
 
   private static final TimeZone GMT = TimeZone.getTimeZone("GMT");
 
-  static {
-    dateTimeFormat822.setTimeZone(GMT);
-  }
+  private static final long MILLIS_PER_MINUTE = 60000L;
+  private static final long MILLIS_PER_DAY = 86400000L;
+
+  /**
+   * Local time range formatted and parsed without a {@link Calendar}: from
+   * the start of 1583, the first full year of the Gregorian calendar, to the
+   * end of 9999, the last year with four digits.  {@link GregorianCalendar}
+   * switches to the Julian calendar before 1582-10-15, so values outside the
+   * range go through a calendar to keep their historical representation.
+   */
+  private static final int MIN_FAST_YEAR = 1583;
+  private static final int MAX_FAST_YEAR = 9999;
+  private static final long MIN_FAST_TIME =
+      daysFromCivil(MIN_FAST_YEAR, 1, 1) * MILLIS_PER_DAY;
+  private static final long MAX_FAST_TIME =
+      daysFromCivil(MAX_FAST_YEAR + 1, 1, 1) * MILLIS_PER_DAY;
+
+  private static final String[] DAY_NAMES = {
+    "Sun", "Mon", "Tue", "Wed", "Thu", "Fri", "Sat"
+  };
+
+  private static final String[] MONTH_NAMES = {
+    "Jan", "Feb", "Mar", "Apr", "May", "Jun",
+    "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"
+  };
+
+  /** Accepted forms of a string parsed by {@link #parse}. */
+  private static final int DATE_TIME = 1;
+  private static final int DATE = 2;
+  private static final int DATE_OR_DATE_TIME = DATE_TIME | DATE;
 
 
   /** Formats the value as an xs:date or xs:dateTime string. */
   @Override
   public String toString() {
 
-    StringBuilder sb = new StringBuilder();
+    StringBuilder sb = new StringBuilder(29);
 
-    Calendar dateTime = new GregorianCalendar(GMT);
     long localTime = value;
     if (tzShift != null) {
-     localTime += tzShift.longValue() * 60000;
+     localTime += tzShift.longValue() * MILLIS_PER_MINUTE;
     }
 
-    dateTime.setTimeInMillis(localTime);
-
-    try {
-
-      appendInt(sb, dateTime.get(Calendar.YEAR), 4);
-      sb.append('-');
-      appendInt(sb, dateTime.get(Calendar.MONTH) + 1, 2);
-      sb.append('-');
-      appendInt(sb, dateTime.get(Calendar.DAY_OF_MONTH), 2);
-
-      if (!dateOnly) {
-
-        sb.append('T');
-        appendInt(sb, dateTime.get(Calendar.HOUR_OF_DAY), 2);
-        sb.append(':');
-        appendInt(sb, dateTime.get(Calendar.MINUTE), 2);
-        sb.append(':');
-        appendInt(sb, dateTime.get(Calendar.SECOND), 2);
+    appendLocalTime(sb, localTime, dateOnly ? null : "T:", true);
 
-        if (dateTime.isSet(Calendar.MILLISECOND)) {
-          sb.append('.');
-          appendInt(sb, dateTime.get(Calendar.MILLISECOND), 3);
-        }
-      }
+    if (tzShift != null) {
 
-      if (tzShift != null) {
+      if (tzShift.intValue() == 0) {
 
-        if (tzShift.intValue() == 0) {
+        sb.append('Z');
 
-          sb.append('Z');
+      } else {
 
+        int absTzShift = tzShift.intValue();
+        if (absTzShift > 0) {
+          sb.append('+');
         } else {
-
-          int absTzShift = tzShift.intValue();
-          if (tzShift > 0) {
-            sb.append('+');
-          } else {
-            sb.append('-');
-            absTzShift = -absTzShift;
-          }
-
-          int tzHours = absTzShift / 60;
-          int tzMinutes = absTzShift % 60;
-          appendInt(sb, tzHours, 2);
-          sb.append(':');
-          appendInt(sb, tzMinutes, 2);
+          sb.append('-');
+          absTzShift = -absTzShift;
         }
+
+        int tzHours = absTzShift / 60;
+        int tzMinutes = absTzShift % 60;
+        appendInt(sb, tzHours, 2);
+        sb.append(':');
+        appendInt(sb, tzMinutes, 2);
       }
-    } catch (ArrayIndexOutOfBoundsException e) {
-      throw new RuntimeException(e);
     }
 
     return sb.toString();
@@ -237,57 +250,98 @@ public class DateTime implements Comparable<Object> {
   /** Formats the value as an RFC 822 date/time. */
   public String toStringRfc822() {
     assert !dateOnly;
-    synchronized (dateTimeFormat822) {
-      return dateTimeFormat822.format(value);
+
+    if (value < MIN_FAST_TIME || value >= MAX_FAST_TIME) {
+      return dateTimeFormat822.get().format(value);
     }
+
+    long days = floorDiv(value, MILLIS_PER_DAY);
+    int millisOfDay = (int) (value - days * MILLIS_PER_DAY);
+    int date = civilFromDays(days);
+
+    StringBuilder sb = new StringBuilder(31);
+    // 1970-01-01 was a Thursday.
+    sb.append(DAY_NAMES[(int) floorMod(days + 4, 7)]).append(", ");
+    appendInt(sb, date % 100, 2);
+    sb.append(' ').append(MONTH_NAMES[date / 100 % 100 - 1]).append(' ');
+    appendInt(sb, date / 10000, 4);
+    sb.append(' ');
+    appendTimeOfDay(sb, millisOfDay, ':', true, false);
+    sb.append(" +0000");
+    return sb.toString();
   }
 
   /** Parses the value as an RFC 822 date/time. */
   public static DateTime parseRfc822(String str) throws ParseException {
+    DateTime ret = parseCanonicalRfc822(str);
+    if (ret != null) {
+      return ret;
+    }
+
     Date date;
-    synchronized (dateTimeFormat822) {
-      try {
-        date = dateTimeFormat822.parse(str);
-      } catch (java.text.ParseException e) {
-        throw new ParseException(e);
-      }
+    try {
+      date = dateTimeFormat822.get().parse(str);
+    } catch (java.text.ParseException e) {
+      throw new ParseException(e);
     }
 
     return new DateTime(date);
   }
 
+  /**
+   * Parses an RFC 822 date/time in the exact form produced by
+   * {@link #toStringRfc822}, with any time zone offset, for example
+   * {@code Tue, 04 Mar 2008 10:20:30 +0100}.
+   *
+   * @return the parsed date/time, or {@code null} if the string has another
+   *     form, in which case it is left to the lenient {@link SimpleDateFormat}
+   */
+  private static DateTime parseCanonicalRfc822(String str) {
+    if (str == null || str.length() != 31
+        || str.charAt(3) != ',' || str.charAt(4) != ' '
+        || str.charAt(7) != ' ' || str.charAt(11) != ' '
+        || str.charAt(16) != ' ' || str.charAt(19) != ':'
+        || str.charAt(22) != ':' || str.charAt(25) != ' ') {
+      return null;
+    }
+    if (indexOfName(DAY_NAMES, str, 0) < 0) {
+      return null;
+    }
+    int month = indexOfName(MONTH_NAMES, str, 8) + 1;
+    int day = parseDigits(str, 5, 7);
+    int year = parseDigits(str, 12, 16);
+    int hour = parseDigits(str, 17, 19);
+    int minute = parseDigits(str, 20, 22);
+    int second = parseDigits(str, 23, 25);
+    int tzHours = parseDigits(str, 27, 29);
+    int tzMinutes = parseDigits(str, 29, 31);
+    char sign = str.charAt(26);
+    if (month == 0 || (sign != '+' && sign != '-')
+        || !isValidDate(year, month, day)
+        || !isValidTime(hour, minute, second)
+        || tzHours < 0 || tzHours > 23 || tzMinutes < 0 || tzMinutes > 59) {
+      return null;
+    }
+
+    int tzShift = tzHours * 60 + tzMinutes;
+    if (sign == '-') {
+      tzShift = -tzShift;
+    }
+    return new DateTime(toMillis(year, month, day, hour, minute, second, 0)
+        - tzShift * MILLIS_PER_MINUTE);
+  }
+
   /** Formats the value as a human-readable string. */
   public String toUiString() {
 
-    StringBuilder sb = new StringBuilder();
+    StringBuilder sb = new StringBuilder(16);
 
-    Calendar dateTime = new GregorianCalendar(GMT);
     long localTime = value;
     if (tzShift != null) {
-     localTime += tzShift.longValue() * 60000;
+     localTime += tzShift.longValue() * MILLIS_PER_MINUTE;
     }
 
-    dateTime.setTimeInMillis(localTime);
-
-    try {
-
-      appendInt(sb, dateTime.get(Calendar.YEAR), 4);
-      sb.append('-');
-      appendInt(sb, dateTime.get(Calendar.MONTH) + 1, 2);
-      sb.append('-');
-      appendInt(sb, dateTime.get(Calendar.DAY_OF_MONTH), 2);
-
-      if (!dateOnly) {
-
-        sb.append(' ');
-        appendInt(sb, dateTime.get(Calendar.HOUR_OF_DAY), 2);
-        sb.append(':');
-        appendInt(sb, dateTime.get(Calendar.MINUTE), 2);
-      }
-
-    } catch (ArrayIndexOutOfBoundsException e) {
-      throw new RuntimeException(e);
-    }
+    appendLocalTime(sb, localTime, dateOnly ? null : " :", false);
 
     return sb.toString();
   }
@@ -297,138 +351,312 @@ public class DateTime implements Comparable<Object> {
   public static DateTime parseDateTime(String str)
       throws NumberFormatException {
 
-    Matcher m = str == null ? null : dateTimePattern.matcher(str);
-
-    if (str == null || !m.matches()) {
+    DateTime ret = parse(str, DATE_TIME);
+    if (ret == null) {
       throw new NumberFormatException("Invalid date/time format.");
     }
+    return ret;
+  }
 
-    /* Debugging help:
-    System.out.println("Year: " + m.group(1));
-    System.out.println("Month: " + m.group(2));
-    System.out.println("Day: " + m.group(3));
-    System.out.println("Hour: " + m.group(4));
-    System.out.println("Minute: " + m.group(5));
-    System.out.println("Second: " + m.group(6));
-    System.out.println("Second Fraction: " + m.group(8));
-    System.out.println("TZ: " + m.group(9));
-    System.out.println("TZ Shift: " + m.group(11));
-    System.out.println("TZ Hour: " + m.group(12));
-    System.out.println("TZ Minute: " + m.group(13));
-    */
-
-    DateTime ret = new DateTime();
-    ret.dateOnly = false;
+  /** Parses an xs:date string. */
+  public static DateTime parseDate(String str)
+      throws NumberFormatException {
 
-    if (m.group(9) == null) {
-      // No time zone specified.
-    } else if (m.group(9).equalsIgnoreCase("Z")) {
-      ret.tzShift = new Integer(0);
-    } else {
-      ret.tzShift = new Integer((Integer.valueOf(m.group(12)) * 60 +
-                                 Integer.valueOf(m.group(13))));
-      if (m.group(11).equals("-")) {
-        ret.tzShift = new Integer(-ret.tzShift.intValue());
-      }
+    DateTime ret = parse(str, DATE);
+    if (ret == null) {
+      throw new NumberFormatException("Invalid date format.");
     }
+    return ret;
+  }
 
-    Calendar dateTime = new GregorianCalendar(GMT);
-
-    dateTime.clear();
-    dateTime.set(Integer.valueOf(m.group(1)),
-                 Integer.valueOf(m.group(2)) - 1,
-                 Integer.valueOf(m.group(3)),
-                 Integer.valueOf(m.group(4)),
-                 Integer.valueOf(m.group(5)),
-                 Integer.valueOf(m.group(6)));
-    if (m.group(8) != null && m.group(8).length() > 0) {
-      final BigDecimal bd = new BigDecimal("0." + m.group(8));
-      // we care only for milliseconds, so movePointRight(3)
-      dateTime.set(Calendar.MILLISECOND, bd.movePointRight(3).intValue());
-    }
+  /**
+   * Parses an XML value that's either an xs:date or xs:dateTime string.
+   *
+   * @throws  NumberFormatException
+   *            Invalid RFC 3339 date or date/time string.
+   */
+  public static DateTime parseDateTimeChoice(String value)
+      throws NumberFormatException {
 
-    ret.value = dateTime.getTimeInMillis();
-    if (ret.tzShift != null) {
-      ret.value -= ret.tzShift.intValue() * 60000;
+    DateTime ret = parse(value, DATE_OR_DATE_TIME);
+    if (ret == null) {
+      throw new NumberFormatException("Invalid date format.");
     }
-
     return ret;
   }
 
-  /** Parses an xs:date string. */
-  public static DateTime parseDate(String str)
-      throws NumberFormatException {
+  /**
+   * Parses an xs:date or xs:dateTime string in a single pass.  The accepted
+   * syntax is that of {@link #dateTimePattern} and {@link #datePattern}.
+   *
+   * @param str string to parse
+   * @param forms accepted forms: {@link #DATE_TIME}, {@link #DATE} or both
+   * @return the parsed value, or {@code null} if the string is invalid
+   */
+  private static DateTime parse(String str, int forms) {
 
-    Matcher m = str == null ? null : datePattern.matcher(str);
+    if (str == null || str.length() < 10
+        || str.charAt(4) != '-' || str.charAt(7) != '-') {
+      return null;
+    }
+    int year = parseDigits(str, 0, 4);
+    int month = parseDigits(str, 5, 7);
+    int day = parseDigits(str, 8, 10);
+    if (year < 0 || month < 0 || day < 0) {
+      return null;
+    }
 
-    if (str == null || !m.matches()) {
-      throw new NumberFormatException("Invalid date format.");
+    int length = str.length();
+    int pos = 10;
+    boolean dateOnly = true;
+    int hour = 0;
+    int minute = 0;
+    int second = 0;
+    int millis = 0;
+
+    if (pos < length && (str.charAt(pos) == 'T' || str.charAt(pos) == 't')) {
+      if ((forms & DATE_TIME) == 0 || length < pos + 9
+          || str.charAt(pos + 3) != ':' || str.charAt(pos + 6) != ':') {
+        return null;
+      }
+      hour = parseDigits(str, pos + 1, pos + 3);
+      minute = parseDigits(str, pos + 4, pos + 6);
+      second = parseDigits(str, pos + 7, pos + 9);
+      if (hour < 0 || minute < 0 || second < 0) {
+        return null;
+      }
+      pos += 9;
+      dateOnly = false;
+
+      if (pos < length && str.charAt(pos) == '.') {
+        // Only milliseconds are kept, any further digits are truncated.
+        int start = ++pos;
+        while (pos < length && isDigit(str.charAt(pos))) {
+          if (pos - start < 3) {
+            millis = millis * 10 + (str.charAt(pos) - '0');
+          }
+          ++pos;
+        }
+        if (pos == start) {
+          return null;
+        }
+        for (int digits = pos - start; digits < 3; ++digits) {
+          millis *= 10;
+        }
+      }
+    } else if ((forms & DATE) == 0) {
+      return null;
     }
 
-    /* Debugging help:
-    System.out.println("Year: " + m.group(1));
-    System.out.println("Month: " + m.group(2));
-    System.out.println("Day: " + m.group(3));
-    System.out.println("TZ: " + m.group(4));
-    System.out.println("TZ Shift: " + m.group(6));
-    System.out.println("TZ Hour: " + m.group(7));
-    System.out.println("TZ Minute: " + m.group(8));
-    */
+    Integer tzShift = null;
+    if (pos < length) {
+      char c = str.charAt(pos);
+      if ((c == 'Z' || c == 'z') && pos + 1 == length) {
+        tzShift = 0;
+      } else if ((c == '+' || c == '-') && pos + 6 == length
+          && str.charAt(pos + 3) == ':') {
+        int tzHours = parseDigits(str, pos + 1, pos + 3);
+        int tzMinutes = parseDigits(str, pos + 4, pos + 6);
+        if (tzHours < 0 || tzMinutes < 0) {
+          return null;
+        }
+        int shift = tzHours * 60 + tzMinutes;
+        tzShift = (c == '-') ? -shift : shift;
+      } else {
+        return null;
+      }
+    }
 
     DateTime ret = new DateTime();
-    ret.dateOnly = true;
+    ret.dateOnly = dateOnly;
+    ret.tzShift = tzShift;
+    ret.value = toMillis(year, month, day, hour, minute, second, millis);
+    if (tzShift != null) {
+      ret.value -= tzShift.intValue() * MILLIS_PER_MINUTE;
+    }
 
-    if (m.group(4) == null) {
-      // No time zone specified.
-    } else if (m.group(4).equalsIgnoreCase("Z")) {
-      ret.tzShift = new Integer(0);
-    } else {
-      ret.tzShift = new Integer((Integer.valueOf(m.group(7)) * 60 +
-                                 Integer.valueOf(m.group(8))));
-      if (m.group(6).equals("-")) {
-        ret.tzShift = new Integer(-ret.tzShift.intValue());
-      }
+    return ret;
+  }
+
+
+  /**
+   * Returns the ms since the Unix epoch of a local date/time.  Out of range
+   * fields are normalized the way a lenient {@link Calendar} does it.
+   */
+  private static long toMillis(int year, int month, int day, int hour,
+      int minute, int second, int millis) {
+
+    if (year >= MIN_FAST_YEAR && year <= MAX_FAST_YEAR
+        && isValidDate(year, month, day)
+        && isValidTime(hour, minute, second)) {
+      return daysFromCivil(year, month, day) * MILLIS_PER_DAY
+          + ((hour * 60 + minute) * 60 + second) * 1000L + millis;
     }
 
     Calendar dateTime = new GregorianCalendar(GMT);
-
     dateTime.clear();
-    dateTime.set(Integer.valueOf(m.group(1)),
-                 Integer.valueOf(m.group(2)) - 1,
-                 Integer.valueOf(m.group(3)));
+    dateTime.set(year, month - 1, day, hour, minute, second);
+    dateTime.set(Calendar.MILLISECOND, millis);
+    return dateTime.getTimeInMillis();
+  }
 
-    ret.value = dateTime.getTimeInMillis();
-    if (ret.tzShift != null) {
-      ret.value -= ret.tzShift.intValue() * 60000;
+  /**
+   * Appends the date and optionally the time of day of a local time.
+   *
+   * @param sb string builder to append to
+   * @param localTime local time, in ms since the Unix epoch
+   * @param timeSeparators {@code null} to append the date only, otherwise
+   *     the characters separating the date from the time and the time fields
+   * @param withSeconds whether to append seconds and milliseconds
+   */
+  private static void appendLocalTime(StringBuilder sb, long localTime,
+      String timeSeparators, boolean withSeconds) {
+
+    int year;
+    int month;
+    int day;
+    int millisOfDay;
+
+    if (localTime >= MIN_FAST_TIME && localTime < MAX_FAST_TIME) {
+      long days = floorDiv(localTime, MILLIS_PER_DAY);
+      millisOfDay = (int) (localTime - days * MILLIS_PER_DAY);
+      int date = civilFromDays(days);
+      year = date / 10000;
+      month = date / 100 % 100;
+      day = date % 100;
+    } else {
+      Calendar dateTime = new GregorianCalendar(GMT);
+      dateTime.setTimeInMillis(localTime);
+      year = dateTime.get(Calendar.YEAR);
+      month = dateTime.get(Calendar.MONTH) + 1;
+      day = dateTime.get(Calendar.DAY_OF_MONTH);
+      millisOfDay = (int) floorMod(localTime, MILLIS_PER_DAY);
     }
 
-    return ret;
+    appendInt(sb, year, 4);
+    sb.append('-');
+    appendInt(sb, month, 2);
+    sb.append('-');
+    appendInt(sb, day, 2);
+
+    if (timeSeparators != null) {
+      sb.append(timeSeparators.charAt(0));
+      appendTimeOfDay(sb, millisOfDay, timeSeparators.charAt(1), withSeconds,
+          withSeconds);
+    }
+  }
+
+  /** Appends a time of day, with seconds and milliseconds if requested. */
+  private static void appendTimeOfDay(StringBuilder sb, int millisOfDay,
+      char separator, boolean withSeconds, boolean withMillis) {
+
+    int seconds = millisOfDay / 1000;
+    appendInt(sb, seconds / 3600, 2);
+    sb.append(separator);
+    appendInt(sb, seconds / 60 % 60, 2);
+    if (withSeconds) {
+      sb.append(separator);
+      appendInt(sb, seconds % 60, 2);
+      if (withMillis) {
+        sb.append('.');
+        appendInt(sb, millisOfDay % 1000, 3);
+      }
+    }
   }
 
+
   /**
-   * Parses an XML value that's either an xs:date or xs:dateTime string.
-   *
-   * @throws  NumberFormatException
-   *            Invalid RFC 3339 date or date/time string.
+   * Returns the number of days from 1970-01-01 to a date of the proleptic
+   * Gregorian calendar.
    */
-  public static DateTime parseDateTimeChoice(String value)
-      throws NumberFormatException {
+  private static long daysFromCivil(int year, int month, int day) {
+    // Counts from 0000-03-01, so that the leap day ends the year.
+    long y = (month <= 2) ? year - 1 : year;
+    long era = (y >= 0 ? y : y - 399) / 400;
+    long yearOfEra = y - era * 400;
+    long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+    long dayOfEra =
+        yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    return era * 146097 + dayOfEra - 719468;
+  }
 
-    NumberFormatException exception;
+  /**
+   * Returns the proleptic Gregorian date a number of days after 1970-01-01,
+   * encoded as {@code year * 10000 + month * 100 + day}.
+   */
+  private static int civilFromDays(long days) {
+    long z = days + 719468;
+    long era = (z >= 0 ? z : z - 146096) / 146097;
+    int dayOfEra = (int) (z - era * 146097);
+    int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524
+        - dayOfEra / 146096) / 365;
+    int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4
+        - yearOfEra / 100);
+    int mp = (5 * dayOfYear + 2) / 153;
+    int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+    int month = mp < 10 ? mp + 3 : mp - 9;
+    int year = (int) (yearOfEra + era * 400) + (month <= 2 ? 1 : 0);
+    return year * 10000 + month * 100 + day;
+  }
 
-    try {
-      return DateTime.parseDateTime(value);
-    } catch (NumberFormatException e) {
-      exception = e;
+  private static boolean isValidDate(int year, int month, int day) {
+    if (month < 1 || month > 12 || day < 1) {
+      return false;
+    }
+    if (month == 2) {
+      boolean leap = (year % 4 == 0) && (year % 100 != 0 || year % 400 == 0);
+      return day <= (leap ? 29 : 28);
     }
+    return day <= ((month == 4 || month == 6 || month == 9 || month == 11)
+        ? 30 : 31);
+  }
 
-    try {
-      return DateTime.parseDate(value);
-    } catch (NumberFormatException e) {
-      exception = e;
+  private static boolean isValidTime(int hour, int minute, int second) {
+    return hour >= 0 && hour <= 23 && minute >= 0 && minute <= 59
+        && second >= 0 && second <= 59;
+  }
+
+  private static long floorDiv(long x, long y) {
+    long q = x / y;
+    return (x % y < 0) ? q - 1 : q;
+  }
+
+  private static long floorMod(long x, long y) {
+    long r = x % y;
+    return (r < 0) ? r + y : r;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  /**
+   * Parses the ASCII digits between {@code start} (inclusive) and
+   * {@code end} (exclusive), returning -1 if any character is not a digit.
+   */
+  private static int parseDigits(String str, int start, int end) {
+    int num = 0;
+    for (int i = start; i < end; ++i) {
+      char c = str.charAt(i);
+      if (!isDigit(c)) {
+        return -1;
+      }
+      num = num * 10 + (c - '0');
     }
+    return num;
+  }
 
-    throw exception;
+  /**
+   * Returns the index of the three-letter name found at {@code start}, or -1
+   * if there is none.
+   */
+  private static int indexOfName(String[] names, String str, int start) {
+    for (int i = 0; i < names.length; ++i) {
+      if (str.startsWith(names[i], start)) {
+        return i;
+      }
+    }
+    return -1;
   }
 
 
@@ -440,12 +668,12 @@ public class DateTime implements Comparable<Object> {
       num = -num;
     }
 
-    char[] digits = new char[numDigits];
-    for (int digit = numDigits - 1; digit >= 0; --digit) {
-      digits[digit] = (char)('0' + num % 10);
-      num /= 10;
+    int divisor = 1;
+    for (int digit = 1; digit < numDigits; ++digit) {
+      divisor *= 10;
+    }
+    for (; divisor > 0; divisor /= 10) {
+      sb.append((char) ('0' + num / divisor % 10));
     }
-
-    sb.append(digits);
   }
 }
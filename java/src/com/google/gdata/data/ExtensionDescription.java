@@ -29,6 +29,8 @@ import java.io.IOException;
 import java.lang.annotation.Inherited;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -63,6 +65,12 @@ public class ExtensionDescription extends ExtensionPoint
    */
   private Class<? extends Extension> extensionClass;
 
+  /**
+   * The constructor of the extension class, resolved on first use so that
+   * instances are not created through a reflective lookup.
+   */
+  private volatile Constructor<? extends Extension> extensionConstructor;
+
   /**
    * Specifies whether the extension is required within its parent extension
    * point.
@@ -245,12 +253,57 @@ public class ExtensionDescription extends ExtensionPoint
 
   public void setExtensionClass(Class<? extends Extension> extensionClass) {
     this.extensionClass = extensionClass;
+    this.extensionConstructor = null;
   }
 
   final public Class<? extends Extension> getExtensionClass() {
     return extensionClass;
   }
 
+  /**
+   * Creates an instance of the extension class, using its no-argument
+   * constructor.
+   *
+   * @throws ParseException if unable to create an instance of the extension
+   */
+  public Extension createExtension() throws ParseException {
+
+    Constructor<? extends Extension> constructor = extensionConstructor;
+    try {
+      if (constructor == null) {
+        constructor = extensionClass.getDeclaredConstructor();
+        // Skips the access check otherwise made on every call.  This also
+        // allows non-public constructors, as for the elements of the new
+        // data model.
+        constructor.setAccessible(true);
+        extensionConstructor = constructor;
+      }
+      return constructor.newInstance();
+    } catch (NoSuchMethodException e) {
+      throw new ParseException(
+          CoreErrorDomain.ERR.cantCreateExtension, e);
+    } catch (SecurityException e) {
+      throw new ParseException(
+          CoreErrorDomain.ERR.cantCreateExtension, e);
+    } catch (InstantiationException e) {
+      throw new ParseException(
+          CoreErrorDomain.ERR.cantCreateExtension, e);
+    } catch (IllegalAccessException e) {
+      throw new ParseException(
+          CoreErrorDomain.ERR.cantCreateExtension, e);
+    } catch (InvocationTargetException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new ParseException(
+          CoreErrorDomain.ERR.cantCreateExtension, e);
+    }
+  }
+
   public void setRequired(boolean required) {
     this.required = required;
   }
@@ -46,10 +46,22 @@ public class ExtensionManifest {
   final Class<? extends ExtensionPoint> extendedType;
 
 
-  /** Maps (Namespace URI, local name) to corresponding extension data. */
+  /**
+   * Maps (Namespace URI, local name) to corresponding extension data. Only
+   * modified through {@link #addExtension(Pair, ExtensionDescription)}, which
+   * keeps {@link #extensionIndex} in sync.
+   */
   final Map<Pair<String, String>, ExtensionDescription> supportedExtensions =
     new HashMap<Pair<String, String>, ExtensionDescription>();
 
+  /**
+   * Index of the supported extensions by namespace URI, then local name,
+   * used to find the extension data of parsed elements without allocating
+   * a key. The names are interned, as they usually are by the XML parser.
+   */
+  private final Map<String, Map<String, ExtensionDescription>> extensionIndex =
+    new HashMap<String, Map<String, ExtensionDescription>>();
+
   /**
    * Specifies whether the extension point supports arbitrary XML
    * ({code xs:any}). If it does, it is available through
@@ -79,6 +91,60 @@ public class ExtensionManifest {
     this.extendedType = extendedType;
   }
 
+  /**
+   * Adds the extension data for a (Namespace URI, local name) pair, replacing
+   * any previous one.
+   */
+  void addExtension(Pair<String, String> qName,
+      ExtensionDescription extDescription) {
+
+    supportedExtensions.put(qName, extDescription);
+
+    String namespaceUri = intern(qName.getFirst());
+    Map<String, ExtensionDescription> localNames =
+        extensionIndex.get(namespaceUri);
+    if (localNames == null) {
+      localNames = new HashMap<String, ExtensionDescription>();
+      extensionIndex.put(namespaceUri, localNames);
+    }
+    localNames.put(intern(qName.getSecond()), extDescription);
+  }
+
+  /** Adds all the extension data of another manifest. */
+  void addExtensions(ExtensionManifest manifest) {
+    for (Map.Entry<Pair<String, String>, ExtensionDescription> extension :
+        manifest.supportedExtensions.entrySet()) {
+      addExtension(extension.getKey(), extension.getValue());
+    }
+  }
+
+  /**
+   * Returns the extension data for an XML element, or {@code null} if the
+   * element is not supported. A declaration of the local name takes
+   * precedence over a wildcard ('*') declaration for the namespace.
+   *
+   * @param namespaceUri namespace URI of the XML element
+   * @param localName    name of the XML element
+   */
+  ExtensionDescription getExtensionDescription(String namespaceUri,
+      String localName) {
+
+    Map<String, ExtensionDescription> localNames =
+        extensionIndex.get(namespaceUri);
+    if (localNames == null) {
+      return null;
+    }
+    ExtensionDescription extDescription = localNames.get(localName);
+    if (extDescription == null) {
+      extDescription = localNames.get("*");
+    }
+    return extDescription;
+  }
+
+  private static String intern(String name) {
+    return name == null ? null : name.intern();
+  }
+
   /**
    * Returns the Map from namespace/localname String pairs to supporting
    * Extension class and manifest information.
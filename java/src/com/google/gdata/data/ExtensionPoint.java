@@ -16,7 +16,6 @@
 
 package com.google.gdata.data;
 
-import com.google.gdata.util.common.base.Pair;
 import com.google.gdata.util.common.xml.XmlNamespace;
 import com.google.gdata.util.common.xml.XmlWriter;
 import com.google.gdata.client.CoreErrorDomain;
@@ -33,7 +32,6 @@ import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -49,31 +47,42 @@ import java.util.Map;
 public class ExtensionPoint extends AbstractExtension {
 
   /**
-   * Collection of non-repeating extensions. Uses {@link LinkedHashMap} in order
-   * to provide a predictable generation output order based upon insertion
-   * order.
+   * Collection of non-repeating extensions, or {@code null} until one is
+   * added. Uses {@link ArrayMap} in order to provide a predictable generation
+   * output order based upon insertion order, at little cost for the few
+   * extensions an extension point usually holds.
    */
-  private Map<Class<? extends Extension>, Extension> nonRepeatingExtensionMap =
-      new LinkedHashMap<Class<? extends Extension>, Extension>();
+  private Map<Class<? extends Extension>, Extension> nonRepeatingExtensionMap;
 
 
   /**
-   * Collection of repeating extensions. Uses {@link LinkedHashMap} in order to
-   * provide a predictable generation output order based upon insertion order.
+   * Collection of repeating extensions, or {@code null} until one is added.
+   * Uses {@link ArrayMap} in order to provide a predictable generation output
+   * order based upon insertion order.
    */
-  private Map<Class<? extends Extension>, List<Extension>> 
-      repeatingExtensionMap =
-          new LinkedHashMap<Class<? extends Extension>, List<Extension>>();
+  private Map<Class<? extends Extension>, List<Extension>>
+      repeatingExtensionMap;
 
 
-  /** Arbitrary XML (unrecognized extensions). */
-  protected XmlBlob xmlBlob = new XmlBlob();
+  /**
+   * Arbitrary XML (unrecognized extensions), or {@code null} if there is none.
+   * Use {@link #getXmlBlob()} to create it on demand.
+   */
+  protected XmlBlob xmlBlob;
 
 
   /** Manifest for this instance. Filled on-demand. */
   private ExtensionManifest manifest;
 
 
+  /**
+   * Extension point this one was copied from, if some of its lazily created
+   * state did not exist yet, or {@code null}.  That state is looked up in and
+   * created through the source, so both instances keep sharing it.
+   */
+  private ExtensionPoint sharedSource;
+
+
   /**
    * Simple constructor to create a new (empty) ExtensionPoint.
    */
@@ -87,10 +96,65 @@ public class ExtensionPoint extends AbstractExtension {
   protected ExtensionPoint(ExtensionPoint sourcePoint) {
 
     // WARNING: ANY NON-STATIC FIELDS ADDED ABOVE NEED TO BE COPIED HERE.
-    nonRepeatingExtensionMap = sourcePoint.nonRepeatingExtensionMap;
-    repeatingExtensionMap = sourcePoint.repeatingExtensionMap;
-    xmlBlob = sourcePoint.xmlBlob;
+    nonRepeatingExtensionMap = sourcePoint.existingExtensions();
+    repeatingExtensionMap = sourcePoint.existingRepeatingExtensions();
+    xmlBlob = sourcePoint.existingXmlBlob();
     manifest = sourcePoint.manifest;
+    if (nonRepeatingExtensionMap == null || repeatingExtensionMap == null
+        || xmlBlob == null) {
+      sharedSource = sourcePoint;
+    }
+  }
+
+
+  /** Returns the non-repeating extensions, or {@code null} if none. */
+  private Map<Class<? extends Extension>, Extension> existingExtensions() {
+    if (nonRepeatingExtensionMap == null && sharedSource != null) {
+      nonRepeatingExtensionMap = sharedSource.existingExtensions();
+    }
+    return nonRepeatingExtensionMap;
+  }
+
+
+  /** Returns the repeating extensions, or {@code null} if none. */
+  private Map<Class<? extends Extension>, List<Extension>>
+      existingRepeatingExtensions() {
+    if (repeatingExtensionMap == null && sharedSource != null) {
+      repeatingExtensionMap = sharedSource.existingRepeatingExtensions();
+    }
+    return repeatingExtensionMap;
+  }
+
+
+  /** Returns the XML blob, or {@code null} if none. */
+  private XmlBlob existingXmlBlob() {
+    if (xmlBlob == null && sharedSource != null) {
+      xmlBlob = sharedSource.existingXmlBlob();
+    }
+    return xmlBlob;
+  }
+
+
+  /** Returns the non-repeating extensions, creating the map if needed. */
+  private Map<Class<? extends Extension>, Extension> nonRepeatingExtensions() {
+    if (existingExtensions() == null) {
+      nonRepeatingExtensionMap = (sharedSource != null)
+          ? sharedSource.nonRepeatingExtensions()
+          : new ArrayMap<Class<? extends Extension>, Extension>();
+    }
+    return nonRepeatingExtensionMap;
+  }
+
+
+  /** Returns the repeating extensions, creating the map if needed. */
+  private Map<Class<? extends Extension>, List<Extension>>
+      repeatingExtensions() {
+    if (existingRepeatingExtensions() == null) {
+      repeatingExtensionMap = (sharedSource != null)
+          ? sharedSource.repeatingExtensions()
+          : new ArrayMap<Class<? extends Extension>, List<Extension>>();
+    }
+    return repeatingExtensionMap;
   }
 
 
@@ -109,21 +173,31 @@ public class ExtensionPoint extends AbstractExtension {
   /** Returns whether the non-repeating extension is present. */
   public final <T extends Extension> boolean hasExtension(
       Class<T> extensionClass) {
-    return nonRepeatingExtensionMap.containsKey(extensionClass);
+    Map<Class<? extends Extension>, Extension> extMap = existingExtensions();
+    return extMap != null && extMap.containsKey(extensionClass);
   }
 
   /** Returns whether the repeating extension is present. */
   @SuppressWarnings("unchecked")
   public final <T extends Extension> boolean hasRepeatingExtension(
       Class<T> extensionClass) {
-    List<T> ret = (List<T>) repeatingExtensionMap.get(extensionClass);
+    Map<Class<? extends Extension>, List<Extension>> repeatingMap =
+        existingRepeatingExtensions();
+    if (repeatingMap == null) {
+      return false;
+    }
+    List<T> ret = (List<T>) repeatingMap.get(extensionClass);
     return ret != null && !ret.isEmpty();
   }
 
   /** Retrieves a non-repeating extension or {@code null} if not present. */
   @SuppressWarnings("unchecked")
   public <T extends Extension> T getExtension(Class<T> extensionClass) {
-    return (T) nonRepeatingExtensionMap.get(extensionClass);
+    Map<Class<? extends Extension>, Extension> extMap = existingExtensions();
+    if (extMap == null) {
+      return null;
+    }
+    return (T) extMap.get(extensionClass);
   }
 
   /**
@@ -133,8 +207,11 @@ public class ExtensionPoint extends AbstractExtension {
    * @return Collection of non-repeating extensions.
    */
   public Collection<Extension> getExtensions() {
-    return Collections
-        .unmodifiableCollection(nonRepeatingExtensionMap.values());
+    Map<Class<? extends Extension>, Extension> extMap = existingExtensions();
+    if (extMap == null) {
+      return Collections.emptySet();
+    }
+    return Collections.unmodifiableCollection(extMap.values());
   }
 
   /** Retrieves a repeating extension list (an empty list if not present). */
@@ -142,10 +219,12 @@ public class ExtensionPoint extends AbstractExtension {
   public <T extends Extension> List<T> getRepeatingExtension(
       Class<T> extensionClass) {
 
-    List<T> ret = (List<T>) repeatingExtensionMap.get(extensionClass);
+    Map<Class<? extends Extension>, List<Extension>> extMap =
+        repeatingExtensions();
+    List<T> ret = (List<T>) extMap.get(extensionClass);
     if (ret == null) {
       ret = new ArrayList<T>();
-      repeatingExtensionMap.put(extensionClass, (List<Extension>) ret);
+      extMap.put(extensionClass, (List<Extension>) ret);
     }
     return ret;
   }
@@ -158,18 +237,25 @@ public class ExtensionPoint extends AbstractExtension {
    * @return Collection of lists of repeating extensions.
    */
   public Collection<List<Extension>> getRepeatingExtensions() {
-    return Collections.unmodifiableCollection(repeatingExtensionMap.values());
+    Map<Class<? extends Extension>, List<Extension>> extMap =
+        existingRepeatingExtensions();
+    if (extMap == null) {
+      return Collections.emptySet();
+    }
+    return Collections.unmodifiableCollection(extMap.values());
   }
 
   /** Internal helper method. */
   protected boolean addExtension(Extension ext,
       Class<? extends Extension> extClass) {
 
-    if (nonRepeatingExtensionMap.containsKey(extClass)) {
+    Map<Class<? extends Extension>, Extension> extMap =
+        nonRepeatingExtensions();
+    if (extMap.containsKey(extClass)) {
       return false;
     }
 
-    nonRepeatingExtensionMap.put(extClass, ext);
+    extMap.put(extClass, ext);
     return true;
   }
 
@@ -182,7 +268,7 @@ public class ExtensionPoint extends AbstractExtension {
 
   /** Sets an extension object. If one exists of this type, it's replaced. */
   public void setExtension(Extension ext) {
-    nonRepeatingExtensionMap.remove(ext.getClass());
+    removeExtension(ext.getClass());
     addExtension(ext, ext.getClass());
   }
 
@@ -190,13 +276,15 @@ public class ExtensionPoint extends AbstractExtension {
   protected void addRepeatingExtension(Extension ext,
       Class<? extends Extension> extClass) {
 
-    List<Extension> extList = repeatingExtensionMap.get(extClass);
+    Map<Class<? extends Extension>, List<Extension>> extMap =
+        repeatingExtensions();
+    List<Extension> extList = extMap.get(extClass);
     if (extList == null) {
       extList = new ArrayList<Extension>();
+      extMap.put(extClass, extList);
     }
 
     extList.add(ext);
-    repeatingExtensionMap.put(extClass, extList);
   }
 
 
@@ -208,20 +296,28 @@ public class ExtensionPoint extends AbstractExtension {
 
   /** Removes an extension object. */
   public void removeExtension(Extension ext) {
-    nonRepeatingExtensionMap.remove(ext.getClass());
+    removeExtension(ext.getClass());
   }
 
 
   /** Removes an extension object based on its class. */
   public void removeExtension(Class<? extends Extension> extensionClass) {
-    nonRepeatingExtensionMap.remove(extensionClass);
+    Map<Class<? extends Extension>, Extension> extMap = existingExtensions();
+    if (extMap != null) {
+      extMap.remove(extensionClass);
+    }
   }
 
 
   /** Removes a repeating extension object. */
   public void removeRepeatingExtension(Extension ext) {
 
-    List<Extension> extList = repeatingExtensionMap.get(ext.getClass());
+    Map<Class<? extends Extension>, List<Extension>> repeatingMap =
+        existingRepeatingExtensions();
+    if (repeatingMap == null) {
+      return;
+    }
+    List<Extension> extList = repeatingMap.get(ext.getClass());
     if (extList == null) {
       return;
     }
@@ -254,13 +350,20 @@ public class ExtensionPoint extends AbstractExtension {
       throws ExtensionVisitor.StoppedException {
 
     // Visit children
-    for (Extension ext : nonRepeatingExtensionMap.values()) {
-      visitChild(ev, ext);
+    Map<Class<? extends Extension>, Extension> extMap = existingExtensions();
+    if (extMap != null) {
+      for (Extension ext : extMap.values()) {
+        visitChild(ev, ext);
+      }
     }
 
-    for (List<Extension> extList : repeatingExtensionMap.values()) {
-      for (Extension ext : extList) {
-        visitChild(ev, ext);
+    Map<Class<? extends Extension>, List<Extension>> repeatingMap =
+        existingRepeatingExtensions();
+    if (repeatingMap != null) {
+      for (List<Extension> extList : repeatingMap.values()) {
+        for (Extension ext : extList) {
+          visitChild(ev, ext);
+        }
       }
     }
   }
@@ -288,9 +391,14 @@ public class ExtensionPoint extends AbstractExtension {
 
 
   /**
-   * Retrieves the XML blob containing arbitrary (unrecognized) extensions.
+   * Retrieves the XML blob containing arbitrary (unrecognized) extensions,
+   * creating an empty one if there is none.
    */
   public XmlBlob getXmlBlob() {
+    if (existingXmlBlob() == null) {
+      xmlBlob = (sharedSource != null) ? sharedSource.getXmlBlob()
+          : new XmlBlob();
+    }
     return xmlBlob;
   }
 
@@ -316,11 +424,14 @@ public class ExtensionPoint extends AbstractExtension {
     StringWriter w = new StringWriter();
     XmlWriter xw = new XmlWriter(w);
 
-    if (xmlBlob != null) {
-      cumulative.setLang(xmlBlob.getLang());
-      cumulative.setBase(xmlBlob.getBase());
-      namespaces.addAll(xmlBlob.getNamespaces());
-      w.write(xmlBlob.getBlob());
+    XmlBlob blob = existingXmlBlob();
+    if (blob != null) {
+      cumulative.setLang(blob.getLang());
+      cumulative.setBase(blob.getBase());
+      namespaces.addAll(blob.getNamespaces());
+      if (blob.getBlob() != null) {
+        w.write(blob.getBlob());
+      }
     }
 
     if (manifest != null) {
@@ -332,16 +443,23 @@ public class ExtensionPoint extends AbstractExtension {
       }
     }
 
-    for (Extension ext : nonRepeatingExtensionMap.values()) {
-      ext.generate(xw, extProfile);
+    Map<Class<? extends Extension>, Extension> extMap = existingExtensions();
+    if (extMap != null) {
+      for (Extension ext : extMap.values()) {
+        ext.generate(xw, extProfile);
+      }
     }
 
-    for (List<Extension> extList : repeatingExtensionMap.values()) {
-      xw.startRepeatingElement();
-      for (Extension ext : extList) {
-        ext.generate(xw, extProfile);
+    Map<Class<? extends Extension>, List<Extension>> repeatingMap =
+        existingRepeatingExtensions();
+    if (repeatingMap != null) {
+      for (List<Extension> extList : repeatingMap.values()) {
+        xw.startRepeatingElement();
+        for (Extension ext : extList) {
+          ext.generate(xw, extProfile);
+        }
+        xw.endRepeatingElement();
       }
-      xw.endRepeatingElement();
     }
 
     cumulative.setBlob(w.toString());
@@ -359,8 +477,15 @@ public class ExtensionPoint extends AbstractExtension {
       throws IOException, ParseException {
 
     this.xmlBlob = new XmlBlob();
-    nonRepeatingExtensionMap.clear();
-    repeatingExtensionMap.clear();
+    Map<Class<? extends Extension>, Extension> extMap = existingExtensions();
+    if (extMap != null) {
+      extMap.clear();
+    }
+    Map<Class<? extends Extension>, List<Extension>> repeatingMap =
+        existingRepeatingExtensions();
+    if (repeatingMap != null) {
+      repeatingMap.clear();
+    }
 
     // Prepare a fake XML document from the blob.
     StringWriter sw = new StringWriter();
@@ -460,8 +585,8 @@ public class ExtensionPoint extends AbstractExtension {
       Collection<XmlWriter.Attribute> additionalAttrs,
       Collection<XmlNamespace> additionalNs) throws IOException {
 
-    XmlBlob.startElement(w, namespace, elementName, xmlBlob, additionalAttrs,
-        additionalNs);
+    XmlBlob.startElement(w, namespace, elementName, existingXmlBlob(),
+        additionalAttrs, additionalNs);
   }
 
 
@@ -479,20 +604,28 @@ public class ExtensionPoint extends AbstractExtension {
   protected void generateExtensions(XmlWriter w, ExtensionProfile extProfile)
       throws IOException {
 
-    for (Extension ext : nonRepeatingExtensionMap.values()) {
-      ext.generate(w, extProfile);
+    Map<Class<? extends Extension>, Extension> extMap = existingExtensions();
+    if (extMap != null) {
+      for (Extension ext : extMap.values()) {
+        ext.generate(w, extProfile);
+      }
     }
 
-    for (List<Extension> extList : repeatingExtensionMap.values()) {
-      w.startRepeatingElement();
-      for (Extension ext : extList) {
-        ext.generate(w, extProfile);
+    Map<Class<? extends Extension>, List<Extension>> repeatingMap =
+        existingRepeatingExtensions();
+    if (repeatingMap != null) {
+      for (List<Extension> extList : repeatingMap.values()) {
+        w.startRepeatingElement();
+        for (Extension ext : extList) {
+          ext.generate(w, extProfile);
+        }
+        w.endRepeatingElement();
       }
-      w.endRepeatingElement();
     }
 
-    if (xmlBlob != null) {
-      w.innerXml(xmlBlob.getBlob());
+    XmlBlob blob = existingXmlBlob();
+    if (blob != null) {
+      w.innerXml(blob.getBlob());
     }
   }
 
@@ -521,7 +654,7 @@ public class ExtensionPoint extends AbstractExtension {
 
     if (arbitraryXml) {
       handler.initializeXmlBlob(
-          xmlBlob,
+          getXmlBlob(),
           mixedContent,
           /* fullTextIndex */false);
     }
@@ -544,15 +677,9 @@ public class ExtensionPoint extends AbstractExtension {
     if (profManifest == null) {
       return null;
     }
-    // look for an explicit match of the namespace URI and local name
-    ExtensionDescription extDescription =
-        profManifest.supportedExtensions.get(Pair.of(namespaceUri, localName));
-    // look for a match of the namespace URI with a wildcard local name 
-    if (extDescription == null) {
-      extDescription =
-          profManifest.supportedExtensions.get(Pair.of(namespaceUri, "*"));
-    }
-    return extDescription;
+    // look for an explicit match of the namespace URI and local name, then
+    // for a match of the namespace URI with a wildcard local name
+    return profManifest.getExtensionDescription(namespaceUri, localName);
   }
 
   /**
@@ -623,7 +750,7 @@ public class ExtensionPoint extends AbstractExtension {
 
     boolean needsAdd = true;
     if (extension == null) {
-      extension = createExtensionInstance(extClass);
+      extension = extDescription.createExtension();
     } else {
       needsAdd = false;
     }
@@ -662,10 +789,12 @@ public class ExtensionPoint extends AbstractExtension {
       if (extDescription.isRequired()) {
         Class<? extends Extension> extClass =
             extDescription.getExtensionClass();
+        Map<Class<? extends Extension>, List<Extension>> repeatingMap =
+            existingRepeatingExtensions();
         boolean found =
-            (extDescription.isRepeatable() ? repeatingExtensionMap
-                .containsKey(extClass) : nonRepeatingExtensionMap
-                .containsKey(extClass));
+            (extDescription.isRepeatable() ? repeatingMap != null
+                && repeatingMap.containsKey(extClass)
+                : hasExtension(extClass));
         if (!found) {
           ParseException pe = new ParseException(
               CoreErrorDomain.ERR.missingExtensionElement);
@@ -691,6 +820,12 @@ public class ExtensionPoint extends AbstractExtension {
     protected boolean hasExtensions;
     protected ExtensionManifest extManifest;
 
+    /**
+     * {@code true} if the XML blob of the extension point was created for
+     * this handler, so it can be dropped if it remains empty.
+     */
+    private final boolean newXmlBlob;
+
 
     /**
      * Constructs a new Handler instance that process extensions on a class
@@ -726,6 +861,7 @@ public class ExtensionPoint extends AbstractExtension {
       if (this.extManifest != null) {
         hasExtensions = true;
       }
+      newXmlBlob = (existingXmlBlob() == null);
       initializeArbitraryXml(extProfile, extendedClass, this);
     }
 
@@ -753,6 +889,13 @@ public class ExtensionPoint extends AbstractExtension {
 
       super.processEndElement();
 
+      // Most elements contain no arbitrary XML, so the blob created to
+      // receive it is not retained.
+      XmlBlob blob = ExtensionPoint.this.xmlBlob;
+      if (newXmlBlob && blob != null && blob.isEmpty()) {
+        ExtensionPoint.this.xmlBlob = null;
+      }
+
       if (this.extManifest != null && isStrictValidation()) {
         checkRequiredExtensions(this.extManifest);
       }
@@ -762,16 +905,23 @@ public class ExtensionPoint extends AbstractExtension {
       // to validate against the full ExtensionPoint state (including
       // sibling Extension instances).
       //
-      for (Extension extension : nonRepeatingExtensionMap.values()) {
-        if (extension instanceof ValidatingExtension) {
-          ((ValidatingExtension) extension).validate(ExtensionPoint.this);
+      Map<Class<? extends Extension>, Extension> extMap = existingExtensions();
+      if (extMap != null) {
+        for (Extension extension : extMap.values()) {
+          if (extension instanceof ValidatingExtension) {
+            ((ValidatingExtension) extension).validate(ExtensionPoint.this);
+          }
         }
       }
 
-      for (List<Extension> extList : repeatingExtensionMap.values()) {
-        for (Extension extension : extList) {
-          if (extension instanceof ValidatingExtension) {
-            ((ValidatingExtension) extension).validate(ExtensionPoint.this);
+      Map<Class<? extends Extension>, List<Extension>> repeatingMap =
+          existingRepeatingExtensions();
+      if (repeatingMap != null) {
+        for (List<Extension> extList : repeatingMap.values()) {
+          for (Extension extension : extList) {
+            if (extension instanceof ValidatingExtension) {
+              ((ValidatingExtension) extension).validate(ExtensionPoint.this);
+            }
           }
         }
       }
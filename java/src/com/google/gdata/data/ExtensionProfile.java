@@ -40,6 +40,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Stack;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Specifies a complete extension profile for an extended GData schema.
@@ -112,24 +114,24 @@ public class ExtensionProfile {
     }
 
     ExtensionManifest manifest = getOrCreateManifest(extendedType);
-    profile.put(extendedType, manifest);
+    putManifest(extendedType, manifest);
 
     Pair<String, String> extensionQName =
         new Pair<String,String>(extDescription.getNamespace().getUri(),
             extDescription.getLocalName());
 
-    manifest.supportedExtensions.put(extensionQName, extDescription);
+    manifest.addExtension(extensionQName, extDescription);
 
     // Propagate the declarations down to any profiled subtypes.
     for(ExtensionManifest subclassManifest : manifest.subclassManifests) {
-      subclassManifest.supportedExtensions.put(extensionQName, extDescription);
+      subclassManifest.addExtension(extensionQName, extDescription);
     }
 
     if (extDescription.allowsArbitraryXml()) {
       Class<? extends ExtensionPoint> extType =
           (Class<? extends ExtensionPoint>) extDescription.getExtensionClass();
       ExtensionManifest extManifest = getOrCreateManifest(extType);
-      profile.put(extType, extManifest);
+      putManifest(extType, extManifest);
       declareArbitraryXmlExtension(extType, extDescription.allowsMixedContent());
     }
 
@@ -250,7 +252,7 @@ public class ExtensionProfile {
       subclassManifest.mixedContent = mixedContent;
     }
 
-    profile.put(extendedType, manifest);
+    putManifest(extendedType, manifest);
     nsDecls = null;
   }
 
@@ -292,6 +294,21 @@ public class ExtensionProfile {
    * its superclasses) or {@code null} if not specified.
    */
   public ExtensionManifest getManifest(Class<?> extendedType) {
+    if (extendedType == null) {
+      return null;
+    }
+    ConcurrentMap<Class<?>, ExtensionManifest> resolved = resolvedManifests;
+    ExtensionManifest manifest = resolved.get(extendedType);
+    if (manifest == null) {
+      manifest = findManifest(extendedType);
+      resolved.put(extendedType, manifest == null ? NO_MANIFEST : manifest);
+    }
+    return manifest == NO_MANIFEST ? null : manifest;
+  }
+
+
+  /** Looks up the manifest of a class, walking up its superclasses. */
+  private ExtensionManifest findManifest(Class<?> extendedType) {
     ExtensionManifest manifest = null;
     while (extendedType != null) {
       manifest = profile.get(extendedType);
@@ -303,6 +320,18 @@ public class ExtensionProfile {
   }
 
 
+  /** Associates a manifest with a type declared in the profile. */
+  private void putManifest(Class<?> extendedType,
+      ExtensionManifest manifest) {
+    profile.put(extendedType, manifest);
+
+    // Lookups in progress complete on the previous map, so cannot leave
+    // stale manifests in the new one.
+    resolvedManifests =
+        new ConcurrentHashMap<Class<?>, ExtensionManifest>();
+  }
+
+
   /**
    * Returns whether the given extended type has already been declared.  Note
    * that unlike {@link #getManifest(Class)}, it does not check the super
@@ -329,6 +358,20 @@ public class ExtensionProfile {
     new HashMap<Class<?>, ExtensionManifest>();
 
 
+  /**
+   * Manifests found by {@link #getManifest(Class)} for any class, including
+   * the classes with no manifest, which are mapped to {@link #NO_MANIFEST}.
+   * Replaced whenever a manifest is declared.
+   */
+  private volatile ConcurrentMap<Class<?>, ExtensionManifest>
+      resolvedManifests = new ConcurrentHashMap<Class<?>, ExtensionManifest>();
+
+
+  /** Placeholder for the classes with no manifest. */
+  private static final ExtensionManifest NO_MANIFEST =
+    new ExtensionManifest(ExtensionPoint.class);
+
+
   /** Additional namespaces. */
   private Collection<XmlNamespace> additionalNamespaces =
     new LinkedHashSet<XmlNamespace>();
@@ -410,8 +453,7 @@ public class ExtensionProfile {
     // to the subclass one so future declarations will propagate.
     while (!superManifests.empty()) {
       ExtensionManifest superManifest = superManifests.pop();
-      newManifest.supportedExtensions.putAll(
-          superManifest.supportedExtensions);
+      newManifest.addExtensions(superManifest);
       newManifest.arbitraryXml = superManifest.arbitraryXml;
       superManifest.subclassManifests.add(newManifest);
     }
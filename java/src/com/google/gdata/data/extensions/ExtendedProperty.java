@@ -162,7 +162,7 @@ public class ExtendedProperty extends ExtensionPoint {
   protected void initializeArbitraryXml(ExtensionProfile profile,
       Class<? extends ExtensionPoint> extPoint, ElementHandler handler) {
 
-      handler.initializeXmlBlob(xmlBlob,
+      handler.initializeXmlBlob(getXmlBlob(),
           /* mixedContent */ true,
           /* fullTextIndex */ false);
   }
@@ -27,7 +27,6 @@ import com.google.gdata.util.XmlParser.ElementHandler;
 import org.xml.sax.Attributes;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
@@ -195,14 +194,9 @@ public class CustomElementCollection implements Extension {
       throws IOException {
     
     for (Map.Entry<String, CustomElement> entry : values.entrySet()) {
-
-      ArrayList<XmlWriter.Attribute> attrs =
-        new ArrayList<XmlWriter.Attribute>();
-
-      // Attributes - if there were any
-      
+      // Custom elements have no attributes.
       w.simpleElement(Namespaces.gSpreadCustomNs, entry.getKey(),
-          attrs, entry.getValue().getValue());
+          null, entry.getValue().getValue());
     }
   }
   
@@ -91,7 +91,10 @@ final class AttributeMetadataRegistry {
     AttributeMetadata<D> transformed =
         (AttributeMetadata<D>) cache.get(transformKey);
 
-    if (transformed == null) {
+    if (transformed != null) {
+      schema.recordCacheHit();
+    } else {
+      schema.recordCacheMiss();
       AttributeTransform transform = getTransform(transformKey, key);
       transformed = transform.toMetadata(schema, parent, key, context);
       @SuppressWarnings("unchecked")
@@ -105,6 +108,13 @@ final class AttributeMetadataRegistry {
     return transformed;
   }
 
+  /**
+   * Returns the number of bound metadata instances in the cache.
+   */
+  int getCacheSize() {
+    return cache.size();
+  }
+
   /**
    * Provides direct access to the transform for other classes in this package,
    * to avoid circular dependencies causing infinite loops.  This allows
@@ -23,6 +23,7 @@ import com.google.gdata.util.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
 import com.google.common.collect.Sets;
 import com.google.gdata.util.common.xml.XmlNamespace;
 import com.google.gdata.model.ElementMetadata.Cardinality;
@@ -41,6 +42,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -75,6 +77,17 @@ public class Element {
   private static final Logger LOGGER =
       Logger.getLogger(Element.class.getName());
 
+  // Default keys found by getDefaultKey(), by element type.  Both keys and
+  // values refer to the element class, so neither is held strongly, to let
+  // the classes of unloaded class loaders be collected.
+  private static final ConcurrentMap<Class<?>, ElementKey<?, ?>> DEFAULT_KEYS =
+      new MapMaker().weakKeys().softValues().makeMap();
+
+  // Constructors used to create elements from their key only, by element
+  // type.  Looking them up is costly and would happen for each element parsed.
+  private static final ConcurrentMap<Class<?>, Constructor<?>> CONSTRUCTORS =
+      new MapMaker().weakKeys().softValues().makeMap();
+
   /**
    * Returns the default {@link ElementKey} for an {@link Element} type.
    *
@@ -85,10 +98,14 @@ public class Element {
 
     Preconditions.checkNotNull(type, "type");
 
+    ElementKey<?, ?> key = DEFAULT_KEYS.get(type);
+    if (key != null) {
+      return key;
+    }
+
     // The current approach used reflection based upon the implementation
     // pattern that every Element type will expose a static ElementKey field
     // named "KEY".
-    ElementKey<?, ?> key = null;
     try {
       Field keyField = type.getField("KEY");
       key = ElementKey.class.cast(keyField.get(null));
@@ -105,6 +122,9 @@ public class Element {
       throw new IllegalArgumentException("Unable to access KEY field:" + type,
           npe);
     }
+    if (key != null) {
+      DEFAULT_KEYS.put(type, key);
+    }
     return key;
   }
 
@@ -167,6 +187,14 @@ public class Element {
    */
   private final ElementState state;
 
+  /**
+   * The child elements that were already resolved, set while this element is
+   * resolved by {@link #resolveShallow} so that
+   * {@link #resolve(ElementMetadata, ValidationContext)} does not resolve them
+   * again.  Children added while resolving are still resolved.
+   */
+  private Set<Element> resolvedChildren;
+
   /**
    * Construct element and associate with a key.
    *
@@ -1126,12 +1154,16 @@ public class Element {
     narrowed.validate(metadata, vc);
 
     // Resolve all child elements.
+    Set<Element> skipped = resolvedChildren;
     Iterator<Element> childIterator = narrowed.getElementIterator();
     if (childIterator.hasNext()) {
       List<Pair<Element, Element>> replacements = Lists.newArrayList();
 
       while (childIterator.hasNext()) {
         Element child = childIterator.next();
+        if (skipped != null && skipped.contains(child)) {
+          continue;
+        }
         ElementMetadata<?, ?> childMeta = metadata.bindElement(
             child.getElementKey());
         Element resolved = child.resolve(childMeta, vc);
@@ -1148,6 +1180,33 @@ public class Element {
     return narrowed;
   }
 
+  /**
+   * Resolves this element's state against the metadata, like
+   * {@link #resolve(ElementMetadata, ValidationContext)}, but without
+   * resolving its child elements.  This is used by parsers that resolve each
+   * element once it has been parsed, when its child elements have already
+   * been resolved against the metadata.  Child elements added by the resolve
+   * of a subclass, such as a title derived from an attribute, are resolved.
+   *
+   * @param metadata the metadata to resolve against
+   * @param vc validation context
+   * @return the narrowed element if narrowing took place
+   */
+  public Element resolveShallow(ElementMetadata<?, ?> metadata,
+      ValidationContext vc) {
+    Set<Element> children = Sets.newIdentityHashSet();
+    Iterator<Element> childIterator = getElementIterator();
+    while (childIterator.hasNext()) {
+      children.add(childIterator.next());
+    }
+    resolvedChildren = children;
+    try {
+      return resolve(metadata, vc);
+    } finally {
+      resolvedChildren = null;
+    }
+  }
+
   /**
    * Narrow down element's type to the most specific one possible.
    * <p>
@@ -1349,7 +1408,11 @@ public class Element {
         && key.getElementType().isInstance(source)) {
       return key.getElementType().cast(source);
     }
-    
+
+    if (source == null) {
+      return createElementFromKey(key);
+    }
+
     Class<?>[] argTypes;
     Object[] args;
     Class<? extends E> elementClass = key.getElementType();
@@ -1391,6 +1454,49 @@ public class Element {
     }
   }
 
+  /**
+   * Constructs a new element from its key only, using the constructor that
+   * takes the key or else the null-arg constructor.  The constructor is looked
+   * up once per element type.
+   */
+  private static <E extends Element> E createElementFromKey(
+      ElementKey<?, E> key) throws ContentCreationException {
+
+    Class<? extends E> elementClass = key.getElementType();
+    try {
+      Constructor<?> ctc = CONSTRUCTORS.get(elementClass);
+      if (ctc == null) {
+        ctc = findConstructor(elementClass,
+            new Class<?>[] {ElementKey.class});
+        if (ctc == null) {
+          ctc = findConstructor(elementClass, new Class<?>[] {});
+        }
+        if (ctc == null) {
+          // Reports an error consistent with not finding a valid public
+          // constructor.
+          ctc = elementClass.getConstructor();
+        }
+        ctc.setAccessible(true);
+        CONSTRUCTORS.put(elementClass, ctc);
+      }
+      Object element = (ctc.getParameterTypes().length == 0)
+          ? ctc.newInstance() : ctc.newInstance(key);
+      return elementClass.cast(element);
+    } catch (NoSuchMethodException e) {
+      throw new ContentCreationException(
+          "Constructor not found: " + elementClass);
+    } catch (IllegalAccessException e) {
+      throw new ContentCreationException(
+          "Constructor not found: " + elementClass);
+    } catch (InstantiationException e) {
+      throw new ContentCreationException(
+          "Constructor not found: " + elementClass);
+    } catch (InvocationTargetException e) {
+      throw new ContentCreationException(
+          "Constructor not found: " + elementClass, e.getCause());
+    }
+  }
+
   /**
    * Attempt to construct an instance of the given class with the given args
    * and arg types.  Will set the constructor to accessible, allowing access
@@ -1400,14 +1506,10 @@ public class Element {
       Object[] args) throws SecurityException, NoSuchMethodException,
       InstantiationException, IllegalAccessException,
       InvocationTargetException {
-    @SuppressWarnings("unchecked")
-    Constructor<T>[] ctcs = (Constructor<T>[]) clazz.getDeclaredConstructors();
-    for (Constructor<T> ctc : ctcs) {
-      Class<?>[] paramTypes = ctc.getParameterTypes();
-      if (paramsValid(paramTypes, argTypes)) {
-        ctc.setAccessible(true);
-        return ctc.newInstance(args);
-      }
+    Constructor<? extends T> ctc = findConstructor(clazz, argTypes);
+    if (ctc != null) {
+      ctc.setAccessible(true);
+      return ctc.newInstance(args);
     }
 
     // We didn't find a constructor, this will report an error consistent
@@ -1415,6 +1517,22 @@ public class Element {
     return clazz.getConstructor(argTypes).newInstance(args);
   }
 
+  /**
+   * Returns the first declared constructor of the given class that accepts
+   * the given arg types, or {@code null} if there is none.
+   */
+  private static <T> Constructor<T> findConstructor(Class<T> clazz,
+      Class<?>[] argTypes) throws SecurityException {
+    @SuppressWarnings("unchecked")
+    Constructor<T>[] ctcs = (Constructor<T>[]) clazz.getDeclaredConstructors();
+    for (Constructor<T> ctc : ctcs) {
+      if (paramsValid(ctc.getParameterTypes(), argTypes)) {
+        return ctc;
+      }
+    }
+    return null;
+  }
+
   private static boolean paramsValid(Class<?>[] paramTypes,
       Class<?>[] argTypes) {
     if (paramTypes.length != argTypes.length) {
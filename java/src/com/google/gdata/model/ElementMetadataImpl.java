@@ -20,6 +20,7 @@ import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMap.Builder;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.MapMaker;
 import com.google.common.collect.Sets;
 import com.google.common.collect.Maps;
 import com.google.gdata.util.common.xml.XmlNamespace;
@@ -33,6 +34,7 @@ import java.util.Collection;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Immutable implementation of the element metadata.  This class delegates to
@@ -69,6 +71,16 @@ final class ElementMetadataImpl<D, E extends Element> extends MetadataImpl<D>
   /** Adaptation helper for dealing with adaptors on this element. */
   private final AdaptationRegistry adaptations;
 
+  /**
+   * The attributes and child elements bound under this element, by key, so
+   * binding them again while parsing or generating looks up the key instead
+   * of building a transform key for the registry.
+   */
+  private final ConcurrentMap<AttributeKey<?>, AttributeMetadata<?>>
+      boundAttributes = new MapMaker().makeMap();
+  private final ConcurrentMap<ElementKey<?, ?>, ElementMetadata<?, ?>>
+      boundElements = new MapMaker().makeMap();
+
   /**
    * Constructs a new immutable element metadata instance from the given
    * declared metadata.
@@ -374,7 +386,18 @@ final class ElementMetadataImpl<D, E extends Element> extends MetadataImpl<D>
   }
 
   public <K> AttributeMetadata<K> bindAttribute(AttributeKey<K> key) {
-    return schema.bind(sourceKey, key, context);
+    @SuppressWarnings("unchecked")
+    AttributeMetadata<K> bound =
+        (AttributeMetadata<K>) boundAttributes.get(key);
+    if (bound != null) {
+      schema.recordCacheHit();
+      return bound;
+    }
+    bound = schema.bind(sourceKey, key, context);
+    if (bound != null) {
+      boundAttributes.putIfAbsent(key, bound);
+    }
+    return bound;
   }
 
   public Iterator<Element> getElementIterator(Element element) {
@@ -385,10 +408,20 @@ final class ElementMetadataImpl<D, E extends Element> extends MetadataImpl<D>
     return elements.values();
   }
 
-  @SuppressWarnings("unchecked")
   public <K, L extends Element> ElementMetadata<K, L> bindElement(
       ElementKey<K, L> key) {
-    return schema.bind(sourceKey, key, context);
+    @SuppressWarnings("unchecked")
+    ElementMetadata<K, L> bound =
+        (ElementMetadata<K, L>) boundElements.get(key);
+    if (bound != null) {
+      schema.recordCacheHit();
+      return bound;
+    }
+    bound = schema.bind(sourceKey, key, context);
+    if (bound != null) {
+      boundElements.putIfAbsent(key, bound);
+    }
+    return bound;
   }
 
   @Override
@@ -80,7 +80,10 @@ final class ElementMetadataRegistry {
     ElementMetadata<D, E> transformed =
         (ElementMetadata<D, E>) cache.get(transformKey);
 
-    if (transformed == null) {
+    if (transformed != null) {
+      schema.recordCacheHit();
+    } else {
+      schema.recordCacheMiss();
       ElementTransform transform = getTransform(transformKey, key);
       transformed = transform.toMetadata(schema, parent, key, context);
       @SuppressWarnings("unchecked")
@@ -94,6 +97,13 @@ final class ElementMetadataRegistry {
     return transformed;
   }
 
+  /**
+   * Returns the number of bound metadata instances in the cache.
+   */
+  int getCacheSize() {
+    return cache.size();
+  }
+
   /**
    * Provides direct access to the transform for other classes in this package,
    * to avoid circular dependencies causing infinite loops.  This allows
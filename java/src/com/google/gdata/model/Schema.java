@@ -21,6 +21,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMap.Builder;
 
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * An immutable set of metadata.  Stores an entire tree of metadata about a
@@ -63,6 +64,12 @@ public final class Schema {
   // The attribute registries store the actual data, this map is immutable.
   private final Map<RootKey, AttributeMetadataRegistry> attributes;
 
+  // Number of bindings served from a cache, and created.  Hits are on the
+  // path of every bind, so they are only counted while enabled.
+  private volatile boolean countingCacheHits;
+  private final AtomicLong cacheHits = new AtomicLong();
+  private final AtomicLong cacheMisses = new AtomicLong();
+
   /**
    * Create a schema from the given metadata registry.
    */
@@ -101,6 +108,63 @@ public final class Schema {
     return elementBuilder.build();
   }
 
+  /**
+   * Enables or disables counting the bindings served from a cache, which is
+   * disabled by default.  Every bind of a parse or generate is a hit once
+   * the schema is warm, so counting them adds a write shared by all the
+   * threads using the schema.
+   *
+   * @param enabled {@code true} to count cache hits
+   * @see #getMetadataCacheHitCount()
+   */
+  public void setCountingCacheHits(boolean enabled) {
+    countingCacheHits = enabled;
+  }
+
+  /**
+   * Returns the number of element and attribute bindings that were served
+   * from a cache, either the bindings of a parent element's metadata or the
+   * cache of this schema, while counting them was enabled.
+   *
+   * @see #setCountingCacheHits(boolean)
+   */
+  public long getMetadataCacheHitCount() {
+    return cacheHits.get();
+  }
+
+  /**
+   * Returns the number of element and attribute bindings that created new
+   * metadata.
+   */
+  public long getMetadataCacheMissCount() {
+    return cacheMisses.get();
+  }
+
+  /**
+   * Returns the number of element and attribute metadata instances bound in
+   * this schema.
+   */
+  public int getMetadataCacheSize() {
+    int size = 0;
+    for (ElementMetadataRegistry registry : elements.values()) {
+      size += registry.getCacheSize();
+    }
+    for (AttributeMetadataRegistry registry : attributes.values()) {
+      size += registry.getCacheSize();
+    }
+    return size;
+  }
+
+  void recordCacheHit() {
+    if (countingCacheHits) {
+      cacheHits.incrementAndGet();
+    }
+  }
+
+  void recordCacheMiss() {
+    cacheMisses.incrementAndGet();
+  }
+
   /**
    * Returns the default metadata for the element key.
    */
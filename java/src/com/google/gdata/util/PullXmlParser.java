@@ -0,0 +1,289 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.util;
+
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * An xml parser driven by its caller one event at a time, instead of parsing
+ * a whole document in a single call.  The caller can examine the state built
+ * by the element handlers between events, which allows large documents to
+ * be consumed incrementally.
+ * <p>
+ * Events are read from a StAX {@link XMLStreamReader} and passed to the same
+ * callbacks as in a SAX parse, so element handlers behave as they do with
+ * {@link XmlParser}.  DTDs and external entities are not processed.
+ */
+public class PullXmlParser extends XmlParser {
+
+  private static final Logger LOGGER =
+      Logger.getLogger(PullXmlParser.class.getName());
+
+  // The factory creating StAX readers, shared by all parsers.
+  private static volatile XMLInputFactory inputFactory;
+
+  /** Returns the shared StAX factory, creating it on first use. */
+  private static XMLInputFactory getInputFactory() {
+    XMLInputFactory factory = inputFactory;
+    if (factory == null) {
+      factory = XMLInputFactory.newInstance();
+      factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+      factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+      factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+          Boolean.FALSE);
+      inputFactory = factory;
+    }
+    return factory;
+  }
+
+  private final XMLStreamReader reader;
+
+  /** Attributes of the current element, reused between elements. */
+  private final AttributesImpl attributes = new AttributesImpl();
+
+  /** Number of elements currently open. */
+  private int depth;
+
+  /** {@code true} once the end of the document was reached. */
+  private boolean done;
+
+  /**
+   * Constructs a parser for a document.  Nothing is read from {@code input}
+   * until {@link #next()} is called.
+   *
+   * @param   input
+   *            Supplies the XML to parse.
+   *
+   * @param   rootHandler
+   *            The root element handler corresponding to the expected document
+   *            type.
+   *
+   * @param   rootNamespace
+   *            Root element namespace URI.
+   *
+   * @param   rootElementName
+   *            Root element name.
+   *
+   * @throws  ParseException
+   *            The parser could not be created.
+   */
+  public PullXmlParser(Reader input,
+                       ElementHandler rootHandler,
+                       String rootNamespace,
+                       String rootElementName)
+      throws ParseException {
+
+    this.rootHandler = rootHandler;
+    this.rootNamespace = rootNamespace;
+    this.rootElementName = rootElementName;
+    try {
+      reader = getInputFactory().createXMLStreamReader(input);
+    } catch (XMLStreamException e) {
+      throw new ParseException(e);
+    }
+    setDocumentLocator(new StreamLocator());
+  }
+
+
+  /**
+   * Returns the number of elements currently open: 1 while inside the root
+   * element, 2 inside one of its children, and so on.
+   */
+  public int getDepth() {
+    return depth;
+  }
+
+
+  /**
+   * Returns {@code true} once the end of the document was reached.
+   */
+  public boolean isDone() {
+    return done;
+  }
+
+
+  /**
+   * Reads the next parsing event and passes it to the element handlers.
+   *
+   * @return  {@code false} if the end of the document was reached.
+   *
+   * @throws  IOException
+   *            Error reading the XML.
+   *
+   * @throws  ParseException
+   *            XML failed to validate against the schema implemented by
+   *            the root handler.
+   */
+  public boolean next() throws IOException, ParseException {
+
+    if (done) {
+      return false;
+    }
+
+    try {
+      switch (reader.next()) {
+
+        case XMLStreamConstants.START_ELEMENT:
+          startElement();
+          break;
+
+        case XMLStreamConstants.END_ELEMENT:
+          endElement();
+          break;
+
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.CDATA:
+          characters(reader.getTextCharacters(), reader.getTextStart(),
+              reader.getTextLength());
+          break;
+
+        case XMLStreamConstants.SPACE:
+          ignorableWhitespace(reader.getTextCharacters(),
+              reader.getTextStart(), reader.getTextLength());
+          break;
+
+        case XMLStreamConstants.END_DOCUMENT:
+          done = true;
+          break;
+
+        default:
+          // Comments, processing instructions and DTDs are ignored.
+          break;
+      }
+    } catch (XMLStreamException e) {
+      Throwable cause = e.getNestedException();
+      if (cause instanceof IOException) {
+        LogUtils.logException(LOGGER, Level.WARNING, null, e);
+        throw (IOException) cause;
+      }
+      LogUtils.logException(LOGGER, Level.FINE, null, e);
+      throw new ParseException(e.getMessage(), e);
+    } catch (SAXException e) {
+      Exception rootException = e.getException();
+      if (rootException instanceof ParseException) {
+        throwParseException((ParseException) rootException);
+      } else if (rootException instanceof IOException) {
+        LogUtils.logException(LOGGER, Level.WARNING, null, e);
+        throw (IOException) rootException;
+      } else {
+        LogUtils.logException(LOGGER, Level.FINE, null, e);
+        throw new ParseException(e);
+      }
+    }
+    return !done;
+  }
+
+
+  /**
+   * Releases the resources held by the parser.  The underlying reader is not
+   * closed.
+   */
+  public void close() {
+    done = true;
+    try {
+      reader.close();
+    } catch (XMLStreamException e) {
+      LogUtils.logException(LOGGER, Level.FINE, null, e);
+    }
+  }
+
+
+  /** Passes a start element event to the SAX callbacks. */
+  private void startElement() throws SAXException {
+
+    for (int i = 0; i < reader.getNamespaceCount(); i++) {
+      startPrefixMapping(nullToEmpty(reader.getNamespacePrefix(i)),
+          nullToEmpty(reader.getNamespaceURI(i)));
+    }
+
+    attributes.clear();
+    for (int i = 0; i < reader.getAttributeCount(); i++) {
+      String prefix = reader.getAttributePrefix(i);
+      String localName = reader.getAttributeLocalName(i);
+      attributes.addAttribute(nullToEmpty(reader.getAttributeNamespace(i)),
+          localName, qName(prefix, localName), reader.getAttributeType(i),
+          reader.getAttributeValue(i));
+    }
+
+    String localName = reader.getLocalName();
+    depth++;
+    startElement(nullToEmpty(reader.getNamespaceURI()), localName,
+        qName(reader.getPrefix(), localName), attributes);
+  }
+
+
+  /** Passes an end element event to the SAX callbacks. */
+  private void endElement() throws SAXException {
+
+    String localName = reader.getLocalName();
+    depth--;
+    endElement(nullToEmpty(reader.getNamespaceURI()), localName,
+        qName(reader.getPrefix(), localName));
+
+    // On an end element, the reader reports the declarations going out of
+    // scope.
+    for (int i = 0; i < reader.getNamespaceCount(); i++) {
+      endPrefixMapping(nullToEmpty(reader.getNamespacePrefix(i)));
+    }
+  }
+
+
+  private static String qName(String prefix, String localName) {
+    if (prefix == null || prefix.length() == 0) {
+      return localName;
+    }
+    return prefix + ":" + localName;
+  }
+
+
+  private static String nullToEmpty(String value) {
+    return value == null ? "" : value;
+  }
+
+
+  /** Reports the location of the stream reader. */
+  private class StreamLocator implements Locator {
+
+    public String getPublicId() {
+      return reader.getLocation().getPublicId();
+    }
+
+    public String getSystemId() {
+      return reader.getLocation().getSystemId();
+    }
+
+    public int getLineNumber() {
+      return reader.getLocation().getLineNumber();
+    }
+
+    public int getColumnNumber() {
+      return reader.getLocation().getColumnNumber();
+    }
+  }
+}
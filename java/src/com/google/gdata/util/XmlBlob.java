@@ -61,17 +61,19 @@ public class XmlBlob {
 
   /**
    * Namespace declarations inherited when this blob was parsed but used
-   * within it.
+   * within it, or {@code null} until one is added.
    */
-  protected LinkedList<XmlNamespace> namespaces =
-    new LinkedList<XmlNamespace>();
+  protected LinkedList<XmlNamespace> namespaces;
 
   public List<XmlNamespace> getNamespaces() {
+    if (namespaces == null) {
+      namespaces = new LinkedList<XmlNamespace>();
+    }
     return namespaces;
   }
 
   public boolean addNamespace(XmlNamespace namespace) {
-    return namespaces.add(namespace);
+    return getNamespaces().add(namespace);
   }
 
 
@@ -93,6 +95,16 @@ public class XmlBlob {
   public void setFullText(String v) { fullText = v; }
 
 
+  /**
+   * Returns {@code true} if the blob holds no content, attributes or
+   * namespace declarations.
+   */
+  public boolean isEmpty() {
+    return blob == null && lang == null && base == null && fullText == null
+        && (namespaces == null || namespaces.isEmpty());
+  }
+
+
   /** Generates an element opening tag containing an XML blob. */
   public static void startElement(XmlWriter w,
                                   XmlNamespace namespace,
@@ -131,26 +143,29 @@ public class XmlBlob {
         attrs = additionalAttrs;
       }
 
-      List<XmlNamespace> blobNamespaces = xml.getNamespaces();
+      List<XmlNamespace> blobNamespaces = xml.namespaces;
+      int blobNsSize = (blobNamespaces == null ? 0 : blobNamespaces.size());
       int additionalNsSize = (additionalNs == null ? 0 : additionalNs.size());
 
-      if (blobNamespaces.size() == 0 && additionalNsSize == 0) {
+      if (blobNsSize == 0 && additionalNsSize == 0) {
 
         namespaces = null;
 
       } else {
 
         namespaces = new ArrayList<XmlNamespace>(additionalNsSize +
-                                                 blobNamespaces.size());
+                                                 blobNsSize);
 
         // Blob namespaces have to go first, because we depend on their aliases
         // being preserved. If an additional namespace has a conflicting alias,
         // we want the additional namespace to get an arbitrarily generated
         // alias, not the blob's.
 
-        for (XmlNamespace blobNs : blobNamespaces) {
-          namespaces.add(new XmlNamespace(blobNs.getAlias(),
-                                          blobNs.getUri()));
+        if (blobNamespaces != null) {
+          for (XmlNamespace blobNs : blobNamespaces) {
+            namespaces.add(new XmlNamespace(blobNs.getAlias(),
+                                            blobNs.getUri()));
+          }
         }
 
         if (additionalNs != null) {
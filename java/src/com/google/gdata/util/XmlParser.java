@@ -24,6 +24,7 @@ import com.google.gdata.util.common.xml.parsing.SecureGenericXMLFactory;
 import com.google.gdata.client.CoreErrorDomain;
 
 import org.xml.sax.Attributes;
+import org.xml.sax.EntityResolver;
 import org.xml.sax.InputSource;
 import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
@@ -80,7 +81,11 @@ public class XmlParser extends DefaultHandler {
 
 
   // The SAXParserFactory used to create underlying SAXParser instances.
-  private static SAXParserFactory parserFactory;
+  private static volatile SAXParserFactory parserFactory;
+
+  // The SAX parser cached for reuse by parses on the current thread.
+  private static final ThreadLocal<CachedParser> cachedParser =
+      new ThreadLocal<CachedParser>();
 
   // Always return secure SAX parser, which is secured against XXE attacks
   private static SAXParserFactory getSAXParserFactory()
@@ -107,6 +112,97 @@ public class XmlParser extends DefaultHandler {
     return factory;
   }
 
+  /** Returns the shared parser factory, creating it on first use. */
+  private static SAXParserFactory getParserFactory()
+      throws ParserConfigurationException, SAXException {
+    SAXParserFactory factory = parserFactory;
+    if (factory == null) {
+      synchronized (XmlParser.class) {
+        factory = parserFactory;
+        if (factory == null) {
+          factory = getSAXParserFactory();
+          parserFactory = factory;
+        }
+      }
+    }
+    return factory;
+  }
+
+
+  /**
+   * A SAX parser and its adapter, reused across the documents parsed on a
+   * single thread. Parser construction and the secure feature setup are
+   * costly compared to parsing a small document.
+   */
+  private static class CachedParser {
+
+    private final SAXParser saxParser;
+    private final ParserAdapter adapter;
+
+    // The entity resolver installed by the secure parser factory, which
+    // SAXParser.reset() would otherwise discard.
+    private final EntityResolver entityResolver;
+
+    // True while the parser is parsing a document.
+    private boolean inUse;
+
+    CachedParser() throws ParserConfigurationException, SAXException {
+      SAXParserFactory factory = getParserFactory();
+      synchronized (factory) {
+        saxParser = factory.newSAXParser();
+      }
+      entityResolver = saxParser.getXMLReader().getEntityResolver();
+      adapter = new ParserAdapter(saxParser.getParser());
+    }
+
+    /**
+     * Restores the parser to its initial state so that it can parse another
+     * document and does not retain the previous content handler.
+     *
+     * @return {@code true} if the parser can be reused.
+     */
+    boolean reset() {
+      adapter.setContentHandler(null);
+      try {
+        saxParser.reset();
+        saxParser.getXMLReader().setEntityResolver(entityResolver);
+        return true;
+      } catch (UnsupportedOperationException e) {
+        return false;
+      } catch (SAXException e) {
+        return false;
+      }
+    }
+  }
+
+
+  /**
+   * Returns a parser for exclusive use by the caller. The cached parser of
+   * the current thread is used unless it is already parsing a document (on a
+   * nested parse), in which case a new one is created.
+   */
+  private static CachedParser acquireParser()
+      throws ParserConfigurationException, SAXException {
+    CachedParser parser = cachedParser.get();
+    if (parser == null || parser.inUse) {
+      parser = new CachedParser();
+      if (cachedParser.get() == null) {
+        cachedParser.set(parser);
+      }
+    }
+    parser.inUse = true;
+    return parser;
+  }
+
+
+  /** Resets a parser obtained from {@link #acquireParser()}. */
+  private static void releaseParser(CachedParser parser) {
+    if (!parser.reset() && cachedParser.get() == parser) {
+      cachedParser.remove();
+    }
+    parser.inUse = false;
+  }
+
 
   /**
    * Base class for custom element handlers.
@@ -193,8 +289,8 @@ public class XmlParser extends DefaultHandler {
     XmlWriter innerXml;
 
 
-    /** Namespaces used by this blob. */
-    Set<String> blobNamespaces = new HashSet<String>();
+    /** Namespaces used by this blob, allocated on first use. */
+    Set<String> blobNamespaces;
 
 
     /** String writer underlying {@link #innerXml}. */
@@ -293,8 +389,10 @@ public class XmlParser extends DefaultHandler {
         pe.setInternalReason("Unrecognized element '" + localName + "'.");
         throw pe;
       } else {
-        logger.fine("No child handler for " + localName +
-                    ". Treating as arbitrary foreign XML.");
+        if (logger.isLoggable(Level.FINE)) {
+          logger.fine("No child handler for " + localName +
+                      ". Treating as arbitrary foreign XML.");
+        }
         return null;
       }
     }
@@ -512,6 +610,15 @@ public class XmlParser extends DefaultHandler {
   /** Document locator used to get line and column numbers for SAX events. */
   Locator locator;
 
+
+  /** Largest text buffer capacity that is recycled between elements. */
+  private static final int MAX_RECYCLED_TEXT_BUFFER = 8192;
+
+
+  /** Text buffers released by completed elements, reused by new ones. */
+  private final List<StringBuilder> textBuffers =
+      new ArrayList<StringBuilder>();
+
   /**
    * Used to track namespace declarations seen within the current parse
    * stream.
@@ -676,22 +783,12 @@ public class XmlParser extends DefaultHandler {
       throws IOException,
              ParseException {
 
+    CachedParser parser = null;
     try {
 
-      // Lazy initialization of the parser factory.  There is a minor
-      // init-time race condition here if two parsers are created
-      // simultaneously, but the getSAXParserFactory() impl is thread-safe
-      // and worse case scenario is that multiple parser factories are
-      // initially created during the race.  Double-checked locking bug
-      // makes it harder to do better w/out significant overhead.
-      if (parserFactory == null) {
-        parserFactory = getSAXParserFactory();
-      }
-
-      SAXParser sp = parserFactory.newSAXParser();
-      ParserAdapter pa = new ParserAdapter(sp.getParser());
-      pa.setContentHandler(this);
-      pa.parse(is);
+      parser = acquireParser();
+      parser.adapter.setContentHandler(this);
+      parser.adapter.parse(is);
 
     } catch (SAXException e) {
 
@@ -715,6 +812,10 @@ public class XmlParser extends DefaultHandler {
 
         LogUtils.logException(logger, Level.WARNING, null, e);
         throw new ParseException(e);
+    } finally {
+      if (parser != null) {
+        releaseParser(parser);
+      }
     }
   }
 
@@ -795,7 +896,9 @@ public class XmlParser extends DefaultHandler {
                            String qName,
                            Attributes attrs) throws SAXException {
 
-    logger.fine("Start element " + qName);
+    if (logger.isLoggable(Level.FINE)) {
+      logger.fine("Start element " + qName);
+    }
 
     ElementHandler parentHandler = curHandler;
 
@@ -856,13 +959,17 @@ public class XmlParser extends DefaultHandler {
             if (attrLocalName.equals("lang")) {
 
               curHandler.xmlLang = attrValue;
-              logger.finer("xml:lang=" + attrValue);
+              if (logger.isLoggable(Level.FINER)) {
+                logger.finer("xml:lang=" + attrValue);
+              }
 
             } else if (attrLocalName.equals("base")) {
 
               curHandler.xmlBase = getCumulativeXmlBase(curHandler.xmlBase,
                                                         attrValue);
-              logger.finer("xml:base=" + curHandler.xmlBase);
+              if (logger.isLoggable(Level.FINER)) {
+                logger.finer("xml:base=" + curHandler.xmlBase);
+              }
             }
           }
         }
@@ -875,7 +982,9 @@ public class XmlParser extends DefaultHandler {
           String attrLocalName = attrs.getLocalName(i);
           String attrValue = attrs.getValue(i);
 
-          logger.finer("Attribute " + attrLocalName + "='" + attrValue + "'");
+          if (logger.isLoggable(Level.FINER)) {
+            logger.finer("Attribute " + attrLocalName + "='" + attrValue + "'");
+          }
 
           curHandler.processAttribute(
               attrNamespace, attrQName, attrLocalName, attrValue);
@@ -974,7 +1083,9 @@ public class XmlParser extends DefaultHandler {
   public void endElement(String namespace, String localName, String qName)
       throws SAXException {
 
-    logger.fine("End element " + qName);
+    if (logger.isLoggable(Level.FINE)) {
+      logger.fine("End element " + qName);
+    }
 
     if (unrecognizedElements > 0) {
 
@@ -1007,7 +1118,8 @@ public class XmlParser extends DefaultHandler {
         if (curHandler.buffer != null) {
           curHandler.value = curHandler.buffer.toString();
 
-          // Free the memory associated with the buffer.
+          // Recycle the buffer for the next element.
+          releaseTextBuffer(curHandler.buffer);
           curHandler.buffer = null;
         }
         curHandler.processEndElement();
@@ -1019,6 +1131,28 @@ public class XmlParser extends DefaultHandler {
     }
   }
 
+  /**
+   * Returns an empty buffer for accumulating the text() value of an element,
+   * recycling one released by a previously completed element if possible.
+   */
+  private StringBuilder acquireTextBuffer() {
+    int size = textBuffers.size();
+    if (size > 0) {
+      return textBuffers.remove(size - 1);
+    }
+    return new StringBuilder();
+  }
+
+
+  /** Recycles a text buffer, unless it has grown too large to keep. */
+  private void releaseTextBuffer(StringBuilder buffer) {
+    if (buffer.capacity() <= MAX_RECYCLED_TEXT_BUFFER) {
+      buffer.setLength(0);
+      textBuffers.add(buffer);
+    }
+  }
+
+
   /** SAX callback. */
   @Override
   public void characters(char[] text, int start, int len) throws SAXException {
@@ -1028,7 +1162,7 @@ public class XmlParser extends DefaultHandler {
       if (unrecognizedElements == 0) {
 
         if (curHandler.buffer == null) {
-          curHandler.buffer = new StringBuilder();
+          curHandler.buffer = acquireTextBuffer();
         }
 
         curHandler.buffer.append(text, start, len);
@@ -1043,7 +1177,7 @@ public class XmlParser extends DefaultHandler {
         }
 
         try {
-          curHandler.innerXml.characters(new String(text, start, len));
+          curHandler.innerXml.characters(text, start, len);
         } catch (IOException e) {
           throw new SAXException(e);
         }
@@ -1061,7 +1195,7 @@ public class XmlParser extends DefaultHandler {
         (curHandler.mixedContent || unrecognizedElements > 0)) {
 
       try {
-        curHandler.innerXml.writeUnescaped(new String(text, start, len));
+        curHandler.innerXml.writeUnescaped(text, start, len);
       } catch (IOException e) {
         throw new SAXException(e);
       }
@@ -1126,9 +1260,13 @@ public class XmlParser extends DefaultHandler {
     // Make sure the namespace is described within the blob if it was
     // originally declared externally to it
     if (nsDecl != null && !nsDecl.inBlob && nsDecl.ns != null &&
-        !handler.blobNamespaces.contains(alias)) {
+        (handler.blobNamespaces == null ||
+         !handler.blobNamespaces.contains(alias))) {
+      if (handler.blobNamespaces == null) {
+        handler.blobNamespaces = new HashSet<String>();
+      }
       handler.blobNamespaces.add(alias);
-      handler.xmlBlob.namespaces.add(
+      handler.xmlBlob.addNamespace(
           new XmlNamespace(alias, nsDecl.ns.getUri()));
     }
   }
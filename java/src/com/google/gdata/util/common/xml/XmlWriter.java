@@ -24,11 +24,9 @@ import java.io.IOException;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.EmptyStackException;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Set;
-import java.util.Stack;
 
 /**
  * Implements a simple XML writer on top of java.io.PrintWriter.
@@ -294,6 +292,22 @@ public class XmlWriter {
       this.name = name;
     }
 
+    /**
+     * Reinitializes a closed element so it can describe another element with
+     * the same namespace uri and name, as if it had just been constructed.
+     */
+    void reset(String nsAlias) {
+      nsDecls.clear();
+      this.nsAlias = nsAlias;
+      xmlLang = null;
+      hasAttributes = false;
+      unformattedChildren = false;
+      repeatingCount = NOT_REPEATING;
+      repeatingIndex = NOT_REPEATING;
+      enclosingDefaultNamespace = null;
+      openTagEnded = false;
+    }
+
     /**
      * Adds a namespace declaration to the element, avoiding duplicates.
      */
@@ -315,7 +329,33 @@ public class XmlWriter {
   /**
    * Stack of currently opened elements.
    */
-  private final Stack<Element> elementStack;
+  private final ArrayList<Element> elementStack;
+
+  /**
+   * Closed elements available for reuse, so that the number of elements
+   * allocated depends on the vocabulary and nesting depth of the document
+   * rather than its size.  An element is only reused for another element
+   * with the same namespace uri and name, which are final.  Only instances of
+   * {@link Element} itself are reused, as subclasses may hold state that
+   * {@link Element#reset} does not know about.  A single list is scanned
+   * rather than indexed by name, as it stays short and writers that only
+   * write a few elements, such as those capturing arbitrary XML while
+   * parsing, should not pay for an index.
+   */
+  private final ArrayList<Element> freeElements = new ArrayList<Element>();
+
+  /**
+   * Largest size of {@link #textBuffer}; longer strings are copied in chunks.
+   */
+  private static final int MAX_TEXT_BUFFER = 1024;
+
+  /**
+   * Buffer the strings written by {@link #writeEscaped} are copied to.  It is
+   * allocated on first use and grows up to {@link #MAX_TEXT_BUFFER}, so that
+   * the short-lived writers that capture arbitrary XML while parsing only
+   * pay for the text they write.
+   */
+  private char[] textBuffer;
 
   /**
    * Current default namespace.
@@ -375,10 +415,10 @@ public class XmlWriter {
      * the root element without requiring special case handling of an
      * empty element stack.
      */
-    this.elementStack = new Stack<Element>();
+    this.elementStack = new ArrayList<Element>();
     Element rootElement = createElement(null, null, null);
     rootElement.openTagEnded = true;
-    elementStack.push(rootElement);
+    elementStack.add(rootElement);
   }
 
   /**
@@ -455,11 +495,25 @@ public class XmlWriter {
    * written.
    */
   protected Element currentElement() {
-    try {
-      return elementStack.peek();
-    } catch (EmptyStackException e) {
-      return null;
+    int size = elementStack.size();
+    return (size == 0) ? null : elementStack.get(size - 1);
+  }
+
+  /**
+   * Returns an element describing an XML element that is about to be
+   * written, reusing a closed element if possible.
+   */
+  private Element obtainElement(String nsAlias, String nsUri, String name) {
+    for (int i = freeElements.size() - 1; i >= 0; i--) {
+      Element element = freeElements.get(i);
+      if (name.equals(element.name) && (nsUri == null
+          ? element.nsUri == null : nsUri.equals(element.nsUri))) {
+        freeElements.remove(i);
+        element.reset(nsAlias);
+        return element;
+      }
     }
+    return createElement(nsAlias, nsUri, name);
   }
 
   /**
@@ -508,9 +562,9 @@ public class XmlWriter {
 
     Element element;
     if (namespace != null) {
-      element = createElement(namespace.alias, namespace.uri, name);
+      element = obtainElement(namespace.alias, namespace.uri, name);
     } else {
-      element = createElement(null, null, name);
+      element = obtainElement(null, null, name);
     }
 
     Element parentElement = currentElement();
@@ -526,7 +580,7 @@ public class XmlWriter {
       }
     }
 
-    elementStack.push(element);
+    elementStack.add(element);
 
     if (nextDefaultNamespace != null) {
       XmlNamespace defaultNs = new XmlNamespace(nextDefaultNamespace);
@@ -616,7 +670,10 @@ public class XmlWriter {
     Element element = currentElement();
     writeCloseTag(element.nsAlias, element.name);
     defaultNamespace = element.enclosingDefaultNamespace;
-    elementStack.pop();
+    elementStack.remove(elementStack.size() - 1);
+    if (element.getClass() == Element.class && element.name != null) {
+      freeElements.add(element);
+    }
 
     // Write the footer if we're down to just the dummy element.
     if (elementStack.size() == 1) {
@@ -965,7 +1022,7 @@ public class XmlWriter {
     writer.write('=');
     writer.write('\'');
     if (value != null) {
-      writer.write(StringUtil.xmlEscape(value));
+      writeEscaped(value, ATTRIBUTE);
     }
     writer.write('\'');
   }
@@ -995,13 +1052,141 @@ public class XmlWriter {
     }
     endOpenTag();
     currentElement().unformattedChildren = true;
-    String escaped;
     if (useCData) {
-      escaped = "<![CDATA[" + StringUtil.xmlCDataEscape(s) + "]]>";
+      writer.write("<![CDATA[");
+      writeEscaped(s, CDATA);
+      writer.write("]]>");
     } else {
-      escaped = StringUtil.xmlContentEscape(s);
+      writeEscaped(s, CONTENT);
     }
-    writer.write(escaped);
+  }
+
+  /**
+   * Emits a range of character data subject to XML escaping. The characters
+   * are escaped directly into the underlying writer.
+   *
+   * @param text buffer holding the characters to emit.
+   * @param start index of the first character to emit.
+   * @param len number of characters to emit.
+   * @throws IOException thrown by the underlying writer.
+   */
+  public void characters(char[] text, int start, int len) throws IOException {
+    endOpenTag();
+    currentElement().unformattedChildren = true;
+    writeEscaped(text, start, start + len, CONTENT, 0);
+  }
+
+  // Escaping modes of writeEscaped.
+  private static final int CONTENT = 0;
+  private static final int ATTRIBUTE = 1;
+  private static final int CDATA = 2;
+
+  /**
+   * Escapes a string directly into the underlying writer, in the same way
+   * as {@link StringUtil#xmlContentEscape}, {@link StringUtil#xmlEscape} or
+   * {@link StringUtil#xmlCDataEscape} depending on the mode, but without
+   * building the escaped string.
+   */
+  private void writeEscaped(String s, int mode) throws IOException {
+    int length = s.length();
+    int needed = Math.min(length, MAX_TEXT_BUFFER);
+    if (textBuffer == null || textBuffer.length < needed) {
+      int size = (textBuffer == null) ? 64 : 2 * textBuffer.length;
+      textBuffer = new char[Math.min(Math.max(size, needed), MAX_TEXT_BUFFER)];
+    }
+    int brackets = 0;
+    for (int offset = 0; offset < length; offset += textBuffer.length) {
+      int count = Math.min(textBuffer.length, length - offset);
+      s.getChars(offset, offset + count, textBuffer, 0);
+      brackets = writeEscaped(textBuffer, 0, count, mode, brackets);
+    }
+  }
+
+  /**
+   * Escapes a range of characters directly into the underlying writer.
+   * Runs of characters that need no escaping are written as they are.
+   *
+   * @param brackets number of consecutive ']' written just before the range
+   *     in {@link #CDATA} mode
+   * @return number of consecutive ']' ending the range in {@link #CDATA} mode
+   */
+  private int writeEscaped(char[] text, int start, int end, int mode,
+      int brackets) throws IOException {
+    int runStart = start;
+    for (int i = start; i < end; i++) {
+      char c = text[i];
+      String replacement;
+      if (mode == CDATA) {
+        if (c == '>' && brackets >= 2) {
+          // Closes the section after "]]>" and reopens it after an escaped
+          // copy, as "]]>" cannot appear in a CDATA section.
+          writer.write(text, runStart, i + 1 - runStart);
+          writer.write("]]&gt;<![CDATA[");
+          runStart = i + 1;
+          brackets = 0;
+          continue;
+        }
+        if (!isControl(c) && c != '\uFFFE' && c != '\uFFFF') {
+          brackets = (c == ']') ? brackets + 1 : 0;
+          continue;
+        }
+        // Disallowed character, drop it.
+        replacement = null;
+      } else {
+        replacement = getReplacement(c, mode == ATTRIBUTE);
+        if (replacement == NO_REPLACEMENT) {
+          continue;
+        }
+      }
+      writer.write(text, runStart, i - runStart);
+      if (replacement != null) {
+        writer.write(replacement);
+      }
+      runStart = i + 1;
+    }
+    writer.write(text, runStart, end - runStart);
+    return brackets;
+  }
+
+  /** Marker for characters written as they are. */
+  private static final String NO_REPLACEMENT = "";
+
+  /**
+   * Returns the escaped form of a character, {@link #NO_REPLACEMENT} if it
+   * needs no escaping, or {@code null} if it must be dropped.
+   */
+  private static String getReplacement(char c, boolean attribute) {
+    switch (c) {
+      case '&':
+        return "&amp;";
+      case '<':
+        return "&lt;";
+      case '\t':
+        return attribute ? "&#x9;" : NO_REPLACEMENT;
+      case '\n':
+        return attribute ? "&#xA;" : NO_REPLACEMENT;
+      case '\r':
+        return attribute ? "&#xD;" : NO_REPLACEMENT;
+      case '"':
+        return attribute ? "&quot;" : NO_REPLACEMENT;
+      case '\'':
+        return attribute ? "&apos;" : NO_REPLACEMENT;
+      case '>':
+        return attribute ? "&gt;" : NO_REPLACEMENT;
+      case '\0':
+        return null;
+      default:
+        // Attribute values keep other control characters, like xmlEscape.
+        return (!attribute && isControl(c)) ? null : NO_REPLACEMENT;
+    }
+  }
+
+  /**
+   * Returns {@code true} for the control characters that cannot appear in
+   * XML, i.e. all but tab, newline and carriage return.
+   */
+  private static boolean isControl(char c) {
+    return c < 0x20 && c != '\t' && c != '\n' && c != '\r';
   }
 
   /**
@@ -1029,4 +1214,19 @@ public class XmlWriter {
     currentElement().unformattedChildren = true;
     writer.write(s);
   }
+
+  /**
+   * Writes a range of characters without XML entity escaping.
+   *
+   * @param text buffer holding the raw content to write without escaping.
+   * @param start index of the first character to write.
+   * @param len number of characters to write.
+   * @throws IOException thrown by the underlying writer.
+   */
+  public void writeUnescaped(char[] text, int start, int len)
+      throws IOException {
+    endOpenTag();
+    currentElement().unformattedChildren = true;
+    writer.write(text, start, len);
+  }
 }
@@ -127,6 +127,20 @@ public class AltFormat {
       .setSelectableByType(true)
       .build();
 
+  /**
+   * Constant value representing the JSON format, as read and written by
+   * {@link JsonParser} and {@link JsonGenerator}.  This representation is
+   * only available for the {@link com.google.gdata.model.Element} data model.
+   */
+  public static final AltFormat JSON = builder()
+      .setName("json")
+      .setWireFormat(WireFormat.JSON)
+      .setContentType(ContentType.JSON)
+      .setAcceptableTextTypes()
+      .addAllowedInputFormats(MEDIA, MEDIA_MULTIPART)
+      .setSelectableByType(true)
+      .build();
+
   /**
    * Creates a builder for a new AltFormat.
    */
@@ -0,0 +1,305 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.wireformats;
+
+import com.google.gdata.util.common.xml.XmlNamespace;
+import com.google.gdata.model.Attribute;
+import com.google.gdata.model.AttributeKey;
+import com.google.gdata.model.AttributeMetadata;
+import com.google.gdata.model.Element;
+import com.google.gdata.model.ElementMetadata;
+import com.google.gdata.model.ElementMetadata.Cardinality;
+import com.google.gdata.model.QName;
+import com.google.gdata.util.Namespaces;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JSON generator that outputs a tree of {@link Element} objects using the
+ * JSON wire format described in {@link JsonParser}.  The output is written
+ * as the tree is walked, without building an intermediate JSON tree.
+ * <p>
+ * Custom XML element generators configured in the metadata are not used, so
+ * elements are always written from their metadata, attributes and value.
+ */
+public class JsonGenerator implements WireFormatGenerator {
+
+  /** Version of the JSON wire format. */
+  private static final String VERSION = "1.0";
+
+  /**
+   * Metadata for the root element
+   */
+  protected final ElementMetadata<?, ?> rootMetadata;
+
+  private final JsonWriter jw;
+  private final String encoding;
+
+  /** Aliases of the namespaces declared on the root element, by URI. */
+  private final Map<String, String> aliases = new HashMap<String, String>();
+
+  /** URI of the default namespace, or {@code null} if there is none. */
+  private String defaultUri;
+
+  /** Number of aliases generated for namespaces without one. */
+  private int generatedAliases;
+
+  /**
+   * Creates a new JSON generator.
+   */
+  public JsonGenerator(StreamProperties props, Writer w, Charset cs,
+      boolean prettyPrint) {
+    this.jw = new JsonWriter(w, prettyPrint);
+    this.encoding = cs.name();
+    this.rootMetadata = props.getRootMetadata();
+  }
+
+  public void generate(Element element) throws IOException {
+    generate(element, rootMetadata);
+  }
+
+  public void generate(Element element, ElementMetadata<?, ?> metadata)
+      throws IOException {
+
+    if (metadata != null &&
+        !metadata.getKey().equals(element.getElementKey())) {
+      throw new IllegalStateException(
+          "Element key (" + element.getElementKey() +
+          ") does not match metadata key (" + metadata.getKey() + ")");
+    }
+
+    jw.beginObject();
+    jw.name("version");
+    jw.value(VERSION);
+    jw.name("encoding");
+    jw.value(encoding);
+    if (metadata == null || metadata.isSelected(element)) {
+      jw.name(getName(element, metadata).getLocalName());
+      jw.beginObject();
+      writeNamespaces(element, metadata);
+      writeMembers(element, metadata);
+      jw.endObject();
+    }
+    jw.endObject();
+    jw.flush();
+  }
+
+  /**
+   * Declares the namespaces used by the tree on the root element, as all
+   * namespaces are bubbled up to the root in the XML output.
+   */
+  private void writeNamespaces(Element root, ElementMetadata<?, ?> metadata)
+      throws IOException {
+    XmlNamespace defaultNs = (metadata != null)
+        ? metadata.getDefaultNamespace() : root.getElementId().getNs();
+    defaultUri = (defaultNs != null) ? defaultNs.getUri() : null;
+    if (defaultUri != null) {
+      jw.name(JsonParser.XMLNS);
+      jw.value(defaultUri);
+    }
+
+    aliases.clear();
+    generatedAliases = 0;
+    aliases.put(Namespaces.xml, Namespaces.xmlNs.getAlias());
+    for (XmlNamespace ns
+        : GeneratorUtils.calculateNamespaces(root, metadata).values()) {
+      String uri = ns.getUri();
+      if (!aliases.containsKey(uri)) {
+        aliases.put(uri, ns.getAlias());
+        jw.name(JsonParser.XMLNS + JsonParser.NAMESPACE_SEPARATOR
+            + ns.getAlias());
+        jw.value(uri);
+      }
+    }
+  }
+
+  /**
+   * Writes the attributes, text value and child elements of an element as
+   * members of its object.
+   */
+  private void writeMembers(Element e, ElementMetadata<?, ?> metadata)
+      throws IOException {
+
+    Iterator<Attribute> attributeIterator = e.getAttributeIterator(metadata);
+    while (attributeIterator.hasNext()) {
+      Attribute attribute = attributeIterator.next();
+      AttributeKey<?> attKey = attribute.getAttributeKey();
+      AttributeMetadata<?> attMeta = (metadata == null) ? null
+          : metadata.bindAttribute(attKey);
+      QName qName = (attMeta != null) ? attMeta.getName() : attKey.getId();
+      jw.name(getJsonName(qName, false));
+      jw.value(attribute.getValue().toString());
+    }
+
+    Object value = (metadata == null) ? e.getTextValue()
+        : metadata.generateValue(e, metadata);
+    if (value != null) {
+      String valStr = value.toString();
+      if (valStr.length() > 0) {
+        jw.name(JsonParser.TEXT);
+        jw.value(valStr);
+      }
+    }
+
+    writeChildren(e, metadata);
+  }
+
+  /**
+   * Writes the child elements of an element.  Elements with the same name
+   * are written as a single array, as a JSON object can only hold one member
+   * with a given name.
+   */
+  private void writeChildren(Element e, ElementMetadata<?, ?> metadata)
+      throws IOException {
+
+    Iterator<Element> childIterator = e.getElementIterator(metadata);
+    if (!childIterator.hasNext()) {
+      return;
+    }
+
+    List<Element> children = new ArrayList<Element>();
+    List<ElementMetadata<?, ?>> childMetas =
+        new ArrayList<ElementMetadata<?, ?>>();
+    List<String> names = new ArrayList<String>();
+    List<String> declared = null;
+    while (childIterator.hasNext()) {
+      Element child = childIterator.next();
+      ElementMetadata<?, ?> childMeta = (metadata == null) ? null
+          : metadata.bindElement(child.getElementKey());
+      if (childMeta == null || childMeta.isSelected(child)) {
+        QName childName = getName(child, childMeta);
+        if (declareAlias(childName.getNs())) {
+          if (declared == null) {
+            declared = new ArrayList<String>();
+          }
+          declared.add(childName.getNs().getUri());
+        }
+        children.add(child);
+        childMetas.add(childMeta);
+        names.add(getJsonName(childName, true));
+      }
+    }
+
+    int size = children.size();
+    boolean[] written = new boolean[size];
+    for (int i = 0; i < size; i++) {
+      if (written[i]) {
+        continue;
+      }
+      String name = names.get(i);
+      ElementMetadata<?, ?> childMeta = childMetas.get(i);
+
+      // Counted first, as a single element is written as an object unless
+      // its metadata allows it to repeat.
+      int count = 1;
+      for (int j = i + 1; j < size; j++) {
+        if (!written[j] && names.get(j).equals(name)) {
+          count++;
+        }
+      }
+
+      jw.name(name);
+      boolean array = count > 1 || (childMeta != null
+          && childMeta.getCardinality() != Cardinality.SINGLE);
+      if (array) {
+        jw.beginArray();
+      }
+      for (int j = i; j < size; j++) {
+        if (!written[j] && names.get(j).equals(name)) {
+          written[j] = true;
+          writeElement(children.get(j), childMetas.get(j));
+        }
+      }
+      if (array) {
+        jw.endArray();
+      }
+    }
+
+    if (declared != null) {
+      for (String uri : declared) {
+        aliases.remove(uri);
+      }
+    }
+  }
+
+  /**
+   * Declares an alias for a namespace that has none, such as a default
+   * namespace parsed from XML, as its names must be prefixed unless it is the
+   * default namespace.  The alias is declared on the object being written,
+   * and must be removed once that object is complete.
+   *
+   * @return {@code true} if an alias was declared
+   */
+  private boolean declareAlias(XmlNamespace ns) throws IOException {
+    if (ns == null) {
+      return false;
+    }
+    String uri = ns.getUri();
+    if (uri.equals(defaultUri) || aliases.containsKey(uri)) {
+      return false;
+    }
+    String alias;
+    do {
+      alias = "ns" + generatedAliases++;
+    } while (aliases.containsValue(alias));
+    aliases.put(uri, alias);
+    jw.name(JsonParser.XMLNS + JsonParser.NAMESPACE_SEPARATOR + alias);
+    jw.value(uri);
+    return true;
+  }
+
+  private void writeElement(Element e, ElementMetadata<?, ?> metadata)
+      throws IOException {
+    jw.beginObject();
+    writeMembers(e, metadata);
+    jw.endObject();
+  }
+
+  /**
+   * Returns the QName of an element, possibly using the given metadata for
+   * the name if it is not {@code null}.
+   */
+  private static QName getName(Element e, ElementMetadata<?, ?> metadata) {
+    return (metadata == null) ? e.getElementId() : metadata.getName();
+  }
+
+  /**
+   * Returns the name of the member holding an element or attribute.
+   *
+   * @param qName the qualified name of the element or attribute
+   * @param element {@code true} for an element, which is written without an
+   *     alias if it is in the default namespace
+   */
+  private String getJsonName(QName qName, boolean element) {
+    XmlNamespace ns = qName.getNs();
+    if (ns == null || (element && ns.getUri().equals(defaultUri))) {
+      return qName.getLocalName();
+    }
+    String alias = aliases.get(ns.getUri());
+    if (alias == null) {
+      return qName.getLocalName();
+    }
+    return alias + JsonParser.NAMESPACE_SEPARATOR + qName.getLocalName();
+  }
+}
@@ -0,0 +1,312 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.wireformats;
+
+import com.google.gdata.util.common.base.Preconditions;
+import com.google.gdata.util.common.xml.XmlNamespace;
+import com.google.gdata.client.CoreErrorDomain;
+import com.google.gdata.model.AttributeKey;
+import com.google.gdata.model.Element;
+import com.google.gdata.model.ElementKey;
+import com.google.gdata.model.ElementMetadata;
+import com.google.gdata.model.QName;
+import com.google.gdata.util.LogUtils;
+import com.google.gdata.util.Namespaces;
+import com.google.gdata.util.ParseException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * JSON parser that reads a tree of {@link Element} objects from the JSON
+ * wire format written by {@link JsonGenerator}.
+ * <p>
+ * The document is an object holding the root element under its local name.
+ * Each element is an object whose string members are its attributes, whose
+ * {@code $t} member is its text value and whose object members are its child
+ * elements, with repeated elements held in an array.  Namespaces are declared
+ * with {@code xmlns} and {@code xmlns$alias} members, which must precede the
+ * names using them, and a name in a namespace is written {@code alias$local}.
+ * Unprefixed element names are in the default namespace, and unprefixed
+ * attribute names in no namespace.
+ * <p>
+ * The input is read as a stream, without building an intermediate tree.
+ */
+public class JsonParser implements WireFormatParser {
+
+  private static final Logger logger =
+    Logger.getLogger(JsonParser.class.getName());
+
+  /** Member holding the text value of an element. */
+  static final String TEXT = "$t";
+
+  /** Member declaring the default namespace. */
+  static final String XMLNS = "xmlns";
+
+  /** Separator between the alias and local part of a name. */
+  static final char NAMESPACE_SEPARATOR = '$';
+
+  /** Namespaces declared in every document. */
+  private static final Map<String, XmlNamespace> INITIAL_SCOPE;
+  static {
+    Map<String, XmlNamespace> scope = new HashMap<String, XmlNamespace>();
+    scope.put(Namespaces.xmlNs.getAlias(), Namespaces.xmlNs);
+    INITIAL_SCOPE = scope;
+  }
+
+  private final StreamProperties props;
+  private final JsonReader reader;
+
+  /**
+   * Construct JSON parser for given reader.
+   *
+   * @param props stream properties for parsing
+   * @param r reader where input is retrieved from
+   * @param cs character set used to encode input
+   */
+  public JsonParser(StreamProperties props, Reader r, Charset cs) {
+    Preconditions.checkNotNull(props, "stream properties");
+    Preconditions.checkNotNull(r, "reader");
+    Preconditions.checkNotNull(cs, "cs");
+    this.props = props;
+    this.reader = new JsonReader(r);
+  }
+
+  public Element parse(Element element)
+      throws IOException, ParseException, ContentValidationException {
+
+    ElementMetadata<?, ?> metadata = props.getRootMetadata();
+    QName elementName = (metadata == null) ? element.getElementId()
+        : metadata.getName();
+
+    try {
+      boolean found = false;
+      reader.beginObject();
+      while (reader.peek() != JsonReader.Token.END_OBJECT) {
+        String name = reader.nextName();
+        if (!found && name.equals(elementName.getLocalName())) {
+          parseElement(element, metadata, INITIAL_SCOPE);
+          found = true;
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+
+      // Rejects any content following the document.
+      reader.peek();
+
+      if (!found) {
+        throw new ParseException("Invalid root element, expected " +
+            "(namespace uri:local name) of " +
+            "(" + getUri(elementName) + ":" + elementName.getLocalName() +
+            ")");
+      }
+    } catch (ParseException e) {
+      throwParseException(e);
+    }
+
+    return element.resolve(metadata);
+  }
+
+  /**
+   * Parses the object holding an element, after its name.
+   *
+   * @param element the element to parse into
+   * @param metadata the metadata of the element, or {@code null}
+   * @param scope the namespaces declared on the enclosing elements, by alias
+   *     with the default namespace under the empty alias
+   */
+  private void parseElement(Element element, ElementMetadata<?, ?> metadata,
+      Map<String, XmlNamespace> scope) throws IOException, ParseException {
+
+    String text = null;
+    boolean scopeCopied = false;
+
+    reader.beginObject();
+    while (reader.peek() != JsonReader.Token.END_OBJECT) {
+      String name = reader.nextName();
+      JsonReader.Token token = reader.peek();
+
+      if (token == JsonReader.Token.NULL) {
+        throw new ParseException(
+            CoreErrorDomain.ERR.nullJsonValue.withInternalReason(
+                "Null value for " + name));
+      }
+
+      if (isNamespaceDeclaration(name)) {
+        // Declarations are rare below the root, so the scope is only copied
+        // by the elements that have them.
+        if (!scopeCopied) {
+          scope = new HashMap<String, XmlNamespace>(scope);
+          scopeCopied = true;
+        }
+        String uri = reader.nextString();
+        if (name.length() == XMLNS.length()) {
+          scope.put("", new XmlNamespace(uri));
+        } else {
+          String alias = name.substring(XMLNS.length() + 1);
+          scope.put(alias, new XmlNamespace(alias, uri));
+        }
+      } else if (name.equals(TEXT)) {
+        text = reader.nextString();
+      } else if (token == JsonReader.Token.BEGIN_OBJECT) {
+        parseChild(element, metadata, getName(name, scope, true), scope);
+      } else if (token == JsonReader.Token.BEGIN_ARRAY) {
+        QName childName = getName(name, scope, true);
+        reader.beginArray();
+        while (reader.peek() != JsonReader.Token.END_ARRAY) {
+          parseChild(element, metadata, childName, scope);
+        }
+        reader.endArray();
+      } else {
+        processAttribute(element, metadata, getName(name, scope, false),
+            reader.nextString());
+      }
+    }
+    reader.endObject();
+
+    if (text != null) {
+      text = text.trim();
+      if (text.length() != 0) {
+        ElementKey<?, ?> elementKey = element.getElementKey();
+        element.setTextValue(
+            ObjectConverter.getValue(text, elementKey.getDatatype()));
+      }
+    }
+  }
+
+  /**
+   * Parses a child element and adds it to its parent.
+   */
+  private void parseChild(Element parent, ElementMetadata<?, ?> metadata,
+      QName qName, Map<String, XmlNamespace> scope)
+      throws IOException, ParseException {
+
+    ElementMetadata<?, ?> childMeta = findMetadata(metadata, qName);
+    Element child = createChildElement(qName, childMeta);
+    parseElement(child, childMeta, scope);
+
+    // The child is only added once fully parsed, as elements with "SET"
+    // cardinality would otherwise be compared while still empty.
+    parent.addElement(child);
+  }
+
+  private void processAttribute(Element element,
+      ElementMetadata<?, ?> metadata, QName qn, String value)
+      throws ParseException {
+
+    if (element.hasAttribute(qn)) {
+      throw new ParseException(
+          CoreErrorDomain.ERR.duplicateAttributeValue.withInternalReason(
+              "Duplicate value for attribute " + qn));
+    }
+    AttributeKey<?> attKey = (metadata == null) ? null
+        : metadata.findAttribute(qn);
+    if (attKey != null) {
+      element.setAttributeValue(attKey,
+          ObjectConverter.getValue(value, attKey.getDatatype()));
+    } else {
+      element.setAttributeValue(qn, value);
+    }
+  }
+
+  /**
+   * Returns the appropriate metadata to use for the given qualified name.
+   */
+  private ElementMetadata<?, ?> findMetadata(ElementMetadata<?, ?> metadata,
+      QName qName) {
+
+    if (metadata == null) {
+      return null;
+    }
+
+    ElementKey<?, ?> childKey = metadata.findElement(qName);
+    if (childKey == null) {
+      return null;
+    }
+    return metadata.bindElement(childKey);
+  }
+
+  /**
+   * Create a child element for the given name and metadata.
+   */
+  private Element createChildElement(QName qName,
+      ElementMetadata<?, ?> metadata) throws ParseException {
+
+    if (metadata == null) {
+      return new Element(qName);
+    }
+
+    try {
+      return metadata.createElement();
+    } catch (ContentCreationException e) {
+      throw new ParseException(e);
+    }
+  }
+
+  /**
+   * Returns the qualified name of a member.
+   *
+   * @param name the name of the member
+   * @param scope the namespaces in scope
+   * @param element {@code true} if the member is an element, which is in the
+   *     default namespace if the name has no alias
+   * @throws ParseException if the alias of the name was not declared
+   */
+  private static QName getName(String name, Map<String, XmlNamespace> scope,
+      boolean element) throws ParseException {
+    int separator = name.indexOf(NAMESPACE_SEPARATOR);
+    if (separator < 0) {
+      return new QName(element ? scope.get("") : null, name);
+    }
+    String alias = name.substring(0, separator);
+    XmlNamespace ns = scope.get(alias);
+    if (ns == null) {
+      throw new ParseException(
+          CoreErrorDomain.ERR.invalidJson.withInternalReason(
+              "Undeclared namespace prefix: " + alias));
+    }
+    return new QName(ns, name.substring(separator + 1));
+  }
+
+  private static boolean isNamespaceDeclaration(String name) {
+    return name.startsWith(XMLNS)
+        && (name.length() == XMLNS.length()
+            || name.charAt(XMLNS.length()) == NAMESPACE_SEPARATOR);
+  }
+
+  private static String getUri(QName name) {
+    XmlNamespace ns = name.getNs();
+    return (ns == null) ? null : ns.getUri();
+  }
+
+  /** Throws a parse exception with line/column information. */
+  private void throwParseException(ParseException e) throws ParseException {
+    String location = "[Line " + String.valueOf(reader.getLineNumber())
+        + ", Column " + String.valueOf(reader.getColumnNumber()) + "] ";
+
+    LogUtils.logException(logger, Level.FINE, location, e);
+
+    throw new ParseException(location + e.getMessage(), e);
+  }
+}
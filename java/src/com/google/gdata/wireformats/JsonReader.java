@@ -0,0 +1,447 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.wireformats;
+
+import com.google.gdata.client.CoreErrorDomain;
+import com.google.gdata.util.ParseException;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads a JSON document from a character stream one token at a time.  The
+ * structure of the document is checked as it is read, so a token is only
+ * returned if the document is valid up to that token.
+ */
+final class JsonReader {
+
+  /** Kinds of token. */
+  enum Token {
+    BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER,
+    BOOLEAN, NULL, END_DOCUMENT
+  }
+
+  // States of the open scopes.
+  private static final int EMPTY_DOCUMENT = 0;
+  private static final int NONEMPTY_DOCUMENT = 1;
+  private static final int EMPTY_OBJECT = 2;
+  private static final int NONEMPTY_OBJECT = 3;
+  private static final int DANGLING_NAME = 4;
+  private static final int EMPTY_ARRAY = 5;
+  private static final int NONEMPTY_ARRAY = 6;
+
+  private final Reader in;
+  private final char[] buffer = new char[8192];
+  private int pos;
+  private int limit;
+
+  private int line = 1;
+  private int column = 1;
+
+  private int[] scopes = new int[32];
+  private int depth = 1;
+
+  /** The next token, if it was peeked but not consumed. */
+  private Token peeked;
+
+  /** The text of the peeked name, string or literal. */
+  private String peekedText;
+
+  private final StringBuilder text = new StringBuilder();
+
+  JsonReader(Reader in) {
+    this.in = in;
+    scopes[0] = EMPTY_DOCUMENT;
+  }
+
+  /** Returns the line of the next character to read, starting at 1. */
+  int getLineNumber() {
+    return line;
+  }
+
+  /** Returns the column of the next character to read, starting at 1. */
+  int getColumnNumber() {
+    return column;
+  }
+
+  /** Returns the kind of the next token, without consuming it. */
+  Token peek() throws IOException, ParseException {
+    if (peeked != null) {
+      return peeked;
+    }
+    int c;
+    switch (scopes[depth - 1]) {
+      case EMPTY_DOCUMENT:
+        scopes[depth - 1] = NONEMPTY_DOCUMENT;
+        return peekValue();
+
+      case NONEMPTY_DOCUMENT:
+        if (peekNonWhitespace() != -1) {
+          throw syntaxError("Unexpected content after the document");
+        }
+        return peeked = Token.END_DOCUMENT;
+
+      case EMPTY_ARRAY:
+        scopes[depth - 1] = NONEMPTY_ARRAY;
+        if (peekNonWhitespace() == ']') {
+          consume();
+          return peeked = Token.END_ARRAY;
+        }
+        return peekValue();
+
+      case NONEMPTY_ARRAY:
+        c = peekNonWhitespace();
+        consume();
+        if (c == ']') {
+          return peeked = Token.END_ARRAY;
+        } else if (c != ',') {
+          throw syntaxError("Expected ',' or ']'");
+        }
+        return peekValue();
+
+      case EMPTY_OBJECT:
+      case NONEMPTY_OBJECT:
+        c = peekNonWhitespace();
+        consume();
+        if (c == '}') {
+          return peeked = Token.END_OBJECT;
+        }
+        if (scopes[depth - 1] == NONEMPTY_OBJECT) {
+          if (c != ',') {
+            throw syntaxError("Expected ',' or '}'");
+          }
+          c = peekNonWhitespace();
+          consume();
+        }
+        if (c != '"') {
+          throw syntaxError("Expected a name");
+        }
+        scopes[depth - 1] = DANGLING_NAME;
+        peekedText = readString();
+        return peeked = Token.NAME;
+
+      case DANGLING_NAME:
+        c = peekNonWhitespace();
+        consume();
+        if (c != ':') {
+          throw syntaxError("Expected ':'");
+        }
+        scopes[depth - 1] = NONEMPTY_OBJECT;
+        return peekValue();
+
+      default:
+        throw new IllegalStateException();
+    }
+  }
+
+  void beginObject() throws IOException, ParseException {
+    expect(Token.BEGIN_OBJECT);
+    push(EMPTY_OBJECT);
+  }
+
+  void endObject() throws IOException, ParseException {
+    expect(Token.END_OBJECT);
+    depth--;
+  }
+
+  void beginArray() throws IOException, ParseException {
+    expect(Token.BEGIN_ARRAY);
+    push(EMPTY_ARRAY);
+  }
+
+  void endArray() throws IOException, ParseException {
+    expect(Token.END_ARRAY);
+    depth--;
+  }
+
+  /** Returns the next name of the current object. */
+  String nextName() throws IOException, ParseException {
+    expect(Token.NAME);
+    return peekedText;
+  }
+
+  /**
+   * Returns the text of the next string, number or boolean value.
+   */
+  String nextString() throws IOException, ParseException {
+    Token token = peek();
+    if (token != Token.STRING && token != Token.NUMBER
+        && token != Token.BOOLEAN) {
+      throw syntaxError("Expected a string but was " + token);
+    }
+    peeked = null;
+    return peekedText;
+  }
+
+  /** Skips the next value, including any nested values. */
+  void skipValue() throws IOException, ParseException {
+    int count = 0;
+    do {
+      Token token = peek();
+      if (token == Token.BEGIN_OBJECT) {
+        beginObject();
+        count++;
+      } else if (token == Token.BEGIN_ARRAY) {
+        beginArray();
+        count++;
+      } else if (token == Token.END_OBJECT) {
+        endObject();
+        count--;
+      } else if (token == Token.END_ARRAY) {
+        endArray();
+        count--;
+      } else if (token == Token.END_DOCUMENT) {
+        throw syntaxError("Unexpected end of document");
+      } else {
+        peeked = null;
+      }
+    } while (count > 0);
+  }
+
+  private void expect(Token expected) throws IOException, ParseException {
+    Token token = peek();
+    if (token != expected) {
+      throw syntaxError("Expected " + expected + " but was " + token);
+    }
+    peeked = null;
+  }
+
+  private void push(int scope) {
+    if (depth == scopes.length) {
+      int[] newScopes = new int[depth * 2];
+      System.arraycopy(scopes, 0, newScopes, 0, depth);
+      scopes = newScopes;
+    }
+    scopes[depth++] = scope;
+  }
+
+  /** Reads the token starting a value. */
+  private Token peekValue() throws IOException, ParseException {
+    int c = peekNonWhitespace();
+    switch (c) {
+      case '{':
+        consume();
+        return peeked = Token.BEGIN_OBJECT;
+      case '[':
+        consume();
+        return peeked = Token.BEGIN_ARRAY;
+      case '"':
+        consume();
+        peekedText = readString();
+        return peeked = Token.STRING;
+      case -1:
+        throw syntaxError("Unexpected end of document");
+      default:
+        return peeked = readLiteral();
+    }
+  }
+
+  /** Reads the rest of a string, after its opening quote. */
+  private String readString() throws IOException, ParseException {
+    text.setLength(0);
+    while (true) {
+      int start = pos;
+      while (pos < limit) {
+        char c = buffer[pos];
+        if (c == '"' || c == '\\' || c < 0x20) {
+          break;
+        }
+        pos++;
+      }
+      text.append(buffer, start, pos - start);
+      column += pos - start;
+
+      if (pos == limit) {
+        if (!fill()) {
+          throw syntaxError("Unterminated string");
+        }
+        continue;
+      }
+      char c = buffer[pos];
+      consume();
+      if (c == '"') {
+        return text.toString();
+      } else if (c == '\\') {
+        text.append(readEscape());
+      } else {
+        throw syntaxError("Unescaped control character in string");
+      }
+    }
+  }
+
+  /** Reads an escape sequence, after its backslash. */
+  private char readEscape() throws IOException, ParseException {
+    int c = peekChar();
+    consume();
+    switch (c) {
+      case '"':
+      case '\\':
+      case '/':
+        return (char) c;
+      case 'b':
+        return '\b';
+      case 'f':
+        return '\f';
+      case 'n':
+        return '\n';
+      case 'r':
+        return '\r';
+      case 't':
+        return '\t';
+      case 'u':
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+          int digit = Character.digit(peekChar(), 16);
+          if (digit < 0) {
+            throw syntaxError("Invalid escape sequence");
+          }
+          consume();
+          value = (value << 4) | digit;
+        }
+        return (char) value;
+      default:
+        throw syntaxError("Invalid escape sequence");
+    }
+  }
+
+  /** Reads a number, {@code true}, {@code false} or {@code null}. */
+  private Token readLiteral() throws IOException, ParseException {
+    text.setLength(0);
+    while (true) {
+      int c = peekChar();
+      if (c == -1 || c == ',' || c == ':' || c == ']' || c == '}'
+          || c == '[' || c == '{' || c == '"' || isWhitespace(c)) {
+        break;
+      }
+      text.append((char) c);
+      consume();
+    }
+    peekedText = text.toString();
+    if (peekedText.equals("true") || peekedText.equals("false")) {
+      return Token.BOOLEAN;
+    } else if (peekedText.equals("null")) {
+      return Token.NULL;
+    } else if (isNumber(peekedText)) {
+      return Token.NUMBER;
+    }
+    throw syntaxError("Unexpected value '" + peekedText + "'");
+  }
+
+  /** Returns {@code true} if a literal is a valid JSON number. */
+  private static boolean isNumber(String s) {
+    int i = 0;
+    int length = s.length();
+    if (i < length && s.charAt(i) == '-') {
+      i++;
+    }
+    int digits = i;
+    while (i < length && isDigit(s.charAt(i))) {
+      i++;
+    }
+    if (i == digits || (s.charAt(digits) == '0' && i - digits > 1)) {
+      return false;
+    }
+    if (i < length && s.charAt(i) == '.') {
+      digits = ++i;
+      while (i < length && isDigit(s.charAt(i))) {
+        i++;
+      }
+      if (i == digits) {
+        return false;
+      }
+    }
+    if (i < length && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+      i++;
+      if (i < length && (s.charAt(i) == '+' || s.charAt(i) == '-')) {
+        i++;
+      }
+      digits = i;
+      while (i < length && isDigit(s.charAt(i))) {
+        i++;
+      }
+      if (i == digits) {
+        return false;
+      }
+    }
+    return i == length;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isWhitespace(int c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+  }
+
+  /**
+   * Skips whitespace and returns the next character without consuming it,
+   * or -1 at the end of the stream.
+   */
+  private int peekNonWhitespace() throws IOException {
+    while (true) {
+      int c = peekChar();
+      if (!isWhitespace(c)) {
+        return c;
+      }
+      consume();
+    }
+  }
+
+  /**
+   * Returns the next character without consuming it, or -1 at the end of
+   * the stream.
+   */
+  private int peekChar() throws IOException {
+    if (pos == limit && !fill()) {
+      return -1;
+    }
+    return buffer[pos];
+  }
+
+  /** Consumes the character returned by {@link #peekChar()}. */
+  private void consume() {
+    if (pos == limit) {
+      return;
+    }
+    if (buffer[pos++] == '\n') {
+      line++;
+      column = 1;
+    } else {
+      column++;
+    }
+  }
+
+  private boolean fill() throws IOException {
+    pos = 0;
+    limit = 0;
+    int count;
+    do {
+      count = in.read(buffer, 0, buffer.length);
+    } while (count == 0);
+    if (count < 0) {
+      return false;
+    }
+    limit = count;
+    return true;
+  }
+
+  private ParseException syntaxError(String message) {
+    return new ParseException(
+        CoreErrorDomain.ERR.invalidJson.withInternalReason(message));
+  }
+}
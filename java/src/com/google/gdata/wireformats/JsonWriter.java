@@ -0,0 +1,165 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.wireformats;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes a JSON document to a character stream as it is being generated.
+ * The caller is responsible for the structure of the document: names must
+ * only be written within objects, and each name must be followed by a value.
+ */
+final class JsonWriter {
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private final Writer w;
+  private final boolean prettyPrint;
+
+  /**
+   * For each open object or array, {@code true} once it has a member, so
+   * that the next member is preceded by a comma.
+   */
+  private boolean[] hasMembers = new boolean[16];
+  private int depth;
+
+  /** {@code true} after a name, until its value is written. */
+  private boolean afterName;
+
+  JsonWriter(Writer w, boolean prettyPrint) {
+    this.w = w;
+    this.prettyPrint = prettyPrint;
+  }
+
+  void beginObject() throws IOException {
+    open('{');
+  }
+
+  void endObject() throws IOException {
+    close('}');
+  }
+
+  void beginArray() throws IOException {
+    open('[');
+  }
+
+  void endArray() throws IOException {
+    close(']');
+  }
+
+  /** Writes the name of the next member of the current object. */
+  void name(String name) throws IOException {
+    beforeValue();
+    writeString(name);
+    w.write(prettyPrint ? ": " : ":");
+    afterName = true;
+  }
+
+  /** Writes a string value. */
+  void value(String value) throws IOException {
+    beforeValue();
+    writeString(value);
+  }
+
+  void flush() throws IOException {
+    w.flush();
+  }
+
+  private void open(char c) throws IOException {
+    beforeValue();
+    w.write(c);
+    if (depth == hasMembers.length) {
+      boolean[] newHasMembers = new boolean[depth * 2];
+      System.arraycopy(hasMembers, 0, newHasMembers, 0, depth);
+      hasMembers = newHasMembers;
+    }
+    hasMembers[depth++] = false;
+  }
+
+  private void close(char c) throws IOException {
+    boolean empty = !hasMembers[--depth];
+    if (!empty) {
+      newline();
+    }
+    w.write(c);
+  }
+
+  /** Writes the separator preceding a value or a name, if any. */
+  private void beforeValue() throws IOException {
+    if (afterName) {
+      afterName = false;
+      return;
+    }
+    if (depth > 0) {
+      if (hasMembers[depth - 1]) {
+        w.write(',');
+      }
+      hasMembers[depth - 1] = true;
+      newline();
+    }
+  }
+
+  private void newline() throws IOException {
+    if (prettyPrint) {
+      w.write('\n');
+      for (int i = 0; i < depth; i++) {
+        w.write("  ");
+      }
+    }
+  }
+
+  private void writeString(String s) throws IOException {
+    w.write('"');
+    int length = s.length();
+    int start = 0;
+    for (int i = 0; i < length; i++) {
+      char c = s.charAt(i);
+      String escape;
+      if (c == '"') {
+        escape = "\\\"";
+      } else if (c == '\\') {
+        escape = "\\\\";
+      } else if (c == '\n') {
+        escape = "\\n";
+      } else if (c == '\r') {
+        escape = "\\r";
+      } else if (c == '\t') {
+        escape = "\\t";
+      } else if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+        // Line separators are escaped, as they are not valid in JavaScript
+        // strings.
+        escape = null;
+      } else {
+        continue;
+      }
+      w.write(s, start, i - start);
+      if (escape != null) {
+        w.write(escape);
+      } else {
+        w.write("\\u");
+        w.write(HEX[(c >> 12) & 0xf]);
+        w.write(HEX[(c >> 8) & 0xf]);
+        w.write(HEX[(c >> 4) & 0xf]);
+        w.write(HEX[c & 0xf]);
+      }
+      start = i + 1;
+    }
+    w.write(s, start, length - start);
+    w.write('"');
+  }
+}
@@ -38,12 +38,17 @@ public abstract class WireFormat {
    */
   public static final XmlWireFormat XML = new XmlWireFormat();
 
+  /**
+   * JSON wire format.
+   */
+  public static final JsonWireFormat JSON = new JsonWireFormat();
+
   /**
    * List of all supported wire formats.
    */
   public static final List<WireFormat> ALL =
 
-      Arrays.asList(new WireFormat [] {XML});
+      Arrays.asList(new WireFormat [] {XML, JSON});
 
 
   /**
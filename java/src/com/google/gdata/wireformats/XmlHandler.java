@@ -58,16 +58,42 @@ public class XmlHandler extends XmlParser.ElementHandler {
    */
   protected final Element element;
 
+  /**
+   * Metadata the element is resolved against once parsed, or {@code null} if
+   * the element is not resolved by this handler.  A child handler created
+   * without it inherits it from a resolving parent handler.
+   */
+  protected ElementMetadata<?, ?> resolveMetadata;
+
+  /** Element resolved from the parsed element, once parsing is completed. */
+  private Element resolved;
+
   /**
    * Construct an xml parser that will add the element to its parent after
-   * parsing is completed.
+   * parsing is completed.  The element is not resolved.
    */
   public XmlHandler(ValidationContext vc, Element parent,
       Element element, ElementMetadata<?, ?> metadata) {
+    this(vc, parent, element, metadata, null);
+  }
+
+  /**
+   * Construct an xml parser that will resolve the element against the given
+   * metadata once parsed, and add the resolved element to its parent.  The
+   * child elements are resolved by their own handlers first, so each element
+   * is narrowed and validated once, as it is parsed.
+   *
+   * @param resolveMetadata the metadata to resolve the element against, or
+   *     {@code null} to leave the element and its children unresolved
+   */
+  public XmlHandler(ValidationContext vc, Element parent,
+      Element element, ElementMetadata<?, ?> metadata,
+      ElementMetadata<?, ?> resolveMetadata) {
     this.vc = vc;
     this.parentElement = parent;
     this.element = element;
     this.metadata = metadata;
+    this.resolveMetadata = resolveMetadata;
   }
 
   /**
@@ -77,6 +103,15 @@ public class XmlHandler extends XmlParser.ElementHandler {
     return element;
   }
 
+  /**
+   * Returns the element resolved from the parsed element, which may be a
+   * narrower element, or the parsed element if it is not resolved by this
+   * handler.  Only valid once parsing of the element is completed.
+   */
+  public Element getResolvedElement() {
+    return (resolved != null) ? resolved : element;
+  }
+
   @Override
   public void processAttribute(QName qn, String value)
       throws ParseException {
@@ -114,24 +149,39 @@ public class XmlHandler extends XmlParser.ElementHandler {
     Element childElement = createChildElement(qName, childMeta);
 
     // "SET" cardinality elements cannot be added to the parent element until
-    // fully initialized, otherwise we'll have duplicates.  So we track the
+    // fully initialized, otherwise we'll have duplicates, and resolved
+    // elements may be replaced by a narrower element.  So we track the
     // parent element and add to it after the element has been processed.
     Element parent;
-    if (childMeta != null && childMeta.getCardinality() == Cardinality.SET) {
+    if (resolveMetadata != null || (childMeta != null
+        && childMeta.getCardinality() == Cardinality.SET)) {
       parent = element;
     } else {
       element.addElement(childElement);
       parent = null;
     }
-    return createHandler(qName, parent, childElement, childMeta);
+    XmlHandler handler = createHandler(qName, parent, childElement, childMeta);
+
+    // Handlers created with the constructor that does not resolve inherit the
+    // resolve mode of this handler, so their subtree is not left unresolved.
+    if (resolveMetadata != null && handler.resolveMetadata == null) {
+      handler.resolveMetadata =
+          resolveMetadata.bindElement(handler.element.getElementKey());
+    }
+    return handler;
   }
 
   /**
    * Hook to allow subclasses to change the type of handler being returned.
+   * The child element is resolved against the metadata this element binds for
+   * its key, the same metadata
+   * {@link Element#resolve(ElementMetadata, ValidationContext)} would use.
    */
   protected XmlHandler createHandler(QName qName, Element parent,
       Element child, ElementMetadata<?, ?> metadata) {
-    return new XmlHandler(vc, parent, child, metadata);
+    ElementMetadata<?, ?> childResolveMeta = (resolveMetadata == null) ? null
+        : resolveMetadata.bindElement(child.getElementKey());
+    return new XmlHandler(vc, parent, child, metadata, childResolveMeta);
   }
 
   /**
@@ -183,8 +233,11 @@ public class XmlHandler extends XmlParser.ElementHandler {
       }
     }
 
+    resolved = (resolveMetadata == null) ? element
+        : element.resolveShallow(resolveMetadata, vc);
+
     if (parentElement != null) {
-      parentElement.addElement(element);
+      parentElement.addElement(resolved);
     }
   }
 }
@@ -22,6 +22,7 @@ import com.google.common.collect.Maps;
 import com.google.gdata.util.common.xml.XmlNamespace;
 import com.google.gdata.util.common.xml.XmlWriter;
 import com.google.gdata.client.CoreErrorDomain;
+import com.google.gdata.client.GDataProtocol;
 import com.google.gdata.data.XmlEventSource;
 import com.google.gdata.model.Element;
 import com.google.gdata.model.ElementMetadata;
@@ -392,6 +393,12 @@ public class XmlParser extends DefaultHandler implements WireFormatParser {
   /** XML event source, usually a SAX parser. */
   private final XmlEventSource eventSource;
 
+  /**
+   * Whether elements are resolved against the metadata after the whole
+   * document is parsed, instead of as they are parsed.
+   */
+  private boolean deferValidation;
+
   /** Root element handler. */
   protected ElementHandler rootHandler;
 
@@ -466,6 +473,20 @@ public class XmlParser extends DefaultHandler implements WireFormatParser {
     Preconditions.checkNotNull(eventSource, "eventSource");
     this.props = props;
     this.eventSource = eventSource;
+
+    // Partial responses are resolved once complete, as before.
+    this.deferValidation =
+        props.getQueryParameter(GDataProtocol.Parameter.FIELDS) != null;
+  }
+
+  /**
+   * Sets whether elements are resolved against the metadata, and validated,
+   * after the whole document is parsed instead of as they are parsed.  This
+   * is the default for partial responses, selected by the {@code fields}
+   * query parameter.
+   */
+  public void setDeferValidation(boolean deferValidation) {
+    this.deferValidation = deferValidation;
   }
 
   public Element parse(Element element)
@@ -474,7 +495,8 @@ public class XmlParser extends DefaultHandler implements WireFormatParser {
     ValidationContext vc = new ValidationContext();
     ElementMetadata<?, ?> metadata = props.getRootMetadata();
 
-    this.rootHandler = createRootHandler(vc, element, metadata);
+    XmlHandler handler = createRootHandler(vc, element, metadata);
+    this.rootHandler = handler;
     QName elementName = (metadata == null) ? element.getElementId()
         : metadata.getName();
     XmlNamespace elementNs = elementName.getNs();
@@ -496,16 +518,26 @@ public class XmlParser extends DefaultHandler implements WireFormatParser {
       }
     }
 
-    return element.resolve(metadata);
+    // Handlers that do not resolve elements as they are parsed leave the
+    // tree to be resolved here.
+    if (handler.resolveMetadata == null) {
+      return element.resolve(metadata);
+    }
+    if (!vc.isValid()) {
+      throw new ContentValidationException("Invalid data", vc);
+    }
+    return handler.getResolvedElement();
   }
 
   /**
    * Create the xml handler for the root element.  Subclasses can supply their
-   * own parse handlers.
+   * own parse handlers.  Unless validation is deferred, the default handler
+   * resolves each element against the metadata as soon as it is parsed.
    */
   protected XmlHandler createRootHandler(ValidationContext vc,
       Element element, ElementMetadata<?, ?> metadata) {
-    return new XmlHandler(vc, null, element, metadata);
+    return new XmlHandler(vc, null, element, metadata,
+        deferValidation ? null : metadata);
   }
 
   /** Throws a parse exception with line/column information. */